@@ -0,0 +1,190 @@
+package com.userservice;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+
+/**
+ * Per-JVM registry of AWS SDK clients shared by all handlers.
+ *
+ * Each client is built once, lazily, with an explicit region, an explicit credentials
+ * provider and the lightweight UrlConnection HTTP client, so no default provider-chain
+ * or region discovery runs during cold start. Async clients share one Netty HTTP client,
+ * created only when the first async client is requested.
+ */
+public final class ClientRegistry {
+
+    private ClientRegistry() {
+    }
+
+    public static DynamoDbClient dynamoDb() {
+        return DynamoDbHolder.INSTANCE;
+    }
+
+    public static S3Client s3() {
+        return S3Holder.INSTANCE;
+    }
+
+    /**
+     * Presigner for S3 URLs; signs locally and makes no HTTP calls
+     */
+    public static S3Presigner s3Presigner() {
+        return S3PresignerHolder.INSTANCE;
+    }
+
+    public static CognitoIdentityProviderClient cognito() {
+        return CognitoHolder.INSTANCE;
+    }
+
+    public static DynamoDbAsyncClient dynamoDbAsync() {
+        return DynamoDbAsyncHolder.INSTANCE;
+    }
+
+    public static CognitoIdentityProviderAsyncClient cognitoAsync() {
+        return CognitoAsyncHolder.INSTANCE;
+    }
+
+    public static SecretsManagerClient secretsManager() {
+        return SecretsManagerHolder.INSTANCE;
+    }
+
+    public static Region region() {
+        return Shared.REGION;
+    }
+
+    public static AwsCredentialsProvider credentialsProvider() {
+        return Shared.CREDENTIALS_PROVIDER;
+    }
+
+    /**
+     * Re-resolve credentials after a SnapStart restore. Credentials captured in the
+     * snapshot may belong to a different execution environment or have expired
+     */
+    public static void refreshCredentials() {
+        Shared.CREDENTIALS_PROVIDER.reload();
+    }
+
+    /**
+     * Region comes from AWS_REGION, which Lambda always sets
+     */
+    private static Region resolveRegion() {
+        String region = System.getenv("AWS_REGION");
+        if (region == null || region.isEmpty()) {
+            throw new IllegalStateException("AWS_REGION environment variable is not set");
+        }
+        return Region.of(region);
+    }
+
+    /**
+     * Lambda exposes credentials either as environment variables or, for SnapStart
+     * functions, through the container credentials endpoint
+     */
+    private static AwsCredentialsProvider resolveCredentialsProvider() {
+        if (System.getenv("AWS_CONTAINER_CREDENTIALS_FULL_URI") != null) {
+            return ContainerCredentialsProvider.builder().build();
+        }
+        return EnvironmentVariableCredentialsProvider.create();
+    }
+
+    private static final class Shared {
+        private static final Region REGION = resolveRegion();
+        private static final ReloadableCredentialsProvider CREDENTIALS_PROVIDER = new ReloadableCredentialsProvider();
+        private static final SdkHttpClient HTTP_CLIENT = UrlConnectionHttpClient.builder().build();
+        // Cognito calls are retried by CognitoResilience; SDK retries would multiply attempts
+        private static final ClientOverrideConfiguration NO_RETRIES = ClientOverrideConfiguration.builder()
+                .retryPolicy(RetryPolicy.none())
+                .build();
+    }
+
+    private static final class AsyncShared {
+        private static final SdkAsyncHttpClient HTTP_CLIENT = NettyNioAsyncHttpClient.builder().build();
+    }
+
+    /**
+     * Credentials provider whose underlying provider can be swapped without rebuilding the clients
+     */
+    private static final class ReloadableCredentialsProvider implements AwsCredentialsProvider {
+        private volatile AwsCredentialsProvider delegate = resolveCredentialsProvider();
+
+        @Override
+        public AwsCredentials resolveCredentials() {
+            return delegate.resolveCredentials();
+        }
+
+        private void reload() {
+            delegate = resolveCredentialsProvider();
+        }
+    }
+
+    private static final class DynamoDbHolder {
+        private static final DynamoDbClient INSTANCE = DynamoDbClient.builder()
+                .region(Shared.REGION)
+                .credentialsProvider(Shared.CREDENTIALS_PROVIDER)
+                .httpClient(Shared.HTTP_CLIENT)
+                .build();
+    }
+
+    private static final class S3Holder {
+        private static final S3Client INSTANCE = S3Client.builder()
+                .region(Shared.REGION)
+                .credentialsProvider(Shared.CREDENTIALS_PROVIDER)
+                .httpClient(Shared.HTTP_CLIENT)
+                .build();
+    }
+
+    private static final class S3PresignerHolder {
+        private static final S3Presigner INSTANCE = S3Presigner.builder()
+                .region(Shared.REGION)
+                .credentialsProvider(Shared.CREDENTIALS_PROVIDER)
+                .build();
+    }
+
+    private static final class CognitoHolder {
+        private static final CognitoIdentityProviderClient INSTANCE = CognitoIdentityProviderClient.builder()
+                .region(Shared.REGION)
+                .credentialsProvider(Shared.CREDENTIALS_PROVIDER)
+                .httpClient(Shared.HTTP_CLIENT)
+                .overrideConfiguration(Shared.NO_RETRIES)
+                .build();
+    }
+
+    private static final class DynamoDbAsyncHolder {
+        private static final DynamoDbAsyncClient INSTANCE = DynamoDbAsyncClient.builder()
+                .region(Shared.REGION)
+                .credentialsProvider(Shared.CREDENTIALS_PROVIDER)
+                .httpClient(AsyncShared.HTTP_CLIENT)
+                .build();
+    }
+
+    private static final class CognitoAsyncHolder {
+        private static final CognitoIdentityProviderAsyncClient INSTANCE = CognitoIdentityProviderAsyncClient.builder()
+                .region(Shared.REGION)
+                .credentialsProvider(Shared.CREDENTIALS_PROVIDER)
+                .httpClient(AsyncShared.HTTP_CLIENT)
+                .overrideConfiguration(Shared.NO_RETRIES)
+                .build();
+    }
+
+    private static final class SecretsManagerHolder {
+        private static final SecretsManagerClient INSTANCE = SecretsManagerClient.builder()
+                .region(Shared.REGION)
+                .credentialsProvider(Shared.CREDENTIALS_PROVIDER)
+                .httpClient(Shared.HTTP_CLIENT)
+                .build();
+    }
+}
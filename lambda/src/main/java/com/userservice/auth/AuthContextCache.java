@@ -0,0 +1,138 @@
+package com.userservice.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded LRU cache of decoded AuthContext objects keyed by a SHA-256 digest of the bearer token.
+ * Each entry expires at the token's own exp claim, so an identity is never served past its token lifetime.
+ * Safe to share across concurrent invocations.
+ */
+public class AuthContextCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public AuthContextCache(int maxEntries) {
+        this(maxEntries, System::currentTimeMillis);
+    }
+
+    public AuthContextCache(int maxEntries, LongSupplier clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AuthContextCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Return the cached AuthContext for this token, or null if absent or expired
+     */
+    public AuthContext get(String jwtToken) {
+        String key = digest(jwtToken);
+        long now = clock.getAsLong();
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAtMillis > now) {
+                    hits.incrementAndGet();
+                    return entry.authContext;
+                }
+                entries.remove(key);
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache an AuthContext until the given exp claim (epoch seconds).
+     * Tokens without an exp claim, or already expired, are not cached
+     */
+    public void put(String jwtToken, AuthContext authContext, long expiresAtSeconds) {
+        if (expiresAtSeconds <= 0) {
+            return;
+        }
+
+        long expiresAtMillis = expiresAtSeconds * 1000L;
+        if (expiresAtMillis <= clock.getAsLong()) {
+            return;
+        }
+
+        String key = digest(jwtToken);
+        synchronized (entries) {
+            entries.put(key, new Entry(authContext, expiresAtMillis));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AuthContextCache{" +
+                "size=" + size() +
+                ", maxEntries=" + maxEntries +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                '}';
+    }
+
+    /**
+     * Key entries by token digest so raw bearer tokens are not retained in memory
+     */
+    private static String digest(String jwtToken) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(jwtToken.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class Entry {
+        private final AuthContext authContext;
+        private final long expiresAtMillis;
+
+        private Entry(AuthContext authContext, long expiresAtMillis) {
+            this.authContext = authContext;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -5,6 +5,9 @@ import com.userservice.model.UserRole;
 import java.util.Map;
 
 public class AuthorizationUtil {
+    // Shared per container so repeated calls with the same token skip decoding
+    private static final AuthContextCache authContextCache =
+            new AuthContextCache(AuthContextCache.DEFAULT_MAX_ENTRIES);
 
     /**
      * Extract AuthContext from API Gateway request
@@ -24,19 +27,31 @@ public class AuthorizationUtil {
 
         String jwtToken = authHeader.substring(7); // Remove "Bearer " prefix
 
+        AuthContext cached = authContextCache.get(jwtToken);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
-            String username = CognitoTokenValidator.extractUsername(jwtToken);
-            String sub = CognitoTokenValidator.extractSub(jwtToken);
-            String roleString = CognitoTokenValidator.extractRole(jwtToken);
+            TokenClaims claims = CognitoTokenValidator.decodeClaims(jwtToken);
 
-            UserRole role = UserRole.fromString(roleString);
+            UserRole role = UserRole.fromString(claims.getRole());
 
-            return new AuthContext(username, sub, role);
+            AuthContext authContext = new AuthContext(claims.getUsername(), claims.getSub(), role);
+            authContextCache.put(jwtToken, authContext, claims.getExpiresAt());
+            return authContext;
         } catch (Exception e) {
             throw new UnauthorizedException("Invalid or malformed JWT token: " + e.getMessage());
         }
     }
 
+    /**
+     * Shared AuthContext cache, exposed for hit/miss reporting
+     */
+    public static AuthContextCache getAuthContextCache() {
+        return authContextCache;
+    }
+
     /**
      * Check if user can read users list
      * All authenticated users can read (guest, user, superuser, globaladmin)
@@ -113,6 +128,47 @@ public class AuthorizationUtil {
         return false; // guest and user cannot delete
     }
 
+    /**
+     * Check if user can register users in bulk
+     * - superuser: Can batch create
+     * - globaladmin: Can batch create
+     * - guest, user and unauthenticated callers: Cannot
+     */
+    public static boolean canBatchCreateUsers(AuthContext authContext) {
+        return authContext != null && (authContext.isSuperUser() || authContext.isGlobalAdmin());
+    }
+
+    /**
+     * Check if user can delete every user regardless of ownership
+     * - globaladmin only
+     */
+    public static boolean canDeleteAnyUser(AuthContext authContext) {
+        return authContext != null && authContext.isGlobalAdmin();
+    }
+
+    /**
+     * Check if user can export the full user table
+     * - globaladmin only
+     */
+    public static boolean canExportUsers(AuthContext authContext) {
+        return authContext != null && authContext.isGlobalAdmin();
+    }
+
+    /**
+     * Check if user can upload files
+     * - guest: Cannot upload
+     * - user: Can upload
+     * - superuser: Can upload
+     * - globaladmin: Can upload
+     */
+    public static boolean canUploadFile(AuthContext authContext) {
+        if (authContext == null) {
+            return false;
+        }
+        // All authenticated users except guests can upload
+        return !authContext.isGuest();
+    }
+
     /**
      * Get descriptive authorization error message
      */
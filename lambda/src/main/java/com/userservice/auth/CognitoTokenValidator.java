@@ -1,72 +1,130 @@
 package com.userservice.auth;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
 import java.util.Base64;
 
 public class CognitoTokenValidator {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final JsonFactory jsonFactory = new JsonFactory();
 
     /**
-     * Extract username (cognito:username claim) from JWT token
+     * Decode all claims used by the service in a single pass over the token
      * API Gateway validates the JWT signature, so we only need to parse claims
+     * Fails if cognito:username, sub or custom:role is missing
      */
-    public static String extractUsername(String jwtToken) throws Exception {
-        String[] parts = jwtToken.split("\\.");
-        if (parts.length != 3) {
-            throw new IllegalArgumentException("Invalid JWT token format");
+    public static TokenClaims decodeClaims(String jwtToken) throws Exception {
+        TokenClaims claims = parseClaims(jwtToken);
+
+        if (claims.getUsername() == null) {
+            throw new IllegalArgumentException("Username claim not found in JWT token");
+        }
+        if (claims.getSub() == null) {
+            throw new IllegalArgumentException("Sub claim not found in JWT token");
+        }
+        if (claims.getRole() == null) {
+            throw new IllegalArgumentException("Role claim not found in JWT token");
         }
 
-        String payload = new String(Base64.getUrlDecoder().decode(parts[1]));
-        JsonNode claims = objectMapper.readTree(payload);
+        return claims;
+    }
 
-        // Extract username from 'cognito:username' claim
-        JsonNode usernameNode = claims.get("cognito:username");
-        if (usernameNode == null) {
+    /**
+     * Extract username (cognito:username claim) from JWT token
+     */
+    public static String extractUsername(String jwtToken) throws Exception {
+        String username = parseClaims(jwtToken).getUsername();
+        if (username == null) {
             throw new IllegalArgumentException("Username claim not found in JWT token");
         }
-
-        return usernameNode.asText();
+        return username;
     }
 
     /**
      * Extract role from JWT custom attributes (custom:role claim)
      */
     public static String extractRole(String jwtToken) throws Exception {
-        String[] parts = jwtToken.split("\\.");
-        if (parts.length != 3) {
-            throw new IllegalArgumentException("Invalid JWT token format");
-        }
-
-        String payload = new String(Base64.getUrlDecoder().decode(parts[1]));
-        JsonNode claims = objectMapper.readTree(payload);
-
-        // Extract role from custom:role claim
-        JsonNode roleNode = claims.get("custom:role");
-        if (roleNode == null) {
+        String role = parseClaims(jwtToken).getRole();
+        if (role == null) {
             throw new IllegalArgumentException("Role claim not found in JWT token");
         }
-
-        return roleNode.asText();
+        return role;
     }
 
     /**
      * Extract Cognito user sub (unique identifier) from JWT token
      */
     public static String extractSub(String jwtToken) throws Exception {
-        String[] parts = jwtToken.split("\\.");
-        if (parts.length != 3) {
+        String sub = parseClaims(jwtToken).getSub();
+        if (sub == null) {
+            throw new IllegalArgumentException("Sub claim not found in JWT token");
+        }
+        return sub;
+    }
+
+    /**
+     * Split the token, decode the payload segment and stream the claims of interest
+     * out of it without building a JSON tree. Missing claims are returned as null
+     */
+    private static TokenClaims parseClaims(String jwtToken) throws IOException {
+        int firstDot = jwtToken.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : jwtToken.indexOf('.', firstDot + 1);
+        if (firstDot < 0 || secondDot < 0 || jwtToken.indexOf('.', secondDot + 1) >= 0) {
             throw new IllegalArgumentException("Invalid JWT token format");
         }
 
-        String payload = new String(Base64.getUrlDecoder().decode(parts[1]));
-        JsonNode claims = objectMapper.readTree(payload);
+        byte[] payload = Base64.getUrlDecoder().decode(jwtToken.substring(firstDot + 1, secondDot));
 
-        JsonNode subNode = claims.get("sub");
-        if (subNode == null) {
-            throw new IllegalArgumentException("Sub claim not found in JWT token");
+        String username = null;
+        String sub = null;
+        String role = null;
+        long expiresAt = 0L;
+
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("JWT payload is not a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                switch (field) {
+                    case "cognito:username":
+                        username = textValue(parser, value);
+                        break;
+                    case "sub":
+                        sub = textValue(parser, value);
+                        break;
+                    case "custom:role":
+                        role = textValue(parser, value);
+                        break;
+                    case "exp":
+                        if (value.isScalarValue()) {
+                            expiresAt = parser.getValueAsLong(0L);
+                        } else {
+                            parser.skipChildren();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
         }
 
-        return subNode.asText();
+        return new TokenClaims(username, sub, role, expiresAt);
+    }
+
+    /**
+     * Scalar claims are returned as text, structured claims as an empty string
+     */
+    private static String textValue(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return "";
     }
 }
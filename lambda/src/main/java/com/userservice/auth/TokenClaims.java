@@ -0,0 +1,57 @@
+package com.userservice.auth;
+
+/**
+ * Immutable view of the JWT claims the service relies on.
+ * Produced in a single pass by CognitoTokenValidator.decodeClaims
+ */
+public final class TokenClaims {
+    private final String username;
+    private final String sub;
+    private final String role;
+    private final long expiresAt;
+
+    public TokenClaims(String username, String sub, String role, long expiresAt) {
+        this.username = username;
+        this.sub = sub;
+        this.role = role;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * cognito:username claim
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * sub claim (Cognito user unique identifier)
+     */
+    public String getSub() {
+        return sub;
+    }
+
+    /**
+     * custom:role claim
+     */
+    public String getRole() {
+        return role;
+    }
+
+    /**
+     * exp claim in epoch seconds, or 0 if the token carries none
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenClaims{" +
+                "username='" + username + '\'' +
+                ", sub='" + sub + '\'' +
+                ", role='" + role + '\'' +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -0,0 +1,494 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.ClientRegistry;
+import com.userservice.auth.AuthContext;
+import com.userservice.auth.AuthorizationUtil;
+import com.userservice.auth.UnauthorizedException;
+import com.userservice.model.CreateUserRequest;
+import com.userservice.model.UserRole;
+import com.userservice.model.UserTableSchema;
+import com.userservice.service.CognitoService;
+import com.userservice.service.CreatePath;
+import com.userservice.service.DuplicateUsernameException;
+import com.userservice.util.DynamoBatch;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.JsonOutput;
+import com.userservice.util.Priming;
+import com.userservice.util.ResponseUtil;
+import com.userservice.util.TokenBucket;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Bulk registration: POST /users/batch with a JSON array of CreateUserRequest.
+ *
+ * Every entry is validated before anything is written. Each username is then claimed with
+ * a conditional PutItem on the Usernames table (attribute_not_exists), all in flight at
+ * once on the async client, so a name that is reserved, including by a user still awaiting
+ * cleanup, is a conflict and never reaches Cognito. Cognito users are created only for the
+ * claimed names, with each user's Cognito calls admitted by a token bucket sized to the
+ * Cognito admin API quota. The user records are written with BatchWriteItem in groups of
+ * 25, retrying UnprocessedItems with backoff. Entries that fail after their claim have their
+ * Cognito user removed and their reservation released. The response reports the outcome of
+ * every entry.
+ */
+public class BatchCreateUsersHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+    private final DynamoDbClient dynamoDb;
+    private final DynamoDbAsyncClient dynamoDbAsync;
+    private final String tableName;
+    private final String usernamesTableName;
+    private final ObjectMapper objectMapper;
+    private final CognitoService cognitoService;
+    private final InvocationMetrics metrics;
+
+    public static final int MAX_BATCH_SIZE = 100;
+
+    // On the two-call path AdminSetUserPassword falls in Cognito's UserAccountUpdate
+    // category (25 RPS by default), the tighter of the two calls each user needs
+    private static final int DEFAULT_COGNITO_ADMIN_RPS = 25;
+
+    // Shared by every invocation in this container
+    private static final TokenBucket cognitoLimiter =
+            TokenBucket.fromEnvironment("COGNITO_ADMIN_RPS", DEFAULT_COGNITO_ADMIN_RPS);
+
+    private static final String PRIMING_BODY =
+            "[{\"username\":\"__priming__\",\"role\":\"guest\",\"password\":\"Priming123!\"}]";
+
+    public BatchCreateUsersHandler() {
+        this.dynamoDb = ClientRegistry.dynamoDb();
+        this.dynamoDbAsync = ClientRegistry.dynamoDbAsync();
+        this.tableName = System.getenv("TABLE_NAME");
+        this.usernamesTableName = System.getenv("USERNAMES_TABLE_NAME");
+        this.objectMapper = new ObjectMapper();
+        this.metrics = new InvocationMetrics();
+        this.cognitoService = new CognitoService(ClientRegistry.cognito(), ClientRegistry.cognitoAsync(), metrics);
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
+    }
+
+    BatchCreateUsersHandler(DynamoDbClient dynamoDb, DynamoDbAsyncClient dynamoDbAsync, String tableName,
+                            String usernamesTableName, CognitoService cognitoService, InvocationMetrics metrics) {
+        this.dynamoDb = dynamoDb;
+        this.dynamoDbAsync = dynamoDbAsync;
+        this.tableName = tableName;
+        this.usernamesTableName = usernamesTableName;
+        this.objectMapper = new ObjectMapper();
+        this.metrics = metrics;
+        this.cognitoService = cognitoService;
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        APIGatewayProxyResponseEvent response = handle(event, context);
+        cognitoService.recordResilienceMetrics();
+        return metrics.finish(response);
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
+        context.getLogger().log("BatchCreateUsersHandler - Request received");
+
+        try {
+            // Extract auth context (REQUIRED for this endpoint)
+            AuthContext authContext;
+            long authStart = metrics.start();
+            try {
+                authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
+                if (authContext == null) {
+                    return ResponseUtil.unauthorized("Authentication required");
+                }
+            } catch (UnauthorizedException e) {
+                return ResponseUtil.unauthorized(e.getMessage());
+            }
+
+            if (!AuthorizationUtil.canBatchCreateUsers(authContext)) {
+                return ResponseUtil.forbidden("You are not authorized to create users");
+            }
+
+            // Parse request body
+            String body = event.getBody();
+            if (body == null || body.trim().isEmpty()) {
+                return ResponseUtil.badRequest("Request body is required");
+            }
+
+            CreateUserRequest[] requests;
+            long parseStart = metrics.start();
+            try {
+                requests = objectMapper.readValue(body, CreateUserRequest[].class);
+            } catch (JsonProcessingException e) {
+                return ResponseUtil.badRequest("Request body must be a JSON array of users");
+            }
+            metrics.record("ParseRequest", parseStart);
+
+            if (requests.length == 0 || requests.length > MAX_BATCH_SIZE) {
+                return ResponseUtil.badRequest("Batch must contain between 1 and " + MAX_BATCH_SIZE + " users");
+            }
+
+            // Validate every entry before creating anything
+            Set<String> usernames = new HashSet<>();
+            for (int i = 0; i < requests.length; i++) {
+                if (requests[i] == null) {
+                    return ResponseUtil.badRequest("users[" + i + "]: User entry is required");
+                }
+                try {
+                    requests[i].validate();
+                } catch (IllegalArgumentException e) {
+                    return ResponseUtil.badRequest("users[" + i + "]: " + e.getMessage());
+                }
+                if (!usernames.add(requests[i].getUsername())) {
+                    return ResponseUtil.badRequest("users[" + i + "]: Duplicate username in batch");
+                }
+            }
+
+            long currentTime = System.currentTimeMillis();
+            List<ItemResult> results = new ArrayList<>(requests.length);
+            for (int i = 0; i < requests.length; i++) {
+                results.add(new ItemResult(i, requests[i].getUsername(),
+                        UUID.randomUUID().toString(),
+                        UserRole.fromString(requests[i].getRole()).getValue()));
+            }
+
+            long claimStart = metrics.start();
+            claimUsernames(results, currentTime);
+            metrics.record("ClaimUsernames", claimStart);
+
+            List<ItemResult> claimed = pending(results);
+            context.getLogger().log("Creating " + claimed.size() + " users in Cognito");
+
+            long cognitoStart = metrics.start();
+            createCognitoUsers(requests, claimed);
+            metrics.record("CognitoCreateUsers", cognitoStart);
+
+            long writeStart = metrics.start();
+            try {
+                writeUserItems(pending(results), currentTime);
+            } catch (DynamoDbException e) {
+                // Not retryable, so none of the records can be relied on; undo every entry
+                for (ItemResult result : results) {
+                    if (result.status == Status.PENDING || result.status == Status.CREATED) {
+                        result.fail(Status.FAILED, "Error creating user in database");
+                        deleteUserItem(result);
+                    }
+                }
+                undoFailed(results, context);
+                throw e;
+            }
+            metrics.record("BatchWriteItem", writeStart);
+
+            undoFailed(results, context);
+
+            int createdCount = 0;
+            for (ItemResult result : results) {
+                if (result.status == Status.CREATED) {
+                    createdCount++;
+                }
+            }
+            metrics.count("UsersCreated", createdCount);
+            metrics.count("UsersFailed", results.size() - createdCount);
+
+            context.getLogger().log(String.format(
+                    "Batch create finished: %d created, %d failed", createdCount, results.size() - createdCount));
+            return ResponseUtil.successJson(writeResults(results, createdCount, currentTime));
+
+        } catch (Exception e) {
+            context.getLogger().log("Error creating users: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseUtil.internalServerError("Error creating users: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        try {
+            for (CreateUserRequest request : objectMapper.readValue(PRIMING_BODY, CreateUserRequest[].class)) {
+                request.validate();
+            }
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        Priming.primeDynamoDbAsync(dynamoDbAsync, tableName);
+        cognitoService.prime();
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        Priming.primeDynamoDbAsync(dynamoDbAsync, tableName);
+        cognitoService.prime();
+    }
+
+    /**
+     * Claim every username with a conditional PutItem, all in flight at once. A name that
+     * already has a reservation is a conflict; claimed entries move to PENDING
+     */
+    private void claimUsernames(List<ItemResult> results, long createdAt) {
+        List<CompletableFuture<Void>> claims = new ArrayList<>(results.size());
+        for (ItemResult result : results) {
+            claims.add(dynamoDbAsync.putItem(PutItemRequest.builder()
+                            .tableName(usernamesTableName)
+                            .item(reservationItem(result, createdAt))
+                            .conditionExpression("attribute_not_exists(username)")
+                            .build())
+                    .handle((response, error) -> {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (cause == null) {
+                            result.reserved = true;
+                            result.status = Status.PENDING;
+                        } else if (cause instanceof ConditionalCheckFailedException) {
+                            result.fail(Status.CONFLICT, "Username already exists");
+                        } else {
+                            result.fail(Status.FAILED, "Error reserving username: " + cause.getMessage());
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(claims.toArray(CompletableFuture<?>[]::new)).join();
+    }
+
+    private static List<ItemResult> pending(List<ItemResult> results) {
+        List<ItemResult> pending = new ArrayList<>();
+        for (ItemResult result : results) {
+            if (result.status == Status.PENDING) {
+                pending.add(result);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Start one Cognito create per entry as the limiter admits it, then wait for all of them
+     */
+    private void createCognitoUsers(CreateUserRequest[] requests, List<ItemResult> results)
+            throws InterruptedException {
+        List<CompletableFuture<Void>> calls = new ArrayList<>(results.size());
+        for (ItemResult result : results) {
+            cognitoLimiter.acquire();
+            CreateUserRequest request = requests[result.index];
+            calls.add(cognitoService
+                    .createUserAsync(result.username, result.role, request.getPassword(),
+                            () -> result.cognitoUserCreated = true)
+                    .handle((path, error) -> {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (cause == null) {
+                            result.createPath = path;
+                        } else if (cause instanceof DuplicateUsernameException) {
+                            result.fail(Status.CONFLICT, "Username already exists");
+                        } else {
+                            result.fail(Status.FAILED, cause.getMessage());
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(calls.toArray(CompletableFuture<?>[]::new)).join();
+
+        for (ItemResult result : results) {
+            if (result.createPath != null) {
+                metrics.count(result.createPath.getMetricName(), 1);
+            }
+        }
+    }
+
+    /**
+     * Write the user records of claimed, Cognito-created entries in BatchWriteItem groups,
+     * retrying UnprocessedItems; entries still unprocessed after the last attempt are marked
+     * failed. Each record has a fresh userId, so the puts need no condition
+     */
+    private void writeUserItems(List<ItemResult> created, long createdAt) throws InterruptedException {
+        Map<String, ItemResult> byUserId = new HashMap<>();
+        List<DynamoBatch.TableWrite> writes = new ArrayList<>(created.size());
+
+        for (ItemResult result : created) {
+            byUserId.put(result.userId, result);
+            writes.add(new DynamoBatch.TableWrite(tableName, DynamoBatch.put(userItem(result, createdAt))));
+        }
+
+        DynamoBatch.WriteResult writeResult = DynamoBatch.writeAll(dynamoDb, writes);
+        metrics.count("BatchWriteRetries", writeResult.getRetries());
+
+        Set<ItemResult> failed = new HashSet<>();
+        for (DynamoBatch.TableWrite write : writeResult.getUnprocessed()) {
+            failed.add(byUserId.get(write.getRequest().putRequest().item().get("userId").s()));
+        }
+
+        for (ItemResult result : created) {
+            if (failed.contains(result)) {
+                result.fail(Status.FAILED, "Error creating user in database");
+            } else {
+                result.status = Status.CREATED;
+            }
+        }
+    }
+
+    /**
+     * Undo what was created for entries that failed after their claim; the Cognito user
+     * goes first so the released name can be claimed again right away
+     */
+    private void undoFailed(List<ItemResult> results, Context context) {
+        for (ItemResult result : results) {
+            if (result.status != Status.CREATED) {
+                if (result.cognitoUserCreated) {
+                    removeCognitoUser(result, context);
+                }
+                if (result.reserved) {
+                    releaseReservation(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Best-effort removal of a user record that may have been written
+     */
+    private void deleteUserItem(ItemResult result) {
+        try {
+            dynamoDb.deleteItem(DeleteItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Map.of("userId", AttributeValue.builder().s(result.userId).build()))
+                    .build());
+        } catch (DynamoDbException e) {
+            // Leftovers are reported through the failed status
+        }
+    }
+
+    /**
+     * Best-effort release of a failed entry's reservation, only while it is still this entry's
+     */
+    private void releaseReservation(ItemResult result) {
+        try {
+            dynamoDb.deleteItem(DeleteItemRequest.builder()
+                    .tableName(usernamesTableName)
+                    .key(Map.of("username", AttributeValue.builder().s(result.username).build()))
+                    .conditionExpression("userId = :userId")
+                    .expressionAttributeValues(Map.of(
+                            ":userId", AttributeValue.builder().s(result.userId).build()))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Already released
+        } catch (DynamoDbException e) {
+            // Leftovers are reported through the failed status
+        }
+    }
+
+    private void removeCognitoUser(ItemResult result, Context context) {
+        try {
+            cognitoLimiter.acquire();
+            cognitoService.deleteUser(result.username);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            context.getLogger().log("Error removing Cognito user " + result.username + ": " + e.getMessage());
+        }
+    }
+
+    private String writeResults(List<ItemResult> results, int createdCount, long createdAt) throws Exception {
+        return JsonOutput.write(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("results");
+            for (ItemResult result : results) {
+                generator.writeStartObject();
+                generator.writeNumberField("index", result.index);
+                generator.writeStringField("username", result.username);
+                generator.writeStringField("status", result.status.value);
+                if (result.status == Status.CREATED) {
+                    generator.writeStringField("userId", result.userId);
+                    generator.writeStringField("role", result.role);
+                    generator.writeNumberField("createdAt", createdAt);
+                } else {
+                    generator.writeStringField("error", result.error);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("created", createdCount);
+            generator.writeNumberField("failed", results.size() - createdCount);
+            generator.writeEndObject();
+        });
+    }
+
+    private Map<String, AttributeValue> userItem(ItemResult result, long createdAt) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("userId", AttributeValue.builder().s(result.userId).build());
+        item.put("username", AttributeValue.builder().s(result.username).build());
+        item.put("role", AttributeValue.builder().s(result.role).build());
+        item.put("createdAt", AttributeValue.builder().n(String.valueOf(createdAt)).build());
+        item.put("updatedAt", AttributeValue.builder().n(String.valueOf(createdAt)).build());
+        item.put(UserTableSchema.LIST_PARTITION,
+                AttributeValue.builder().s(UserTableSchema.LIST_PARTITION_VALUE).build());
+        return item;
+    }
+
+    private Map<String, AttributeValue> reservationItem(ItemResult result, long createdAt) {
+        Map<String, AttributeValue> reservation = new HashMap<>();
+        reservation.put("username", AttributeValue.builder().s(result.username).build());
+        reservation.put("userId", AttributeValue.builder().s(result.userId).build());
+        reservation.put("createdAt", AttributeValue.builder().n(String.valueOf(createdAt)).build());
+        return reservation;
+    }
+
+    private enum Status {
+        PENDING("pending"),
+        CREATED("created"),
+        CONFLICT("conflict"),
+        FAILED("failed");
+
+        private final String value;
+
+        Status(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Outcome of one batch entry; Cognito callbacks write it before the join that reads it
+     */
+    private static final class ItemResult {
+        private final int index;
+        private final String username;
+        private final String userId;
+        private final String role;
+        private volatile Status status = Status.FAILED;
+        private volatile boolean reserved;
+        private volatile boolean cognitoUserCreated;
+        private volatile CreatePath createPath;
+        private volatile String error;
+
+        private ItemResult(int index, String username, String userId, String role) {
+            this.index = index;
+            this.username = username;
+            this.userId = userId;
+            this.role = role;
+        }
+
+        private void fail(Status status, String error) {
+            this.status = status;
+            this.error = error;
+        }
+    }
+}
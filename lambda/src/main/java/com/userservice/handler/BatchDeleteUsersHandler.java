@@ -0,0 +1,334 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.ClientRegistry;
+import com.userservice.auth.AuthContext;
+import com.userservice.auth.AuthorizationUtil;
+import com.userservice.auth.UnauthorizedException;
+import com.userservice.model.UserTableSchema;
+import com.userservice.service.DynamoCleanupIntentStore;
+import com.userservice.service.LocalUserCache;
+import com.userservice.service.UserCache;
+import com.userservice.util.DynamoBatch;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.JsonOutput;
+import com.userservice.util.Priming;
+import com.userservice.util.ResponseUtil;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Bulk deletion: DELETE /users/batch with {"userIds": [...]}.
+ *
+ * Targets are read with BatchGetItem and checked one by one with
+ * AuthorizationUtil.canDeleteUser. Permitted targets are turned into tombstones with one
+ * conditional UpdateItem each, all in flight at once, which queues their Cognito users and
+ * username reservations for CleanupDrainHandler just like a single delete. The condition
+ * requires the user to be live and still carry the username that was authorized, so a
+ * target deleted or replaced since the read is reported as not found instead of being
+ * overwritten. The response reports the outcome for every requested id.
+ */
+public class BatchDeleteUsersHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+    private final DynamoDbClient dynamoDb;
+    private final DynamoDbAsyncClient dynamoDbAsync;
+    private final String tableName;
+    private final ObjectMapper objectMapper;
+    private final UserCache userCache;
+    private final InvocationMetrics metrics;
+
+    public static final int MAX_BATCH_SIZE = 100;
+
+    private static final String PRIMING_BODY = "{\"userIds\":[\"__priming__\"]}";
+
+    public BatchDeleteUsersHandler() {
+        this.dynamoDb = ClientRegistry.dynamoDb();
+        this.dynamoDbAsync = ClientRegistry.dynamoDbAsync();
+        this.tableName = System.getenv("TABLE_NAME");
+        this.objectMapper = new ObjectMapper();
+        this.userCache = LocalUserCache.shared();
+        this.metrics = new InvocationMetrics();
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
+    }
+
+    /**
+     * For tests: explicit clients and cache, no SnapStart registration
+     */
+    BatchDeleteUsersHandler(DynamoDbClient dynamoDb, DynamoDbAsyncClient dynamoDbAsync, String tableName,
+                            UserCache userCache, InvocationMetrics metrics) {
+        this.dynamoDb = dynamoDb;
+        this.dynamoDbAsync = dynamoDbAsync;
+        this.tableName = tableName;
+        this.objectMapper = new ObjectMapper();
+        this.userCache = userCache;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        return metrics.finish(handle(event, context));
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
+        context.getLogger().log("BatchDeleteUsersHandler - Request received");
+
+        try {
+            // Extract auth context (REQUIRED for this endpoint)
+            AuthContext authContext;
+            long authStart = metrics.start();
+            try {
+                authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
+                if (authContext == null) {
+                    return ResponseUtil.unauthorized("Authentication required");
+                }
+            } catch (UnauthorizedException e) {
+                return ResponseUtil.unauthorized(e.getMessage());
+            }
+
+            // Parse request body
+            String body = event.getBody();
+            if (body == null || body.trim().isEmpty()) {
+                return ResponseUtil.badRequest("Request body is required");
+            }
+
+            List<String> userIds;
+            try {
+                userIds = parseUserIds(body);
+            } catch (IllegalArgumentException e) {
+                return ResponseUtil.badRequest(e.getMessage());
+            }
+
+            context.getLogger().log("Deleting " + userIds.size() + " users");
+
+            // Read targets to get usernames for the authorization check
+            List<Map<String, AttributeValue>> keys = new ArrayList<>(userIds.size());
+            for (String userId : userIds) {
+                keys.add(Map.of("userId", AttributeValue.builder().s(userId).build()));
+            }
+
+            long getStart = metrics.start();
+            DynamoBatch.GetResult getResult = DynamoBatch.getAll(dynamoDb, tableName, keys, null);
+            metrics.record("BatchGetItem", getStart);
+
+            // Tombstones of users deleted earlier count as missing
+            Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+            for (Map<String, AttributeValue> item : getResult.getItems()) {
+                if (!item.containsKey(UserTableSchema.DELETED_AT)) {
+                    items.put(item.get("userId").s(), item);
+                }
+            }
+            Set<String> unread = new HashSet<>();
+            for (Map<String, AttributeValue> key : getResult.getUnprocessedKeys()) {
+                unread.add(key.get("userId").s());
+            }
+
+            List<ItemResult> results = new ArrayList<>(userIds.size());
+            List<ItemResult> targets = new ArrayList<>();
+            for (String userId : userIds) {
+                Map<String, AttributeValue> item = items.get(userId);
+                ItemResult result = new ItemResult(userId, item != null ? item.get("username").s() : null);
+                results.add(result);
+                if (unread.contains(userId)) {
+                    result.fail(Status.FAILED, "Error reading user");
+                } else if (result.username == null) {
+                    result.fail(Status.NOT_FOUND, "User not found");
+                } else if (!AuthorizationUtil.canDeleteUser(authContext, result.username)) {
+                    result.fail(Status.FORBIDDEN, AuthorizationUtil.getUnauthorizedMessage("delete this user"));
+                } else {
+                    targets.add(result);
+                }
+            }
+
+            long writeStart = metrics.start();
+            writeTombstones(targets);
+            metrics.record("UpdateItem", writeStart);
+
+            int deletedCount = 0;
+            for (ItemResult result : results) {
+                if (result.status == Status.DELETED) {
+                    deletedCount++;
+                }
+            }
+            metrics.count("UsersDeleted", deletedCount);
+            metrics.count("UsersFailed", results.size() - deletedCount);
+
+            context.getLogger().log(String.format(
+                    "Batch delete finished: %d deleted, %d not deleted", deletedCount, results.size() - deletedCount));
+            return ResponseUtil.successJson(writeResults(results, deletedCount));
+
+        } catch (Exception e) {
+            context.getLogger().log("Error deleting users: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseUtil.internalServerError("Error deleting users: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        try {
+            parseUserIds(PRIMING_BODY);
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        Priming.primeDynamoDbAsync(dynamoDbAsync, tableName);
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        Priming.primeDynamoDbAsync(dynamoDbAsync, tableName);
+    }
+
+    /**
+     * Distinct, non-empty user ids from {"userIds": [...]}, in request order
+     */
+    private List<String> parseUserIds(String body) {
+        JsonNode userIds;
+        try {
+            userIds = objectMapper.readTree(body).path("userIds");
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Request body must be a JSON object with a userIds array");
+        }
+        if (!userIds.isArray()) {
+            throw new IllegalArgumentException("Request body must be a JSON object with a userIds array");
+        }
+        if (userIds.size() == 0 || userIds.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("userIds must contain between 1 and " + MAX_BATCH_SIZE + " ids");
+        }
+
+        Set<String> distinct = new LinkedHashSet<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            JsonNode userId = userIds.get(i);
+            if (!userId.isTextual() || userId.asText().trim().isEmpty()) {
+                throw new IllegalArgumentException("userIds[" + i + "] must be a non-empty string");
+            }
+            distinct.add(userId.asText());
+        }
+        return new ArrayList<>(distinct);
+    }
+
+    /**
+     * Tombstone every target with a conditional UpdateItem, all in flight at once. A failed
+     * condition means the user was deleted or replaced after the read
+     */
+    private void writeTombstones(List<ItemResult> targets) {
+        Map<String, AttributeValue> tombstoneValues = DynamoCleanupIntentStore.tombstoneValues(System.currentTimeMillis());
+        List<CompletableFuture<Void>> updates = new ArrayList<>(targets.size());
+        for (ItemResult result : targets) {
+            Map<String, AttributeValue> values = new HashMap<>(tombstoneValues);
+            values.put(":username", AttributeValue.builder().s(result.username).build());
+            updates.add(dynamoDbAsync.updateItem(UpdateItemRequest.builder()
+                            .tableName(tableName)
+                            .key(Map.of("userId", AttributeValue.builder().s(result.userId).build()))
+                            .updateExpression(DynamoCleanupIntentStore.TOMBSTONE_UPDATE)
+                            .conditionExpression("attribute_exists(userId) AND attribute_not_exists("
+                                    + UserTableSchema.DELETED_AT + ") AND username = :username")
+                            .expressionAttributeNames(DynamoCleanupIntentStore.TOMBSTONE_NAMES)
+                            .expressionAttributeValues(values)
+                            .build())
+                    .handle((response, error) -> {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (cause == null) {
+                            result.status = Status.DELETED;
+                        } else if (cause instanceof ConditionalCheckFailedException) {
+                            result.fail(Status.NOT_FOUND, "User not found");
+                        } else {
+                            result.fail(Status.FAILED, "Error deleting user from database");
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(updates.toArray(CompletableFuture<?>[]::new)).join();
+
+        for (ItemResult result : targets) {
+            if (result.status == Status.DELETED) {
+                userCache.invalidate(result.userId);
+            }
+        }
+    }
+
+    private String writeResults(List<ItemResult> results, int deletedCount) throws Exception {
+        return JsonOutput.write(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("results");
+            for (ItemResult result : results) {
+                generator.writeStartObject();
+                generator.writeStringField("userId", result.userId);
+                if (result.username != null) {
+                    generator.writeStringField("username", result.username);
+                }
+                generator.writeStringField("status", result.status.value);
+                if (result.status != Status.DELETED) {
+                    generator.writeStringField("error", result.error);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("deleted", deletedCount);
+            generator.writeNumberField("failed", results.size() - deletedCount);
+            generator.writeEndObject();
+        });
+    }
+
+    private enum Status {
+        DELETED("deleted"),
+        NOT_FOUND("not_found"),
+        FORBIDDEN("forbidden"),
+        FAILED("failed");
+
+        private final String value;
+
+        Status(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Outcome of one requested id
+     */
+    private static final class ItemResult {
+        private final String userId;
+        private final String username;
+        private Status status = Status.FAILED;
+        private String error;
+
+        private ItemResult(String userId, String username) {
+            this.userId = userId;
+            this.username = username;
+        }
+
+        private void fail(Status status, String error) {
+            this.status = status;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.userservice.ClientRegistry;
+import com.userservice.service.CleanupDrainer;
+import com.userservice.service.CognitoService;
+import com.userservice.service.DynamoCleanupIntentStore;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Priming;
+import com.userservice.util.TokenBucket;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.Map;
+
+/**
+ * Scheduled drain of the user cleanup queue.
+ *
+ * Deletes only write a tombstone (see DynamoCleanupIntentStore); this function, invoked by
+ * an EventBridge schedule, removes the Cognito users and username reservations of those
+ * tombstones in batches until the queue is empty or the invocation is about to time out.
+ */
+public class CleanupDrainHandler implements RequestHandler<Map<String, Object>, String>, Resource {
+    private final DynamoDbClient dynamoDb;
+    private final String tableName;
+    private final CognitoService cognitoService;
+    private final CleanupDrainer drainer;
+    private final int batchSize;
+    private final InvocationMetrics metrics;
+
+    private static final int DEFAULT_BATCH_SIZE = 25;
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final int DEFAULT_COGNITO_ADMIN_RPS = 25;
+
+    // Stop starting batches once less than this is left of the invocation
+    private static final long TIME_RESERVE_MILLIS = 10_000;
+
+    public CleanupDrainHandler() {
+        this.dynamoDb = ClientRegistry.dynamoDb();
+        this.tableName = System.getenv("TABLE_NAME");
+        this.metrics = new InvocationMetrics();
+        this.cognitoService = new CognitoService(ClientRegistry.cognito(), ClientRegistry.cognitoAsync(), metrics);
+        this.batchSize = intFromEnvironment("CLEANUP_BATCH_SIZE", DEFAULT_BATCH_SIZE);
+        this.drainer = new CleanupDrainer(
+                cognitoService::deleteUserAsync,
+                new DynamoCleanupIntentStore(dynamoDb, tableName, System.getenv("USERNAMES_TABLE_NAME")),
+                TokenBucket.fromEnvironment("COGNITO_ADMIN_RPS", DEFAULT_COGNITO_ADMIN_RPS),
+                intFromEnvironment("CLEANUP_MAX_ATTEMPTS", DEFAULT_MAX_ATTEMPTS));
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
+    }
+
+    @Override
+    public String handleRequest(Map<String, Object> event, Context context) {
+        metrics.begin(context, null);
+        int statusCode = 200;
+        String summary;
+
+        long drainStart = metrics.start();
+        try {
+            CleanupDrainer.Result result = drainer.drain(batchSize,
+                    () -> context.getRemainingTimeInMillis() > TIME_RESERVE_MILLIS);
+            metrics.count("CleanupCompleted", result.getCompleted());
+            metrics.count("CleanupRetried", result.getRetried());
+            metrics.count("CleanupParked", result.getParked());
+            metrics.count("CleanupDeferred", result.getDeferred());
+            summary = String.format("Cleanup drain finished: %d completed, %d retried, %d parked, %d deferred",
+                    result.getCompleted(), result.getRetried(), result.getParked(), result.getDeferred());
+        } catch (Exception e) {
+            statusCode = 500;
+            summary = "Error draining cleanup queue: " + e.getMessage();
+            e.printStackTrace();
+        }
+        metrics.record("Drain", drainStart);
+
+        context.getLogger().log(summary);
+        cognitoService.recordResilienceMetrics();
+        metrics.finish(statusCode);
+        return summary;
+    }
+
+    /**
+     * Warm up SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        cognitoService.prime();
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        cognitoService.prime();
+    }
+
+    private static int intFromEnvironment(String variable, int defaultValue) {
+        String value = System.getenv(variable);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            return parsed > 0 ? parsed : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
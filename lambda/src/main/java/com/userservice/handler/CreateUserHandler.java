@@ -5,42 +5,68 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.ClientRegistry;
 import com.userservice.auth.AuthContext;
 import com.userservice.auth.AuthorizationUtil;
 import com.userservice.auth.UnauthorizedException;
 import com.userservice.model.CreateUserRequest;
 import com.userservice.model.User;
+import com.userservice.model.UserRole;
 import com.userservice.service.CognitoService;
+import com.userservice.service.CreateUserSaga;
+import com.userservice.service.DuplicateUsernameException;
+import com.userservice.service.ServiceUnavailableException;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Priming;
 import com.userservice.util.ResponseUtil;
-import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.dynamodb.model.*;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 
-public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
-    private final DynamoDbClient dynamoDb;
+public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+    private final DynamoDbAsyncClient dynamoDb;
     private final String tableName;
     private final ObjectMapper objectMapper;
     private final CognitoService cognitoService;
+    private final CreateUserSaga createUserSaga;
+    private final InvocationMetrics metrics;
+
+    private static final String PRIMING_BODY =
+            "{\"username\":\"__priming__\",\"role\":\"guest\",\"password\":\"Priming123!\"}";
 
     public CreateUserHandler() {
-        this.dynamoDb = DynamoDbClient.builder().build();
+        this.dynamoDb = ClientRegistry.dynamoDbAsync();
         this.tableName = System.getenv("TABLE_NAME");
         this.objectMapper = new ObjectMapper();
-        this.cognitoService = new CognitoService();
+        this.metrics = new InvocationMetrics();
+        this.cognitoService = new CognitoService(ClientRegistry.cognito(), ClientRegistry.cognitoAsync(), metrics);
+        this.createUserSaga = new CreateUserSaga(dynamoDb, cognitoService,
+                tableName, System.getenv("USERNAMES_TABLE_NAME"), metrics);
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        APIGatewayProxyResponseEvent response = handle(event, context);
+        cognitoService.recordResilienceMetrics();
+        return metrics.finish(response);
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
         context.getLogger().log("CreateUserHandler - Request received");
 
         try {
             // Extract auth context (optional - endpoint is public for registration)
             AuthContext authContext = null;
+            long authStart = metrics.start();
             try {
                 authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
             } catch (UnauthorizedException e) {
                 return ResponseUtil.unauthorized(e.getMessage());
             }
@@ -56,7 +82,9 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
                 return ResponseUtil.badRequest("Request body is required");
             }
 
+            long parseStart = metrics.start();
             CreateUserRequest request = objectMapper.readValue(body, CreateUserRequest.class);
+            metrics.record("ParseRequest", parseStart);
 
             // Validate input
             try {
@@ -70,55 +98,26 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
                 return ResponseUtil.forbidden("You can only create your own user entry");
             }
 
-            // Check if username already exists in DynamoDB
-            if (usernameExists(request.getUsername())) {
-                return ResponseUtil.conflict("Username '" + request.getUsername() + "' already exists");
-            }
-
-            context.getLogger().log("Creating Cognito user: " + request.getUsername());
-
-            // Create Cognito user FIRST
-            try {
-                cognitoService.createUser(request.getUsername(), request.getRole(), request.getPassword());
-            } catch (Exception e) {
-                context.getLogger().log("Error creating Cognito user: " + e.getMessage());
-                return ResponseUtil.internalServerError("Error creating authentication: " + e.getMessage());
-            }
-
             // Generate UUID for userId
             String userId = UUID.randomUUID().toString();
+            // Store the canonical lower-case role so the role listing index groups consistently
+            String role = UserRole.fromString(request.getRole()).getValue();
             long currentTime = System.currentTimeMillis();
 
-            // Create user item in DynamoDB
-            Map<String, AttributeValue> item = new HashMap<>();
-            item.put("userId", AttributeValue.builder().s(userId).build());
-            item.put("username", AttributeValue.builder().s(request.getUsername()).build());
-            item.put("role", AttributeValue.builder().s(request.getRole()).build());
-            item.put("createdAt", AttributeValue.builder().n(String.valueOf(currentTime)).build());
-            item.put("updatedAt", AttributeValue.builder().n(String.valueOf(currentTime)).build());
+            context.getLogger().log("Creating user: " + request.getUsername());
 
+            // Reserve the username, write the user record and create the Cognito user concurrently
+            // The saga rolls back whatever was created if any step fails
             try {
-                // Put item in DynamoDB
-                PutItemRequest putItemRequest = PutItemRequest.builder()
-                        .tableName(tableName)
-                        .item(item)
-                        .build();
-
-                dynamoDb.putItem(putItemRequest);
-
-            } catch (Exception e) {
-                // Rollback: Delete Cognito user if DynamoDB creation fails
-                context.getLogger().log("DynamoDB creation failed, rolling back Cognito user: " + e.getMessage());
-                try {
-                    cognitoService.deleteUser(request.getUsername());
-                } catch (Exception rollbackEx) {
-                    context.getLogger().log("Error rolling back Cognito user: " + rollbackEx.getMessage());
-                }
-                throw new RuntimeException("Error creating user in database: " + e.getMessage());
+                createUserSaga.execute(userId, request.getUsername(), role, request.getPassword(), currentTime);
+            } catch (DuplicateUsernameException e) {
+                return ResponseUtil.conflict("Username '" + request.getUsername() + "' already exists");
+            } catch (ServiceUnavailableException e) {
+                return ResponseUtil.serviceUnavailable(e.getMessage(), e.getRetryAfterSeconds());
             }
 
             // Create response (without password)
-            User user = new User(userId, request.getUsername(), request.getRole(), currentTime, currentTime);
+            User user = new User(userId, request.getUsername(), role, currentTime, currentTime);
 
             context.getLogger().log("User created successfully: " + userId);
             return ResponseUtil.created(user);
@@ -130,22 +129,29 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
         }
     }
 
-    private boolean usernameExists(String username) {
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
         try {
-            QueryRequest queryRequest = QueryRequest.builder()
-                    .tableName(tableName)
-                    .indexName("username-index")
-                    .keyConditionExpression("username = :username")
-                    .expressionAttributeValues(Map.of(
-                            ":username", AttributeValue.builder().s(username).build()
-                    ))
-                    .limit(1)
-                    .build();
-
-            QueryResponse queryResponse = dynamoDb.query(queryRequest);
-            return !queryResponse.items().isEmpty();
+            objectMapper.readValue(PRIMING_BODY, CreateUserRequest.class).validate();
         } catch (Exception e) {
-            throw new RuntimeException("Error checking username uniqueness", e);
+            // Priming is best effort
         }
+        Priming.primeDynamoDbAsync(dynamoDb, tableName);
+        cognitoService.prime();
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDbAsync(dynamoDb, tableName);
+        cognitoService.prime();
     }
 }
@@ -4,37 +4,64 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.userservice.ClientRegistry;
 import com.userservice.auth.AuthContext;
 import com.userservice.auth.AuthorizationUtil;
 import com.userservice.auth.UnauthorizedException;
-import com.userservice.service.CognitoService;
+import com.userservice.model.UserTableSchema;
+import com.userservice.service.DynamoCleanupIntentStore;
+import com.userservice.service.LocalUserCache;
+import com.userservice.service.UserCache;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Priming;
 import com.userservice.util.ResponseUtil;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
 import java.util.HashMap;
 import java.util.Map;
 
-public class DeleteUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+/**
+ * DELETE /users/{userId}: one conditional UpdateItem that turns the user into a tombstone.
+ *
+ * The tombstone is the durable cleanup intent; CleanupDrainHandler removes the Cognito user
+ * and the username reservation afterwards, so neither is on the request path. Until then
+ * the username stays reserved.
+ */
+public class DeleteUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
     private final DynamoDbClient dynamoDb;
     private final String tableName;
-    private final CognitoService cognitoService;
+    private final UserCache userCache;
+    private final InvocationMetrics metrics;
 
     public DeleteUserHandler() {
-        this.dynamoDb = DynamoDbClient.builder().build();
+        this.dynamoDb = ClientRegistry.dynamoDb();
         this.tableName = System.getenv("TABLE_NAME");
-        this.cognitoService = new CognitoService();
+        this.userCache = LocalUserCache.shared();
+        this.metrics = new InvocationMetrics();
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        return metrics.finish(handle(event, context));
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
         context.getLogger().log("DeleteUserHandler - Request received");
 
         try {
             // Extract auth context (REQUIRED for this endpoint)
             AuthContext authContext;
+            long authStart = metrics.start();
             try {
                 authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
                 if (authContext == null) {
                     return ResponseUtil.unauthorized("Authentication required");
                 }
@@ -53,45 +80,49 @@ public class DeleteUserHandler implements RequestHandler<APIGatewayProxyRequestE
                 return ResponseUtil.badRequest("userId cannot be empty");
             }
 
+            // Fold the authorization rule into the delete condition:
+            // globaladmin may delete any live user, superuser only their own entry
+            String conditionExpression = "attribute_exists(userId) AND attribute_not_exists("
+                    + UserTableSchema.DELETED_AT + ")";
+            Map<String, AttributeValue> values = DynamoCleanupIntentStore.tombstoneValues(System.currentTimeMillis());
+            if (!AuthorizationUtil.canDeleteAnyUser(authContext)) {
+                if (!AuthorizationUtil.canDeleteUser(authContext, authContext.getUsername())) {
+                    return ResponseUtil.forbidden(
+                            AuthorizationUtil.getUnauthorizedMessage("delete this user")
+                    );
+                }
+                conditionExpression += " AND username = :caller";
+                values.put(":caller", AttributeValue.builder().s(authContext.getUsername()).build());
+            }
+
             context.getLogger().log("Deleting user: " + userId);
 
-            // First get user from DynamoDB to retrieve username for authorization check
-            GetItemRequest getItemRequest = GetItemRequest.builder()
+            // One round trip: tombstone the user if permitted, queueing the Cognito cleanup
+            // On a failed condition the current item tells 403 from 404
+            UpdateItemRequest tombstoneRequest = UpdateItemRequest.builder()
                     .tableName(tableName)
                     .key(Map.of("userId", AttributeValue.builder().s(userId).build()))
+                    .updateExpression(DynamoCleanupIntentStore.TOMBSTONE_UPDATE)
+                    .conditionExpression(conditionExpression)
+                    .expressionAttributeNames(DynamoCleanupIntentStore.TOMBSTONE_NAMES)
+                    .expressionAttributeValues(values)
+                    .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
                     .build();
 
-            GetItemResponse getResponse = dynamoDb.getItem(getItemRequest);
-
-            if (!getResponse.hasItem() || getResponse.item().isEmpty()) {
-                return ResponseUtil.notFound("User not found with userId: " + userId);
-            }
-
-            String targetUsername = getResponse.item().get("username").s();
-
-            // Check authorization (role + ownership check)
-            if (!AuthorizationUtil.canDeleteUser(authContext, targetUsername)) {
-                return ResponseUtil.forbidden(
-                        AuthorizationUtil.getUnauthorizedMessage("delete this user")
-                );
-            }
-
-            // Delete from Cognito FIRST
+            long deleteStart = metrics.start();
             try {
-                cognitoService.deleteUser(targetUsername);
-                context.getLogger().log("Cognito user deleted: " + targetUsername);
-            } catch (Exception e) {
-                context.getLogger().log("Error deleting Cognito user: " + e.getMessage());
-                // Continue with DynamoDB deletion even if Cognito fails
+                dynamoDb.updateItem(tombstoneRequest);
+            } catch (ConditionalCheckFailedException e) {
+                if (e.hasItem() && !e.item().isEmpty() && !e.item().containsKey(UserTableSchema.DELETED_AT)) {
+                    return ResponseUtil.forbidden(
+                            AuthorizationUtil.getUnauthorizedMessage("delete this user")
+                    );
+                }
+                return ResponseUtil.notFound("User not found with userId: " + userId);
+            } finally {
+                metrics.record("UpdateItem", deleteStart);
             }
-
-            // Delete from DynamoDB
-            DeleteItemRequest deleteItemRequest = DeleteItemRequest.builder()
-                    .tableName(tableName)
-                    .key(Map.of("userId", AttributeValue.builder().s(userId).build()))
-                    .build();
-
-            dynamoDb.deleteItem(deleteItemRequest);
+            userCache.invalidate(userId);
 
             // Create success response
             Map<String, String> responseData = new HashMap<>();
@@ -107,4 +138,23 @@ public class DeleteUserHandler implements RequestHandler<APIGatewayProxyRequestE
             return ResponseUtil.internalServerError("Error deleting user: " + e.getMessage());
         }
     }
+
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
 }
@@ -0,0 +1,350 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.userservice.ClientRegistry;
+import com.userservice.auth.AuthContext;
+import com.userservice.auth.AuthorizationUtil;
+import com.userservice.auth.UnauthorizedException;
+import com.userservice.model.UserTableSchema;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Priming;
+import com.userservice.util.ResponseUtil;
+import com.userservice.util.UserJsonWriter;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Bulk export of the Users table as NDJSON to the files bucket.
+ *
+ * Runs a DynamoDB parallel scan with one worker per segment on a bounded executor.
+ * Workers serialize each page into a chunk and hand it to a bounded queue; the calling
+ * thread drains the queue into an S3 multipart upload, flushing a part whenever the
+ * buffer reaches PART_SIZE. Memory stays bounded by the queue capacity and one part,
+ * regardless of table size.
+ */
+public class ExportUsersHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+    private final DynamoDbClient dynamoDb;
+    private final S3Client s3Client;
+    private final String tableName;
+    private final String bucketName;
+    private final InvocationMetrics metrics;
+
+    private static final int DEFAULT_SEGMENTS = 4;
+    private static final int MAX_SEGMENTS = 16;
+
+    // S3 multipart parts must be at least 5 MB except the last
+    private static final int PART_SIZE = 8 * 1024 * 1024;
+
+    // Pages waiting for upload, per segment; each page is at most ~1 MB of items
+    private static final int QUEUE_CAPACITY_PER_SEGMENT = 2;
+
+    private static final byte[] END_OF_SEGMENT = new byte[0];
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    public ExportUsersHandler() {
+        this.dynamoDb = ClientRegistry.dynamoDb();
+        this.s3Client = ClientRegistry.s3();
+        this.tableName = System.getenv("TABLE_NAME");
+        this.bucketName = System.getenv("BUCKET_NAME");
+        this.metrics = new InvocationMetrics();
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        return metrics.finish(handle(event, context));
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
+        context.getLogger().log("ExportUsersHandler - Request received");
+
+        try {
+            // Extract auth context (REQUIRED for this endpoint)
+            AuthContext authContext;
+            long authStart = metrics.start();
+            try {
+                authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
+                if (authContext == null) {
+                    return ResponseUtil.unauthorized("Authentication required");
+                }
+            } catch (UnauthorizedException e) {
+                return ResponseUtil.unauthorized(e.getMessage());
+            }
+
+            if (!AuthorizationUtil.canExportUsers(authContext)) {
+                return ResponseUtil.forbidden(AuthorizationUtil.getUnauthorizedMessage("export users"));
+            }
+
+            // Parse number of scan segments
+            int segments = DEFAULT_SEGMENTS;
+            Map<String, String> queryParams = event.getQueryStringParameters();
+            if (queryParams != null && queryParams.containsKey("segments")) {
+                try {
+                    segments = Integer.parseInt(queryParams.get("segments"));
+                } catch (NumberFormatException e) {
+                    return ResponseUtil.badRequest("Invalid segments parameter");
+                }
+                if (segments <= 0 || segments > MAX_SEGMENTS) {
+                    return ResponseUtil.badRequest("Segments must be between 1 and " + MAX_SEGMENTS);
+                }
+            }
+
+            String s3Key = String.format("exports/users/%d-%s.ndjson",
+                    System.currentTimeMillis(), UUID.randomUUID());
+
+            context.getLogger().log(String.format(
+                    "Exporting users with %d scan segments to S3 key: %s", segments, s3Key));
+
+            long exportStart = metrics.start();
+            long[] totals = export(segments, s3Key);
+            metrics.record("Export", exportStart);
+            metrics.count("ItemCount", totals[0]);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Users exported successfully");
+            response.put("s3Key", s3Key);
+            response.put("count", totals[0]);
+            response.put("size", totals[1]);
+            response.put("segments", segments);
+
+            context.getLogger().log(String.format(
+                    "Exported %d users (%d bytes) to %s", totals[0], totals[1], s3Key));
+            return ResponseUtil.created(response);
+
+        } catch (Exception e) {
+            context.getLogger().log("Error exporting users: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseUtil.internalServerError("Error exporting users: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run the parallel scan and stream its output to S3
+     * Returns {item count, byte count}
+     */
+    private long[] export(int segments, String s3Key) throws Exception {
+        BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(segments * QUEUE_CAPACITY_PER_SEGMENT);
+        ExecutorService executor = Executors.newFixedThreadPool(segments);
+        String uploadId = null;
+
+        try {
+            List<Future<Long>> scans = new ArrayList<>();
+            for (int segment = 0; segment < segments; segment++) {
+                int current = segment;
+                scans.add(executor.submit(() -> scanSegment(current, segments, chunks)));
+            }
+
+            uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .contentType("application/x-ndjson")
+                    .build()).uploadId();
+
+            List<CompletedPart> parts = new ArrayList<>();
+            PartBuffer part = new PartBuffer();
+            long bytes = 0;
+            int finished = 0;
+
+            while (finished < segments) {
+                byte[] chunk = chunks.poll(1, TimeUnit.SECONDS);
+                if (chunk == null) {
+                    rethrowFailures(scans);
+                    continue;
+                }
+                if (chunk == END_OF_SEGMENT) {
+                    finished++;
+                    continue;
+                }
+
+                part.write(chunk, 0, chunk.length);
+                bytes += chunk.length;
+                if (part.size() >= PART_SIZE) {
+                    parts.add(uploadPart(s3Key, uploadId, parts.size() + 1, part));
+                    part.reset();
+                }
+            }
+
+            long items = 0;
+            for (Future<Long> scan : scans) {
+                items += scan.get();
+            }
+
+            if (bytes == 0) {
+                // Multipart uploads need at least one part; write an empty object instead
+                abort(s3Key, uploadId);
+                uploadId = null;
+                s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(s3Key)
+                        .contentType("application/x-ndjson")
+                        .build(), RequestBody.empty());
+                return new long[]{0, 0};
+            }
+
+            if (part.size() > 0) {
+                parts.add(uploadPart(s3Key, uploadId, parts.size() + 1, part));
+            }
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+            uploadId = null;
+
+            return new long[]{items, bytes};
+
+        } finally {
+            executor.shutdownNow();
+            if (uploadId != null) {
+                abort(s3Key, uploadId);
+            }
+        }
+    }
+
+    /**
+     * Scan one segment page by page, handing each page to the uploader as NDJSON
+     */
+    private long scanSegment(int segment, int totalSegments, BlockingQueue<byte[]> chunks) throws Exception {
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        long items = 0;
+
+        do {
+            ScanRequest.Builder scanBuilder = ScanRequest.builder()
+                    .tableName(tableName)
+                    .segment(segment)
+                    .totalSegments(totalSegments)
+                    // Skip tombstones of deleted users awaiting cleanup
+                    .filterExpression("attribute_not_exists(" + UserTableSchema.DELETED_AT + ")");
+            if (exclusiveStartKey != null) {
+                scanBuilder.exclusiveStartKey(exclusiveStartKey);
+            }
+
+            ScanResponse scanResponse = dynamoDb.scan(scanBuilder.build());
+            if (!scanResponse.items().isEmpty()) {
+                chunks.put(toNdjson(scanResponse.items()));
+                items += scanResponse.items().size();
+            }
+
+            exclusiveStartKey = scanResponse.hasLastEvaluatedKey() && !scanResponse.lastEvaluatedKey().isEmpty()
+                    ? scanResponse.lastEvaluatedKey()
+                    : null;
+        } while (exclusiveStartKey != null);
+
+        chunks.put(END_OF_SEGMENT);
+        return items;
+    }
+
+    private byte[] toNdjson(List<Map<String, AttributeValue>> items) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(items.size() * 160);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            for (Map<String, AttributeValue> item : items) {
+                UserJsonWriter.writeUser(generator, item);
+                generator.writeRaw('\n');
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private CompletedPart uploadPart(String s3Key, String uploadId, int partNumber, PartBuffer part) {
+        UploadPartResponse response = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(s3Key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) part.size())
+                        .build(),
+                part.asRequestBody());
+
+        return CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag(response.eTag())
+                .build();
+    }
+
+    private void abort(String s3Key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (Exception e) {
+            // Incomplete uploads are also cleaned up by the bucket lifecycle rule
+        }
+    }
+
+    private static void rethrowFailures(List<Future<Long>> scans) throws Exception {
+        for (Future<Long> scan : scans) {
+            if (scan.isDone()) {
+                try {
+                    scan.get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Scan segment failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Part buffer whose contents are handed to the SDK without copying
+     */
+    private static final class PartBuffer extends ByteArrayOutputStream {
+        private PartBuffer() {
+            super(PART_SIZE + 1024 * 1024);
+        }
+
+        private RequestBody asRequestBody() {
+            byte[] data = buf;
+            int length = count;
+            return RequestBody.fromContentProvider(
+                    () -> new ByteArrayInputStream(data, 0, length), length, "application/x-ndjson");
+        }
+    }
+
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        Priming.primeS3(s3Client, bucketName);
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+        Priming.primeS3(s3Client, bucketName);
+    }
+}
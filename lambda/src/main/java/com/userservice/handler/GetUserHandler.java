@@ -4,11 +4,19 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.userservice.ClientRegistry;
 import com.userservice.auth.AuthContext;
 import com.userservice.auth.AuthorizationUtil;
 import com.userservice.auth.UnauthorizedException;
 import com.userservice.model.User;
+import com.userservice.model.UserTableSchema;
+import com.userservice.service.LocalUserCache;
+import com.userservice.service.UserCache;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Priming;
 import com.userservice.util.ResponseUtil;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
@@ -16,24 +24,44 @@ import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 
 import java.util.Map;
 
-public class GetUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class GetUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
     private final DynamoDbClient dynamoDb;
     private final String tableName;
+    private final UserCache userCache;
+    private final InvocationMetrics metrics;
 
     public GetUserHandler() {
-        this.dynamoDb = DynamoDbClient.builder().build();
-        this.tableName = System.getenv("TABLE_NAME");
+        this(ClientRegistry.dynamoDb(), System.getenv("TABLE_NAME"), LocalUserCache.shared(), new InvocationMetrics());
+    }
+
+    GetUserHandler(DynamoDbClient dynamoDb, String tableName, UserCache userCache, InvocationMetrics metrics) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+        this.userCache = userCache;
+        this.metrics = metrics;
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        APIGatewayProxyResponseEvent response = handle(event, context);
+        userCache.recordMetrics(metrics);
+        return metrics.finish(response);
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
         context.getLogger().log("GetUserHandler - Request received");
 
         try {
             // Extract auth context (REQUIRED for this endpoint)
             AuthContext authContext;
+            long authStart = metrics.start();
             try {
                 authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
                 if (authContext == null) {
                     return ResponseUtil.unauthorized("Authentication required");
                 }
@@ -59,16 +87,30 @@ public class GetUserHandler implements RequestHandler<APIGatewayProxyRequestEven
 
             context.getLogger().log("Getting user: " + userId);
 
+            UserCache.Lookup cached = userCache.get(userId);
+            context.getLogger().log(String.format("User cache %s (hit ratio %.3f)",
+                    cached.isHit() ? "hit" : "miss", userCache.getHitRatio()));
+            if (cached.isHit()) {
+                return cached.getUser() != null
+                        ? ResponseUtil.success(cached.getUser())
+                        : ResponseUtil.notFound("User not found with userId: " + userId);
+            }
+
             // Get item from DynamoDB
             GetItemRequest getItemRequest = GetItemRequest.builder()
                     .tableName(tableName)
                     .key(Map.of("userId", AttributeValue.builder().s(userId).build()))
                     .build();
 
+            long getStart = metrics.start();
             GetItemResponse response = dynamoDb.getItem(getItemRequest);
+            metrics.record("GetItem", getStart);
 
             // Check if item exists
-            if (!response.hasItem() || response.item().isEmpty()) {
+            // Tombstones of deleted users awaiting cleanup count as missing
+            if (!response.hasItem() || response.item().isEmpty()
+                    || response.item().containsKey(UserTableSchema.DELETED_AT)) {
+                userCache.putMissing(userId);
                 return ResponseUtil.notFound("User not found with userId: " + userId);
             }
 
@@ -81,6 +123,7 @@ public class GetUserHandler implements RequestHandler<APIGatewayProxyRequestEven
                     Long.parseLong(item.get("createdAt").n()),
                     Long.parseLong(item.get("updatedAt").n())
             );
+            userCache.put(user);
 
             context.getLogger().log("User found: " + userId);
             return ResponseUtil.success(user);
@@ -91,4 +134,25 @@ public class GetUserHandler implements RequestHandler<APIGatewayProxyRequestEven
             return ResponseUtil.internalServerError("Error getting user: " + e.getMessage());
         }
     }
+
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        // Expiry times are based on the pre-snapshot clock
+        userCache.clear();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
 }
@@ -4,37 +4,65 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.userservice.ClientRegistry;
 import com.userservice.auth.AuthContext;
 import com.userservice.auth.AuthorizationUtil;
 import com.userservice.auth.UnauthorizedException;
-import com.userservice.model.User;
+import com.userservice.model.UserRole;
+import com.userservice.model.UserTableSchema;
+import com.userservice.util.DynamoBatch;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.PageCursorCodec;
+import com.userservice.util.Priming;
 import com.userservice.util.ResponseUtil;
+import com.userservice.util.Secrets;
+import com.userservice.util.UserJsonWriter;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
-import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 
 import java.util.*;
 
-public class ListUsersHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+/**
+ * GET /users: one page of the listing indexes, or with ?ids=a,b,c up to 100 users by id
+ */
+public class ListUsersHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
     private final DynamoDbClient dynamoDb;
     private final String tableName;
+    private final InvocationMetrics metrics;
+    private final PageCursorCodec cursorCodec;
     private static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_IDS = 100;
 
     public ListUsersHandler() {
-        this.dynamoDb = DynamoDbClient.builder().build();
+        this.dynamoDb = ClientRegistry.dynamoDb();
         this.tableName = System.getenv("TABLE_NAME");
+        this.metrics = new InvocationMetrics();
+        this.cursorCodec = PageCursorCodec.withKey(Secrets.fromEnvironment("CURSOR_SIGNING_SECRET_ARN"));
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        return metrics.finish(handle(event, context));
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
         context.getLogger().log("ListUsersHandler - Request received");
 
         try {
             // Extract auth context (REQUIRED for this endpoint)
             AuthContext authContext;
+            long authStart = metrics.start();
             try {
                 authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
                 if (authContext == null) {
                     return ResponseUtil.unauthorized("Authentication required");
                 }
@@ -47,10 +75,19 @@ public class ListUsersHandler implements RequestHandler<APIGatewayProxyRequestEv
                 return ResponseUtil.forbidden("You are not authorized to list users");
             }
 
-            // Get pagination parameters from query string
+            // Get pagination and filter parameters from query string
             Map<String, String> queryParams = event.getQueryStringParameters();
+            if (queryParams != null && queryParams.containsKey("ids")) {
+                if (queryParams.size() > 1) {
+                    return ResponseUtil.badRequest("ids cannot be combined with other query parameters");
+                }
+                return getUsersByIds(queryParams.get("ids"), context);
+            }
             int limit = DEFAULT_LIMIT;
-            Map<String, AttributeValue> exclusiveStartKey = null;
+            String role = null;
+            Long createdAfter = null;
+            Long createdBefore = null;
+            String lastKey = null;
 
             if (queryParams != null) {
                 // Parse limit
@@ -65,51 +102,98 @@ public class ListUsersHandler implements RequestHandler<APIGatewayProxyRequestEv
                     }
                 }
 
-                // Parse lastEvaluatedKey
-                if (queryParams.containsKey("lastEvaluatedKey")) {
-                    String lastKey = queryParams.get("lastEvaluatedKey");
-                    exclusiveStartKey = new HashMap<>();
-                    exclusiveStartKey.put("userId", AttributeValue.builder().s(lastKey).build());
+                // Parse role filter
+                if (queryParams.containsKey("role")) {
+                    try {
+                        role = UserRole.fromString(queryParams.get("role")).getValue();
+                    } catch (IllegalArgumentException e) {
+                        return ResponseUtil.badRequest(e.getMessage());
+                    }
+                }
+
+                // Parse creation time range (epoch milliseconds, exclusive)
+                try {
+                    if (queryParams.containsKey("createdAfter")) {
+                        createdAfter = Long.parseLong(queryParams.get("createdAfter"));
+                    }
+                    if (queryParams.containsKey("createdBefore")) {
+                        createdBefore = Long.parseLong(queryParams.get("createdBefore"));
+                    }
+                } catch (NumberFormatException e) {
+                    return ResponseUtil.badRequest("createdAfter and createdBefore must be epoch milliseconds");
+                }
+                if (createdAfter != null && createdBefore != null && isEmptyRange(createdAfter, createdBefore)) {
+                    return ResponseUtil.badRequest("createdAfter must be earlier than createdBefore");
+                }
+
+                lastKey = queryParams.get("lastEvaluatedKey");
+            }
+
+            // Query the listing index: all users, or one role, in creation order
+            String indexName = role != null ? UserTableSchema.ROLE_CREATED_INDEX : UserTableSchema.CREATED_INDEX;
+            String partitionAttribute = role != null ? "role" : UserTableSchema.LIST_PARTITION;
+            AttributeValue partitionValue = AttributeValue.builder()
+                    .s(role != null ? role : UserTableSchema.LIST_PARTITION_VALUE)
+                    .build();
+
+            Map<String, String> names = new HashMap<>();
+            Map<String, AttributeValue> values = new HashMap<>();
+            names.put("#pk", partitionAttribute);
+            values.put(":pk", partitionValue);
+            String keyCondition = "#pk = :pk";
+
+            if (createdAfter != null || createdBefore != null) {
+                names.put("#createdAt", "createdAt");
+                if (createdAfter != null && createdBefore != null) {
+                    keyCondition += " AND #createdAt BETWEEN :after AND :before";
+                    values.put(":after", number(createdAfter + 1));
+                    values.put(":before", number(createdBefore - 1));
+                } else if (createdAfter != null) {
+                    keyCondition += " AND #createdAt > :after";
+                    values.put(":after", number(createdAfter));
+                } else {
+                    keyCondition += " AND #createdAt < :before";
+                    values.put(":before", number(createdBefore));
                 }
             }
 
-            // Build scan request
-            ScanRequest.Builder scanBuilder = ScanRequest.builder()
+            QueryRequest.Builder queryBuilder = QueryRequest.builder()
                     .tableName(tableName)
+                    .indexName(indexName)
+                    .keyConditionExpression(keyCondition)
+                    .expressionAttributeNames(names)
+                    .expressionAttributeValues(values)
                     .limit(limit);
 
-            if (exclusiveStartKey != null) {
-                scanBuilder.exclusiveStartKey(exclusiveStartKey);
-            }
-
-            ScanResponse scanResponse = dynamoDb.scan(scanBuilder.build());
-
-            // Convert items to User objects
-            List<User> users = new ArrayList<>();
-            for (Map<String, AttributeValue> item : scanResponse.items()) {
-                User user = new User(
-                        item.get("userId").s(),
-                        item.get("username").s(),
-                        item.get("role").s(),
-                        Long.parseLong(item.get("createdAt").n()),
-                        Long.parseLong(item.get("updatedAt").n())
-                );
-                users.add(user);
+            // Cursors are bound to the index and partition they were issued for
+            String cursorScope = indexName + "#" + partitionValue.s();
+            if (lastKey != null) {
+                try {
+                    queryBuilder.exclusiveStartKey(cursorCodec.decode(cursorScope, lastKey));
+                } catch (IllegalArgumentException e) {
+                    return ResponseUtil.badRequest(e.getMessage());
+                }
             }
 
-            // Build response
-            Map<String, Object> responseData = new HashMap<>();
-            responseData.put("users", users);
-            responseData.put("count", users.size());
+            long queryStart = metrics.start();
+            QueryResponse queryResponse = dynamoDb.query(queryBuilder.build());
+            metrics.record("Query", queryStart);
+            metrics.count("ItemCount", queryResponse.count());
 
-            // Add pagination token if there are more results
-            if (scanResponse.hasLastEvaluatedKey() && !scanResponse.lastEvaluatedKey().isEmpty()) {
-                String lastEvaluatedKey = scanResponse.lastEvaluatedKey().get("userId").s();
-                responseData.put("lastEvaluatedKey", lastEvaluatedKey);
+            // Pagination token if there are more results
+            String lastEvaluatedKey = null;
+            if (queryResponse.hasLastEvaluatedKey() && !queryResponse.lastEvaluatedKey().isEmpty()) {
+                lastEvaluatedKey = cursorCodec.encode(cursorScope, queryResponse.lastEvaluatedKey());
             }
 
-            context.getLogger().log("Listed " + users.size() + " users");
-            return ResponseUtil.success(responseData);
+            // Serialize items straight into the response body
+            List<Map<String, AttributeValue>> items = queryResponse.items();
+            long serializeStart = metrics.start();
+            String body = UserJsonWriter.writeUserList(items, lastEvaluatedKey);
+            metrics.record("Serialize", serializeStart);
+
+            context.getLogger().log("Listed " + items.size() + " users");
+            return ResponseUtil.successJson(body);
 
         } catch (Exception e) {
             context.getLogger().log("Error listing users: " + e.getMessage());
@@ -117,4 +201,97 @@ public class ListUsersHandler implements RequestHandler<APIGatewayProxyRequestEv
             return ResponseUtil.internalServerError("Error listing users: " + e.getMessage());
         }
     }
+
+    /**
+     * Multi-get: the users among the comma-separated ids plus the ids that do not exist,
+     * read with BatchGetItem in request order
+     */
+    private APIGatewayProxyResponseEvent getUsersByIds(String idsParameter, Context context) throws Exception {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String id : idsParameter.split(",")) {
+            String trimmed = id.trim();
+            if (!trimmed.isEmpty()) {
+                ids.add(trimmed);
+            }
+        }
+        if (ids.isEmpty() || ids.size() > MAX_IDS) {
+            return ResponseUtil.badRequest("ids must contain between 1 and " + MAX_IDS + " ids");
+        }
+
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            keys.add(Map.of("userId", AttributeValue.builder().s(id).build()));
+        }
+
+        long getStart = metrics.start();
+        DynamoBatch.GetResult result = DynamoBatch.getAll(dynamoDb, tableName, keys, null);
+        metrics.record("BatchGetItem", getStart);
+        metrics.count("BatchGetRetries", result.getRetries());
+
+        // Tombstones of deleted users awaiting cleanup count as missing
+        Map<String, Map<String, AttributeValue>> found = new HashMap<>();
+        for (Map<String, AttributeValue> item : result.getItems()) {
+            if (!item.containsKey(UserTableSchema.DELETED_AT)) {
+                found.put(item.get("userId").s(), item);
+            }
+        }
+        Set<String> unread = new LinkedHashSet<>();
+        for (Map<String, AttributeValue> key : result.getUnprocessedKeys()) {
+            unread.add(key.get("userId").s());
+        }
+
+        List<Map<String, AttributeValue>> users = new ArrayList<>(found.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            Map<String, AttributeValue> item = found.get(id);
+            if (item != null) {
+                users.add(item);
+            } else if (!unread.contains(id)) {
+                missing.add(id);
+            }
+        }
+        metrics.count("ItemCount", users.size());
+
+        long serializeStart = metrics.start();
+        String body = UserJsonWriter.writeUserBatch(users, missing, new ArrayList<>(unread));
+        metrics.record("Serialize", serializeStart);
+
+        context.getLogger().log(String.format("Got %d of %d users by id", users.size(), ids.size()));
+        return ResponseUtil.successJson(body);
+    }
+
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
+
+    /**
+     * Whether no timestamp lies strictly between the bounds; a bound at the edge of the long
+     * range leaves nothing on its open side
+     */
+    private static boolean isEmptyRange(long createdAfter, long createdBefore) {
+        try {
+            return Math.addExact(createdAfter, 1) > Math.subtractExact(createdBefore, 1);
+        } catch (ArithmeticException e) {
+            return true;
+        }
+    }
+
+    private static AttributeValue number(long value) {
+        return AttributeValue.builder().n(String.valueOf(value)).build();
+    }
 }
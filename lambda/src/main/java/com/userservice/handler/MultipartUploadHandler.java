@@ -0,0 +1,506 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.ClientRegistry;
+import com.userservice.auth.AuthContext;
+import com.userservice.auth.AuthorizationUtil;
+import com.userservice.auth.UnauthorizedException;
+import com.userservice.util.FileKeys;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.PresignedUrls;
+import com.userservice.util.Priming;
+import com.userservice.util.ResponseUtil;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedUploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Multipart upload sessions for files beyond the single-request limits.
+ *
+ * POST   /files/{filename}/multipart          start a session (CreateMultipartUpload)
+ * POST   /files/{filename}/multipart/parts    presigned UploadPart URLs for up to 100 parts
+ * POST   /files/{filename}/multipart/complete verify the parts and complete the upload
+ * DELETE /files/{filename}/multipart          abort one session, or all sessions of the file
+ *
+ * Parts go straight from the client to S3, in parallel. Sessions live in S3 under the
+ * caller's uploads/{username}/{filename} key, so a caller can only ever address their
+ * own sessions and no session state is kept elsewhere. A session started with
+ * checksumAlgorithm SHA256 requires a checksum for every part: part URLs are only signed
+ * with one, and completion checks it again. Abandoned sessions are also removed by the
+ * bucket lifecycle rule after a day.
+ */
+public class MultipartUploadHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+    private final S3Client s3Client;
+    private final S3Presigner presigner;
+    private final String bucketName;
+    private final Duration expiry;
+    private final ObjectMapper objectMapper;
+    private final InvocationMetrics metrics;
+
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    public static final int MAX_PARTS = 10_000;
+    public static final int MAX_PARTS_PER_REQUEST = 100;
+    public static final long MAX_FILE_SIZE = 5L * 1024 * 1024 * 1024 * 1024;
+
+    public MultipartUploadHandler() {
+        this.s3Client = ClientRegistry.s3();
+        this.presigner = ClientRegistry.s3Presigner();
+        this.bucketName = System.getenv("BUCKET_NAME");
+        this.expiry = PresignedUrls.expiryFromEnvironment();
+        this.objectMapper = new ObjectMapper();
+        this.metrics = new InvocationMetrics();
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
+    }
+
+    /**
+     * For tests: explicit clients and settings, no SnapStart registration
+     */
+    MultipartUploadHandler(S3Client s3Client, S3Presigner presigner, String bucketName, Duration expiry,
+                           InvocationMetrics metrics) {
+        this.s3Client = s3Client;
+        this.presigner = presigner;
+        this.bucketName = bucketName;
+        this.expiry = expiry;
+        this.objectMapper = new ObjectMapper();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        return metrics.finish(handle(event, context));
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
+        context.getLogger().log("MultipartUploadHandler - Request received");
+
+        try {
+            // Extract auth context (REQUIRED for this endpoint)
+            AuthContext authContext;
+            long authStart = metrics.start();
+            try {
+                authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
+                if (authContext == null) {
+                    return ResponseUtil.unauthorized("Authentication required to upload files");
+                }
+            } catch (UnauthorizedException e) {
+                return ResponseUtil.unauthorized(e.getMessage());
+            }
+
+            if (!AuthorizationUtil.canUploadFile(authContext)) {
+                return ResponseUtil.forbidden("You are not authorized to upload files");
+            }
+
+            Map<String, String> pathParameters = event.getPathParameters();
+            if (pathParameters == null || !pathParameters.containsKey("filename")) {
+                return ResponseUtil.badRequest("filename is required in path");
+            }
+
+            String filename = pathParameters.get("filename");
+            if (filename == null || filename.trim().isEmpty()) {
+                return ResponseUtil.badRequest("filename cannot be empty");
+            }
+
+            if (!FileKeys.isValidFilename(filename)) {
+                return ResponseUtil.badRequest("Invalid filename. Filename cannot contain path separators or special characters");
+            }
+
+            String s3Key = FileKeys.constructS3Key(authContext.getUsername(), filename);
+            String resource = event.getResource() != null ? event.getResource() : "";
+            String method = event.getHttpMethod() != null ? event.getHttpMethod() : "";
+
+            try {
+                if ("DELETE".equals(method)) {
+                    Map<String, String> query = event.getQueryStringParameters();
+                    return abort(s3Key, query != null ? query.get("uploadId") : null, context);
+                }
+
+                JsonNode body = parseBody(event.getBody());
+                if (resource.endsWith("/multipart/parts")) {
+                    return presignParts(s3Key, body);
+                }
+                if (resource.endsWith("/multipart/complete")) {
+                    return complete(s3Key, filename, body, context);
+                }
+                return initiate(s3Key, filename, authContext, body, context);
+            } catch (IllegalArgumentException e) {
+                return ResponseUtil.badRequest(e.getMessage());
+            } catch (NoSuchUploadException e) {
+                return ResponseUtil.notFound("Upload session not found");
+            }
+
+        } catch (S3Exception e) {
+            context.getLogger().log("S3 multipart error: " + e.getMessage());
+            return ResponseUtil.internalServerError("Failed to update storage: " + e.awsErrorDetails().errorMessage());
+        } catch (Exception e) {
+            context.getLogger().log("Unexpected error: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseUtil.internalServerError("Error handling multipart upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start a session; {"contentType", "size", "checksumAlgorithm"} are all optional
+     */
+    private APIGatewayProxyResponseEvent initiate(String s3Key, String filename, AuthContext authContext,
+                                                  JsonNode body, Context context) {
+        String contentType = body.path("contentType").asText("application/octet-stream");
+        if (contentType.isEmpty()) {
+            contentType = "application/octet-stream";
+        }
+
+        Long size = null;
+        if (!body.path("size").isMissingNode()) {
+            if (!body.path("size").isIntegralNumber() || body.path("size").asLong() <= 0) {
+                throw new IllegalArgumentException("size must be a positive number of bytes");
+            }
+            size = body.path("size").asLong();
+            if (size > MAX_FILE_SIZE) {
+                throw new IllegalArgumentException("File size exceeds maximum limit of 5 TB");
+            }
+        }
+
+        boolean sha256 = false;
+        String checksumAlgorithm = body.path("checksumAlgorithm").asText("");
+        if (!checksumAlgorithm.isEmpty()) {
+            if (!"SHA256".equalsIgnoreCase(checksumAlgorithm)) {
+                throw new IllegalArgumentException("checksumAlgorithm must be SHA256");
+            }
+            sha256 = true;
+        }
+
+        CreateMultipartUploadRequest.Builder request = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .contentType(contentType)
+                .metadata(Map.of(
+                        "uploaded-by", authContext.getUsername(),
+                        "user-role", authContext.getRole().toString(),
+                        "original-filename", filename
+                ));
+        if (sha256) {
+            request.checksumAlgorithm(ChecksumAlgorithm.SHA256);
+        }
+
+        long createStart = metrics.start();
+        CreateMultipartUploadResponse created = s3Client.createMultipartUpload(request.build());
+        metrics.record("CreateMultipartUpload", createStart);
+
+        context.getLogger().log("Started multipart upload " + created.uploadId() + " for " + s3Key);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("uploadId", created.uploadId());
+        response.put("filename", filename);
+        response.put("s3Key", s3Key);
+        if (sha256) {
+            response.put("checksumAlgorithm", "SHA256");
+        }
+        response.put("maxPartsPerRequest", MAX_PARTS_PER_REQUEST);
+        if (size != null) {
+            // Smallest part size that fits the file into the part limit
+            long partSize = Math.max(MIN_PART_SIZE, (size + MAX_PARTS - 1) / MAX_PARTS);
+            response.put("partSize", partSize);
+            response.put("partCount", (size + partSize - 1) / partSize);
+        } else {
+            response.put("partSize", MIN_PART_SIZE);
+        }
+        return ResponseUtil.created(response);
+    }
+
+    /**
+     * Presigned part URLs; {"uploadId", "parts": [{"partNumber", "checksumSha256"}]}
+     */
+    private APIGatewayProxyResponseEvent presignParts(String s3Key, JsonNode body) {
+        String uploadId = requireUploadId(body);
+        JsonNode parts = body.path("parts");
+        if (!parts.isArray() || parts.size() == 0 || parts.size() > MAX_PARTS_PER_REQUEST) {
+            throw new IllegalArgumentException("parts must contain between 1 and " + MAX_PARTS_PER_REQUEST + " parts");
+        }
+
+        // Requests that carry every checksum need no lookup; otherwise the session must not use SHA256
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i).path("checksumSha256").asText("").isEmpty()) {
+                if (sessionChecksumAlgorithm(s3Key, uploadId) == ChecksumAlgorithm.SHA256) {
+                    throw new IllegalArgumentException(
+                            "parts[" + i + "].checksumSha256 is required for SHA256 upload sessions");
+                }
+                break;
+            }
+        }
+
+        long presignStart = metrics.start();
+        List<Map<String, Object>> urls = new ArrayList<>(parts.size());
+        long expiresAt = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            JsonNode part = parts.get(i);
+            int partNumber = partNumber(part, i);
+
+            UploadPartRequest.Builder uploadPart = UploadPartRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber);
+            String checksum = part.path("checksumSha256").asText("");
+            if (!checksum.isEmpty()) {
+                uploadPart.checksumSHA256(checksum);
+            }
+
+            PresignedUploadPartRequest presigned = presigner.presignUploadPart(UploadPartPresignRequest.builder()
+                    .signatureDuration(expiry)
+                    .uploadPartRequest(uploadPart.build())
+                    .build());
+            expiresAt = presigned.expiration().toEpochMilli();
+
+            Map<String, Object> url = new HashMap<>();
+            url.put("partNumber", partNumber);
+            url.put("method", "PUT");
+            url.put("url", presigned.url().toString());
+            url.put("headers", PresignedUrls.clientHeaders(presigned.signedHeaders()));
+            urls.add(url);
+        }
+        metrics.record("Presign", presignStart);
+        metrics.count("PartsPresigned", urls.size());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("uploadId", uploadId);
+        response.put("parts", urls);
+        response.put("expiresAt", expiresAt);
+        return ResponseUtil.success(response);
+    }
+
+    /**
+     * Verify the client's parts against ListParts and complete the upload;
+     * {"uploadId", "parts": [{"partNumber", "etag", "checksumSha256"}]}
+     */
+    private APIGatewayProxyResponseEvent complete(String s3Key, String filename, JsonNode body, Context context) {
+        String uploadId = requireUploadId(body);
+        JsonNode parts = body.path("parts");
+        if (!parts.isArray() || parts.size() == 0 || parts.size() > MAX_PARTS) {
+            throw new IllegalArgumentException("parts must contain between 1 and " + MAX_PARTS + " parts");
+        }
+
+        long listStart = metrics.start();
+        Map<Integer, Part> uploaded = listParts(s3Key, uploadId);
+        metrics.record("ListParts", listStart);
+
+        // S3 requires ascending part numbers; each must match what S3 stored
+        List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+        long size = 0;
+        int previous = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            JsonNode part = parts.get(i);
+            int partNumber = partNumber(part, i);
+            if (partNumber <= previous) {
+                throw new IllegalArgumentException("parts must be in ascending partNumber order");
+            }
+            previous = partNumber;
+
+            Part stored = uploaded.get(partNumber);
+            if (stored == null) {
+                throw new IllegalArgumentException("Part " + partNumber + " has not been uploaded");
+            }
+            if (!unquote(part.path("etag").asText("")).equals(unquote(stored.eTag()))) {
+                throw new IllegalArgumentException("Part " + partNumber + " ETag does not match the uploaded part");
+            }
+            String checksum = part.path("checksumSha256").asText("");
+            if (!checksum.isEmpty() && !checksum.equals(stored.checksumSHA256())) {
+                throw new IllegalArgumentException("Part " + partNumber + " checksum does not match the uploaded part");
+            }
+            if (i < parts.size() - 1 && stored.size() < MIN_PART_SIZE) {
+                throw new IllegalArgumentException("Part " + partNumber
+                        + " is smaller than the 5 MB minimum; only the last part may be smaller");
+            }
+
+            completedParts.add(CompletedPart.builder()
+                    .partNumber(partNumber)
+                    .eTag(stored.eTag())
+                    .checksumSHA256(stored.checksumSHA256())
+                    .build());
+            size += stored.size();
+        }
+
+        long completeStart = metrics.start();
+        CompleteMultipartUploadResponse completed;
+        try {
+            completed = s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+        } catch (S3Exception e) {
+            // Parts that changed since ListParts (InvalidPart, EntityTooSmall, ...) are the caller's to fix
+            if (e.statusCode() != 400) {
+                throw e;
+            }
+            throw new IllegalArgumentException("Upload cannot be completed: " + e.awsErrorDetails().errorMessage());
+        }
+        metrics.record("CompleteMultipartUpload", completeStart);
+        metrics.count("FileBytes", size);
+
+        context.getLogger().log(String.format(
+                "Completed multipart upload %s for %s (%d parts, %d bytes)", uploadId, s3Key, completedParts.size(), size));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "File uploaded successfully");
+        response.put("filename", filename);
+        response.put("s3Key", s3Key);
+        response.put("size", size);
+        response.put("parts", completedParts.size());
+        response.put("etag", completed.eTag());
+        if (completed.checksumSHA256() != null) {
+            response.put("checksumSha256", completed.checksumSHA256());
+        }
+        return ResponseUtil.created(response);
+    }
+
+    /**
+     * Abort one session, or with no uploadId every open session of this file
+     */
+    private APIGatewayProxyResponseEvent abort(String s3Key, String uploadId, Context context) {
+        List<String> uploadIds = new ArrayList<>();
+        if (uploadId != null && !uploadId.isEmpty()) {
+            uploadIds.add(uploadId);
+        } else {
+            ListMultipartUploadsRequest.Builder list = ListMultipartUploadsRequest.builder()
+                    .bucket(bucketName)
+                    .prefix(s3Key);
+            ListMultipartUploadsResponse page;
+            do {
+                page = s3Client.listMultipartUploads(list.build());
+                for (MultipartUpload upload : page.uploads()) {
+                    // The prefix also matches longer filenames
+                    if (upload.key().equals(s3Key)) {
+                        uploadIds.add(upload.uploadId());
+                    }
+                }
+                list.keyMarker(page.nextKeyMarker()).uploadIdMarker(page.nextUploadIdMarker());
+            } while (Boolean.TRUE.equals(page.isTruncated()));
+        }
+
+        long abortStart = metrics.start();
+        for (String id : uploadIds) {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .uploadId(id)
+                    .build());
+        }
+        metrics.record("AbortMultipartUpload", abortStart);
+
+        context.getLogger().log("Aborted " + uploadIds.size() + " multipart uploads for " + s3Key);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Upload sessions aborted");
+        response.put("s3Key", s3Key);
+        response.put("aborted", uploadIds);
+        return ResponseUtil.success(response);
+    }
+
+    /**
+     * Checksum algorithm the session was started with, or null; also confirms the session exists
+     */
+    private ChecksumAlgorithm sessionChecksumAlgorithm(String s3Key, String uploadId) {
+        long listStart = metrics.start();
+        ListPartsResponse response = s3Client.listParts(ListPartsRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .uploadId(uploadId)
+                .maxParts(1)
+                .build());
+        metrics.record("ListParts", listStart);
+        return response.checksumAlgorithm();
+    }
+
+    /**
+     * Every uploaded part of the session by part number, following ListParts pagination
+     */
+    private Map<Integer, Part> listParts(String s3Key, String uploadId) {
+        Map<Integer, Part> parts = new HashMap<>();
+        ListPartsRequest.Builder request = ListPartsRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .uploadId(uploadId);
+        ListPartsResponse page;
+        do {
+            page = s3Client.listParts(request.build());
+            for (Part part : page.parts()) {
+                parts.put(part.partNumber(), part);
+            }
+            request.partNumberMarker(page.nextPartNumberMarker());
+        } while (Boolean.TRUE.equals(page.isTruncated()));
+        return parts;
+    }
+
+    private JsonNode parseBody(String body) {
+        if (body == null || body.trim().isEmpty()) {
+            return objectMapper.createObjectNode();
+        }
+        try {
+            JsonNode node = objectMapper.readTree(body);
+            if (!node.isObject()) {
+                throw new IllegalArgumentException("Request body must be a JSON object");
+            }
+            return node;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Request body must be a JSON object");
+        }
+    }
+
+    private static String requireUploadId(JsonNode body) {
+        String uploadId = body.path("uploadId").asText("");
+        if (uploadId.isEmpty()) {
+            throw new IllegalArgumentException("uploadId is required");
+        }
+        return uploadId;
+    }
+
+    private static int partNumber(JsonNode part, int index) {
+        JsonNode partNumber = part.path("partNumber");
+        if (!partNumber.isInt() || partNumber.asInt() < 1 || partNumber.asInt() > MAX_PARTS) {
+            throw new IllegalArgumentException("parts[" + index + "].partNumber must be between 1 and " + MAX_PARTS);
+        }
+        return partNumber.asInt();
+    }
+
+    private static String unquote(String etag) {
+        return etag != null && etag.length() >= 2 && etag.startsWith("\"") && etag.endsWith("\"")
+                ? etag.substring(1, etag.length() - 1)
+                : etag;
+    }
+
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        Priming.primeS3(s3Client, bucketName);
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeS3(s3Client, bucketName);
+    }
+}
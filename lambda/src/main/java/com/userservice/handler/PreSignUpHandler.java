@@ -0,0 +1,51 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.CognitoUserPoolPreSignUpEvent;
+import com.userservice.service.CognitoService;
+import com.userservice.util.Secrets;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Cognito pre sign-up trigger enabling the one-call SignUp path of CognitoService.
+ *
+ * SignUp calls carrying the provisioning token in their client metadata are confirmed
+ * immediately, so the user can sign in without a second admin call. Self sign-ups
+ * without the token are rejected; users must register through POST /users.
+ * AdminCreateUser also runs this trigger and is passed through unchanged.
+ */
+public class PreSignUpHandler implements RequestHandler<CognitoUserPoolPreSignUpEvent, CognitoUserPoolPreSignUpEvent> {
+    private static final String SIGN_UP_TRIGGER = "PreSignUp_SignUp";
+
+    private final byte[] provisioningToken;
+
+    public PreSignUpHandler() {
+        String token = Secrets.fromEnvironment("PROVISIONING_TOKEN_SECRET_ARN");
+        this.provisioningToken = token != null && !token.isEmpty() ? token.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public CognitoUserPoolPreSignUpEvent handleRequest(CognitoUserPoolPreSignUpEvent event, Context context) {
+        if (!SIGN_UP_TRIGGER.equals(event.getTriggerSource())) {
+            return event;
+        }
+
+        Map<String, String> clientMetadata = event.getRequest() != null ? event.getRequest().getClientMetadata() : null;
+        String token = clientMetadata != null ? clientMetadata.get(CognitoService.PROVISIONING_TOKEN_KEY) : null;
+        if (provisioningToken == null || token == null
+                || !MessageDigest.isEqual(provisioningToken, token.getBytes(StandardCharsets.UTF_8))) {
+            context.getLogger().log("Rejected self sign-up for " + event.getUserName());
+            throw new IllegalStateException("Self sign-up is disabled; register through the API");
+        }
+
+        CognitoUserPoolPreSignUpEvent.Response response = event.getResponse() != null
+                ? event.getResponse() : new CognitoUserPoolPreSignUpEvent.Response();
+        response.setAutoConfirmUser(true);
+        event.setResponse(response);
+        return event;
+    }
+}
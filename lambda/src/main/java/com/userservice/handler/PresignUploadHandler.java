@@ -0,0 +1,220 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.ClientRegistry;
+import com.userservice.auth.AuthContext;
+import com.userservice.auth.AuthorizationUtil;
+import com.userservice.auth.UnauthorizedException;
+import com.userservice.util.FileKeys;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.PresignedUrls;
+import com.userservice.util.Priming;
+import com.userservice.util.ResponseUtil;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * POST /files/{filename}/presign: a presigned S3 PUT URL so the file bytes go straight to
+ * the bucket instead of through API Gateway and Lambda.
+ *
+ * Applies the same upload permission, filename rules and key layout as UploadFileHandler.
+ * Content-Length, Content-Type and the upload metadata are signed, so S3 rejects a PUT that
+ * sends a different size or type than the one requested. The response lists the headers
+ * the client must send with the PUT.
+ */
+public class PresignUploadHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+    private final S3Presigner presigner;
+    private final String bucketName;
+    private final Duration expiry;
+    private final ObjectMapper objectMapper;
+    private final InvocationMetrics metrics;
+
+    // Largest object a single PUT can create
+    public static final long MAX_FILE_SIZE = 5L * 1024 * 1024 * 1024;
+
+    public PresignUploadHandler() {
+        this.presigner = ClientRegistry.s3Presigner();
+        this.bucketName = System.getenv("BUCKET_NAME");
+        this.expiry = PresignedUrls.expiryFromEnvironment();
+        this.objectMapper = new ObjectMapper();
+        this.metrics = new InvocationMetrics();
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
+    }
+
+    /**
+     * For tests: explicit presigner and settings, no SnapStart registration
+     */
+    PresignUploadHandler(S3Presigner presigner, String bucketName, Duration expiry, InvocationMetrics metrics) {
+        this.presigner = presigner;
+        this.bucketName = bucketName;
+        this.expiry = expiry;
+        this.objectMapper = new ObjectMapper();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        return metrics.finish(handle(event, context));
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
+        context.getLogger().log("PresignUploadHandler - Request received");
+
+        try {
+            // Extract auth context (REQUIRED for this endpoint)
+            AuthContext authContext;
+            long authStart = metrics.start();
+            try {
+                authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
+                if (authContext == null) {
+                    return ResponseUtil.unauthorized("Authentication required to upload files");
+                }
+            } catch (UnauthorizedException e) {
+                return ResponseUtil.unauthorized(e.getMessage());
+            }
+
+            if (!AuthorizationUtil.canUploadFile(authContext)) {
+                return ResponseUtil.forbidden("You are not authorized to upload files");
+            }
+
+            Map<String, String> pathParameters = event.getPathParameters();
+            if (pathParameters == null || !pathParameters.containsKey("filename")) {
+                return ResponseUtil.badRequest("filename is required in path");
+            }
+
+            String filename = pathParameters.get("filename");
+            if (filename == null || filename.trim().isEmpty()) {
+                return ResponseUtil.badRequest("filename cannot be empty");
+            }
+
+            if (!FileKeys.isValidFilename(filename)) {
+                return ResponseUtil.badRequest("Invalid filename. Filename cannot contain path separators or special characters");
+            }
+
+            // Parse {"contentLength": n, "contentType": "..."}
+            String body = event.getBody();
+            if (body == null || body.trim().isEmpty()) {
+                return ResponseUtil.badRequest("Request body is required");
+            }
+
+            JsonNode request;
+            try {
+                request = objectMapper.readTree(body);
+            } catch (JsonProcessingException e) {
+                return ResponseUtil.badRequest("Request body must be a JSON object with a numeric contentLength");
+            }
+
+            JsonNode contentLengthNode = request.path("contentLength");
+            if (!contentLengthNode.isIntegralNumber() || !contentLengthNode.canConvertToLong()) {
+                return ResponseUtil.badRequest("Request body must be a JSON object with a numeric contentLength");
+            }
+            long contentLength = contentLengthNode.asLong();
+            if (contentLength <= 0) {
+                return ResponseUtil.badRequest("File is empty");
+            }
+            if (contentLength > MAX_FILE_SIZE) {
+                return ResponseUtil.badRequest(
+                        String.format("File size exceeds maximum limit of %d GB", MAX_FILE_SIZE / (1024 * 1024 * 1024))
+                );
+            }
+
+            String contentType = request.path("contentType").asText("application/octet-stream");
+            if (contentType.isEmpty()) {
+                contentType = "application/octet-stream";
+            }
+
+            String s3Key = FileKeys.constructS3Key(authContext.getUsername(), filename);
+
+            long presignStart = metrics.start();
+            PresignedPutObjectRequest presigned = presign(s3Key, contentLength, contentType,
+                    authContext.getUsername(), authContext.getRole().toString(), filename);
+            metrics.record("Presign", presignStart);
+
+            context.getLogger().log(String.format(
+                    "Presigned upload for %s (size: %d bytes, content-type: %s)", s3Key, contentLength, contentType));
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("method", "PUT");
+            response.put("url", presigned.url().toString());
+            response.put("headers", PresignedUrls.clientHeaders(presigned.signedHeaders()));
+            response.put("filename", filename);
+            response.put("s3Key", s3Key);
+            response.put("expiresAt", presigned.expiration().toEpochMilli());
+
+            return ResponseUtil.success(response);
+
+        } catch (Exception e) {
+            context.getLogger().log("Error presigning upload: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseUtil.internalServerError("Error presigning upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sign a PUT of exactly contentLength bytes with the same metadata UploadFileHandler writes
+     */
+    private PresignedPutObjectRequest presign(String s3Key, long contentLength, String contentType,
+                                              String username, String role, String filename) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .metadata(Map.of(
+                        "uploaded-by", username,
+                        "user-role", role,
+                        "original-filename", filename
+                ))
+                .build();
+
+        return presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(expiry)
+                .putObjectRequest(putObjectRequest)
+                .build());
+    }
+
+    /**
+     * Warm up serialization and signing paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        primePresigner();
+    }
+
+    /**
+     * Re-resolve credentials after restore; the next signature uses the new ones
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        primePresigner();
+    }
+
+    private void primePresigner() {
+        try {
+            presign("priming/presign", 1, "application/octet-stream", "priming", "user", "presign");
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+}
@@ -4,42 +4,77 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.userservice.ClientRegistry;
 import com.userservice.auth.AuthContext;
 import com.userservice.auth.AuthorizationUtil;
 import com.userservice.auth.UnauthorizedException;
+import com.userservice.service.ContentAddressedStore;
+import com.userservice.util.Base64Body;
+import com.userservice.util.FileKeys;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Priming;
 import com.userservice.util.ResponseUtil;
+import com.userservice.util.S3Objects;
+import com.userservice.util.UploadCompression;
+import com.userservice.util.UploadPreconditions;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.ContentStreamProvider;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 
-public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
 
     private final S3Client s3Client;
     private final String bucketName;
+    private final InvocationMetrics metrics;
+    // Null unless DEDUP_UPLOADS is enabled
+    private final ContentAddressedStore contentStore;
+    private final UploadCompression compression;
 
     // Maximum file size: 10MB (API Gateway limit)
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024;
 
     public UploadFileHandler() {
-        this.s3Client = S3Client.builder().build();
+        this.s3Client = ClientRegistry.s3();
         this.bucketName = System.getenv("BUCKET_NAME");
+        this.metrics = new InvocationMetrics();
+        this.compression = UploadCompression.fromEnvironment();
+        this.contentStore = "true".equalsIgnoreCase(System.getenv("DEDUP_UPLOADS"))
+            ? new ContentAddressedStore(s3Client, bucketName, ClientRegistry.dynamoDb(),
+                System.getenv("MANIFEST_TABLE_NAME"), compression, metrics)
+            : null;
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        metrics.begin(context, event);
+        return metrics.finish(handle(event, context));
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
         context.getLogger().log("UploadFileHandler - Request received");
 
         try {
             // AUTHENTICATION: Extract auth context (REQUIRED)
             AuthContext authContext;
+            long authStart = metrics.start();
             try {
                 authContext = AuthorizationUtil.extractAuthContext(event);
+                metrics.record("Auth", authStart);
                 if (authContext == null) {
                     return ResponseUtil.unauthorized("Authentication required to upload files");
                 }
@@ -48,7 +83,7 @@ public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestE
             }
 
             // AUTHORIZATION: Check if user can upload files
-            if (!canUploadFile(authContext)) {
+            if (!AuthorizationUtil.canUploadFile(authContext)) {
                 return ResponseUtil.forbidden("You are not authorized to upload files");
             }
 
@@ -64,7 +99,7 @@ public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestE
             }
 
             // VALIDATE FILENAME (security: prevent path traversal)
-            if (!isValidFilename(filename)) {
+            if (!FileKeys.isValidFilename(filename)) {
                 return ResponseUtil.badRequest("Invalid filename. Filename cannot contain path separators or special characters");
             }
 
@@ -74,30 +109,36 @@ public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestE
                 return ResponseUtil.badRequest("Request body is required");
             }
 
-            // DECODE BASE64 if API Gateway base64-encoded the binary data
-            byte[] fileBytes;
+            // MEASURE the decoded size without decoding: base64 bodies are validated and
+            // later decoded on the fly while S3 reads them, so no decoded copy is held
             boolean isBase64Encoded = event.getIsBase64Encoded() != null && event.getIsBase64Encoded();
+            byte[] textBytes = null;
+            long contentLength;
 
+            long decodeStart = metrics.start();
             if (isBase64Encoded) {
                 try {
-                    fileBytes = Base64.getDecoder().decode(body);
+                    contentLength = Base64Body.decodedLength(body);
                 } catch (IllegalArgumentException e) {
                     context.getLogger().log("Base64 decode error: " + e.getMessage());
                     return ResponseUtil.badRequest("Invalid base64 encoded content");
                 }
             } else {
                 // Handle as raw bytes (for text files or pre-decoded content)
-                fileBytes = body.getBytes(StandardCharsets.UTF_8);
+                textBytes = body.getBytes(StandardCharsets.UTF_8);
+                contentLength = textBytes.length;
             }
 
-            // VALIDATE FILE SIZE
-            if (fileBytes.length > MAX_FILE_SIZE) {
+            metrics.record("Decode", decodeStart);
+
+            // VALIDATE FILE SIZE before any bytes are sent
+            if (contentLength > MAX_FILE_SIZE) {
                 return ResponseUtil.badRequest(
                     String.format("File size exceeds maximum limit of %d MB", MAX_FILE_SIZE / (1024 * 1024))
                 );
             }
 
-            if (fileBytes.length == 0) {
+            if (contentLength == 0) {
                 return ResponseUtil.badRequest("File is empty");
             }
 
@@ -108,12 +149,78 @@ public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestE
                 contentType = headers.get("Content-Type");
             }
 
+            // CONDITIONAL UPLOAD: If-Match / If-None-Match and content checksums are checked
+            // against the current object before any bytes are sent
+            UploadPreconditions preconditions;
+            try {
+                preconditions = UploadPreconditions.fromHeaders(headers);
+            } catch (IllegalArgumentException e) {
+                return ResponseUtil.badRequest(e.getMessage());
+            }
+
+            if (preconditions.requiresCurrentObject()) {
+                long headStart = metrics.start();
+                HeadObjectResponse current = contentStore != null
+                    ? contentStore.currentObject(authContext.getUsername(), filename)
+                    : S3Objects.head(s3Client, bucketName, FileKeys.constructS3Key(authContext.getUsername(), filename));
+                metrics.record("HeadCurrent", headStart);
+
+                UploadPreconditions.Outcome outcome = current == null
+                    ? preconditions.evaluate(null, null)
+                    : preconditions.evaluate(current.eTag(), current.checksumSHA256());
+                if (outcome == UploadPreconditions.Outcome.PRECONDITION_FAILED) {
+                    return ResponseUtil.preconditionFailed("Precondition failed");
+                }
+                if (outcome == UploadPreconditions.Outcome.NOT_MODIFIED) {
+                    context.getLogger().log("File unchanged, upload skipped: " + filename);
+                    metrics.count("UploadNotModified", 1);
+                    return ResponseUtil.notModified(current.eTag());
+                }
+            }
+
+            // Streamed from the request body; each stream opened (hashing, or the SDK on a
+            // retry) starts over from the original String
+            byte[] bytes = textBytes;
+            ContentStreamProvider content = isBase64Encoded
+                ? () -> Base64Body.openStream(body)
+                : () -> new ByteArrayInputStream(bytes);
+
+            if (contentStore != null) {
+                return uploadDeduplicated(authContext, filename, content, contentLength, contentType, preconditions, context);
+            }
+
             // CONSTRUCT S3 KEY (using username as prefix for organization)
-            String s3Key = constructS3Key(authContext.getUsername(), filename);
+            String s3Key = FileKeys.constructS3Key(authContext.getUsername(), filename);
+
+            Map<String, String> metadata = new HashMap<>();
+            metadata.put("uploaded-by", authContext.getUsername());
+            metadata.put("user-role", authContext.getRole().toString());
+            metadata.put("original-filename", filename);
+
+            // COMPRESS compressible content for storage. Skipped when the client sent content
+            // checksums: they describe the bytes as sent, and S3 verifies them against the PUT
+            ContentStreamProvider storedContent = content;
+            long storedLength = contentLength;
+            String contentEncoding = null;
+            if (preconditions.getContentMd5() == null && preconditions.getChecksumSha256() == null
+                    && compression.appliesTo(contentType, contentLength)) {
+                long compressStart = metrics.start();
+                byte[] compressed = compression.compress(content.newStream());
+                metrics.record("Compress", compressStart);
+
+                // Stored as sent when gzip does not make it smaller
+                if (compressed.length < contentLength) {
+                    storedContent = () -> new ByteArrayInputStream(compressed);
+                    storedLength = compressed.length;
+                    contentEncoding = UploadCompression.ENCODING;
+                    metadata.put(UploadCompression.ORIGINAL_SIZE, String.valueOf(contentLength));
+                    metrics.count("CompressionSavedBytes", contentLength - compressed.length);
+                }
+            }
 
             context.getLogger().log(String.format(
-                "Uploading file: %s (size: %d bytes, content-type: %s) to S3 key: %s",
-                filename, fileBytes.length, contentType, s3Key
+                "Uploading file: %s (size: %d bytes, stored: %d bytes, content-type: %s) to S3 key: %s",
+                filename, contentLength, storedLength, contentType, s3Key
             ));
 
             // UPLOAD TO S3
@@ -122,15 +229,18 @@ public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestE
                     .bucket(bucketName)
                     .key(s3Key)
                     .contentType(contentType)
-                    .contentLength((long) fileBytes.length)
-                    .metadata(Map.of(
-                        "uploaded-by", authContext.getUsername(),
-                        "user-role", authContext.getRole().toString(),
-                        "original-filename", filename
-                    ))
+                    .contentEncoding(contentEncoding)
+                    .contentLength(storedLength)
+                    .metadata(metadata)
+                    // S3 verifies the body against the client's checksums
+                    .contentMD5(preconditions.getContentMd5())
+                    .checksumSHA256(preconditions.getChecksumSha256())
                     .build();
 
-                s3Client.putObject(putObjectRequest, RequestBody.fromBytes(fileBytes));
+                long putStart = metrics.start();
+                PutObjectResponse put = s3Client.putObject(putObjectRequest, RequestBody.fromContentProvider(storedContent, storedLength, contentType));
+                metrics.record("PutObject", putStart);
+                metrics.count("FileBytes", contentLength);
 
                 context.getLogger().log("File uploaded successfully to S3: " + s3Key);
 
@@ -139,13 +249,21 @@ public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestE
                 response.put("message", "File uploaded successfully");
                 response.put("filename", filename);
                 response.put("s3Key", s3Key);
-                response.put("size", fileBytes.length);
+                response.put("size", contentLength);
                 response.put("contentType", contentType);
+                response.put("etag", put.eTag());
+                if (contentEncoding != null) {
+                    response.put("contentEncoding", contentEncoding);
+                    response.put("storedSize", storedLength);
+                }
 
-                return ResponseUtil.created(response);
+                return ResponseUtil.withETag(ResponseUtil.created(response), put.eTag());
 
             } catch (S3Exception e) {
                 context.getLogger().log("S3 upload error: " + e.getMessage());
+                if (isDigestMismatch(e)) {
+                    return ResponseUtil.badRequest("Checksum does not match the uploaded content");
+                }
                 return ResponseUtil.internalServerError("Failed to upload file to storage: " + e.awsErrorDetails().errorMessage());
             }
 
@@ -157,52 +275,74 @@ public class UploadFileHandler implements RequestHandler<APIGatewayProxyRequestE
     }
 
     /**
-     * Check if user can upload files
-     * Authorization rules:
-     * - guest: Cannot upload
-     * - user: Can upload
-     * - superuser: Can upload
-     * - globaladmin: Can upload
+     * Store the content once under its SHA-256 and record the filename in the manifest;
+     * the S3 write is skipped when the same content is already stored
      */
-    private boolean canUploadFile(AuthContext authContext) {
-        if (authContext == null) {
-            return false;
+    private APIGatewayProxyResponseEvent uploadDeduplicated(AuthContext authContext, String filename,
+                                                            ContentStreamProvider content, long contentLength,
+                                                            String contentType, UploadPreconditions preconditions,
+                                                            Context context) throws IOException {
+        ContentAddressedStore.StoredFile stored;
+        try {
+            stored = contentStore.store(authContext.getUsername(), filename, content, contentLength, contentType,
+                preconditions.getContentMd5(), preconditions.getChecksumSha256());
+        } catch (IllegalArgumentException e) {
+            return ResponseUtil.badRequest(e.getMessage());
+        } catch (S3Exception e) {
+            context.getLogger().log("S3 upload error: " + e.getMessage());
+            if (isDigestMismatch(e)) {
+                return ResponseUtil.badRequest("Checksum does not match the uploaded content");
+            }
+            return ResponseUtil.internalServerError("Failed to upload file to storage: " + e.awsErrorDetails().errorMessage());
         }
-        // All authenticated users except guests can upload
-        return !authContext.isGuest();
+
+        context.getLogger().log(String.format(
+            "File %s of %s stored as %s (size: %d bytes, deduplicated: %s)",
+            filename, authContext.getUsername(), stored.getContentKey(), contentLength, stored.isDeduplicated()
+        ));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "File uploaded successfully");
+        response.put("filename", filename);
+        response.put("s3Key", stored.getContentKey());
+        response.put("sha256", stored.getSha256());
+        response.put("size", contentLength);
+        response.put("contentType", contentType);
+        response.put("etag", stored.getETag());
+
+        return ResponseUtil.withETag(ResponseUtil.created(response), stored.getETag());
     }
 
     /**
-     * Validate filename to prevent path traversal and other security issues
+     * S3 rejected the body because it does not match a Content-MD5 or checksum header
      */
-    private boolean isValidFilename(String filename) {
-        if (filename == null || filename.isEmpty()) {
-            return false;
-        }
-
-        // Reject path traversal attempts
-        if (filename.contains("..") || filename.contains("/") || filename.contains("\\")) {
-            return false;
-        }
-
-        // Reject control characters
-        if (filename.matches(".*[\\x00-\\x1F\\x7F].*")) {
-            return false;
-        }
+    private static boolean isDigestMismatch(S3Exception e) {
+        String code = e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : null;
+        return e.statusCode() == 400 && ("BadDigest".equals(code) || "InvalidDigest".equals(code));
+    }
 
-        // Length check
-        if (filename.length() > 255) {
-            return false;
+    /**
+     * Warm up serialization and SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeRequestPath();
+        Priming.primeS3(s3Client, bucketName);
+        if (contentStore != null) {
+            contentStore.prime(Priming.PRIMING_KEY);
         }
-
-        return true;
     }
 
     /**
-     * Construct S3 key with username prefix for organization
-     * Pattern: uploads/{username}/{filename}
+     * Re-resolve credentials and re-open connections after restore
      */
-    private String constructS3Key(String username, String filename) {
-        return String.format("uploads/%s/%s", username, filename);
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeS3(s3Client, bucketName);
+        if (contentStore != null) {
+            contentStore.prime(Priming.PRIMING_KEY);
+        }
     }
 }
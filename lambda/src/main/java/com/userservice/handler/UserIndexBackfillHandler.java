@@ -0,0 +1,194 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.userservice.ClientRegistry;
+import com.userservice.model.UserRole;
+import com.userservice.model.UserTableSchema;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Priming;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One-off migration that puts users written before the listing indexes existed into them.
+ *
+ * Scans the Users table and sets listPartition = USERS and the canonical lower-case role on
+ * every live user that lacks either. Each update is conditioned on the item still being a
+ * live user with the role that was read, so a concurrent delete or role change wins. Invoked
+ * manually; when the invocation runs low on time it returns the last scanned userId as
+ * lastEvaluatedKey, and invoking again with {"exclusiveStartKey": "<userId>"} resumes there.
+ */
+public class UserIndexBackfillHandler implements RequestHandler<Map<String, Object>, Map<String, Object>>, Resource {
+    private final DynamoDbClient dynamoDb;
+    private final String tableName;
+    private final InvocationMetrics metrics;
+
+    static final String EXCLUSIVE_START_KEY = "exclusiveStartKey";
+    static final String LAST_EVALUATED_KEY = "lastEvaluatedKey";
+
+    private static final int PAGE_SIZE = 100;
+
+    // Stop starting pages once less than this is left of the invocation
+    private static final long TIME_RESERVE_MILLIS = 10_000;
+
+    private static final String BACKFILL_UPDATE = "SET " + UserTableSchema.LIST_PARTITION + " = :partition, #role = :role";
+    private static final String BACKFILL_CONDITION = "attribute_exists(userId) AND attribute_not_exists("
+            + UserTableSchema.DELETED_AT + ") AND #role = :currentRole";
+    private static final String PARTITION_UPDATE = "SET " + UserTableSchema.LIST_PARTITION + " = :partition";
+    private static final String PARTITION_CONDITION = "attribute_exists(userId) AND attribute_not_exists("
+            + UserTableSchema.DELETED_AT + ") AND attribute_not_exists(#role)";
+
+    public UserIndexBackfillHandler() {
+        this(ClientRegistry.dynamoDb(), System.getenv("TABLE_NAME"), new InvocationMetrics());
+
+        // Register SnapStart checkpoint/restore hooks
+        Core.getGlobalContext().register(this);
+    }
+
+    UserIndexBackfillHandler(DynamoDbClient dynamoDb, String tableName, InvocationMetrics metrics) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
+        metrics.begin(context, null);
+
+        Object startKey = event == null ? null : event.get(EXCLUSIVE_START_KEY);
+        Map<String, AttributeValue> exclusiveStartKey = startKey == null
+                ? null
+                : Map.of("userId", AttributeValue.builder().s(startKey.toString()).build());
+
+        int scanned = 0;
+        int updated = 0;
+        int skipped = 0;
+        int statusCode = 200;
+        Map<String, Object> result = new HashMap<>();
+
+        long backfillStart = metrics.start();
+        try {
+            do {
+                ScanResponse page = dynamoDb.scan(ScanRequest.builder()
+                        .tableName(tableName)
+                        .projectionExpression("userId, #role, " + UserTableSchema.LIST_PARTITION
+                                + ", " + UserTableSchema.DELETED_AT)
+                        .expressionAttributeNames(Map.of("#role", "role"))
+                        .exclusiveStartKey(exclusiveStartKey)
+                        .limit(PAGE_SIZE)
+                        .build());
+
+                for (Map<String, AttributeValue> item : page.items()) {
+                    scanned++;
+                    if (backfill(item)) {
+                        updated++;
+                    } else {
+                        skipped++;
+                    }
+                }
+
+                exclusiveStartKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty()
+                        ? page.lastEvaluatedKey()
+                        : null;
+            } while (exclusiveStartKey != null && context.getRemainingTimeInMillis() > TIME_RESERVE_MILLIS);
+
+            if (exclusiveStartKey != null) {
+                result.put(LAST_EVALUATED_KEY, exclusiveStartKey.get("userId").s());
+            }
+        } catch (Exception e) {
+            statusCode = 500;
+            result.put("error", e.getMessage());
+            e.printStackTrace();
+        }
+        metrics.record("Backfill", backfillStart);
+        metrics.count("BackfillUpdated", updated);
+
+        result.put("scanned", scanned);
+        result.put("updated", updated);
+        result.put("skipped", skipped);
+        result.put("complete", statusCode == 200 && !result.containsKey(LAST_EVALUATED_KEY));
+
+        context.getLogger().log(String.format("User index backfill: %d scanned, %d updated, %d skipped%s",
+                scanned, updated, skipped,
+                result.containsKey(LAST_EVALUATED_KEY) ? ", resume at " + result.get(LAST_EVALUATED_KEY) : ""));
+        metrics.finish(statusCode);
+        return result;
+    }
+
+    /**
+     * Update one scanned item if it is a live user missing from the listing indexes
+     * @return whether the item was updated
+     */
+    private boolean backfill(Map<String, AttributeValue> item) {
+        if (item.containsKey(UserTableSchema.DELETED_AT)) {
+            return false;
+        }
+
+        AttributeValue currentRole = item.get("role");
+        String role = null;
+        if (currentRole != null) {
+            try {
+                role = UserRole.fromString(currentRole.s()).getValue();
+            } catch (IllegalArgumentException e) {
+                // Unknown roles are left alone; they have no listing to appear in
+                return false;
+            }
+        }
+
+        AttributeValue listPartition = item.get(UserTableSchema.LIST_PARTITION);
+        boolean partitionSet = listPartition != null && UserTableSchema.LIST_PARTITION_VALUE.equals(listPartition.s());
+        if (partitionSet && (role == null || role.equals(currentRole.s()))) {
+            return false;
+        }
+
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":partition", AttributeValue.builder().s(UserTableSchema.LIST_PARTITION_VALUE).build());
+        if (role != null) {
+            values.put(":role", AttributeValue.builder().s(role).build());
+            values.put(":currentRole", currentRole);
+        }
+
+        try {
+            dynamoDb.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Map.of("userId", item.get("userId")))
+                    .updateExpression(role != null ? BACKFILL_UPDATE : PARTITION_UPDATE)
+                    .conditionExpression(role != null ? BACKFILL_CONDITION : PARTITION_CONDITION)
+                    .expressionAttributeNames(Map.of("#role", "role"))
+                    .expressionAttributeValues(values)
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Deleted or changed since the scan; whoever changed it wrote the current layout
+            return false;
+        }
+    }
+
+    /**
+     * Warm up SDK paths before the SnapStart snapshot is taken
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
+
+    /**
+     * Re-resolve credentials and re-open connections after restore
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        ClientRegistry.refreshCredentials();
+        InvocationMetrics.markRestored();
+        Priming.primeDynamoDb(dynamoDb, tableName);
+    }
+}
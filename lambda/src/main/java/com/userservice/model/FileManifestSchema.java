@@ -0,0 +1,30 @@
+package com.userservice.model;
+
+/**
+ * Attribute names of the FileManifest table, which maps a user's filenames to
+ * content-addressed objects in the files bucket
+ */
+public final class FileManifestSchema {
+
+    /**
+     * Partition key: owner of the file
+     */
+    public static final String USERNAME = "username";
+
+    /**
+     * Sort key: filename as uploaded
+     */
+    public static final String FILENAME = "filename";
+
+    /**
+     * Hex SHA-256 of the content, also the last segment of contentKey
+     */
+    public static final String SHA256 = "sha256";
+    public static final String CONTENT_KEY = "contentKey";
+    public static final String SIZE = "size";
+    public static final String CONTENT_TYPE = "contentType";
+    public static final String UPLOADED_AT = "uploadedAt";
+
+    private FileManifestSchema() {
+    }
+}
@@ -0,0 +1,46 @@
+package com.userservice.model;
+
+/**
+ * Attribute and index names of the Users table shared across handlers
+ */
+public final class UserTableSchema {
+
+    /**
+     * Fixed-value partition attribute that puts every user into the creation-order listing index
+     */
+    public static final String LIST_PARTITION = "listPartition";
+    public static final String LIST_PARTITION_VALUE = "USERS";
+
+    /**
+     * GSI: listPartition (hash) + createdAt (range), all users in creation order
+     */
+    public static final String CREATED_INDEX = "created-index";
+
+    /**
+     * GSI: role (hash) + createdAt (range), users of one role in creation order
+     */
+    public static final String ROLE_CREATED_INDEX = "role-created-index";
+
+    /**
+     * Set when a user is deleted; the item stays behind as a tombstone until the cleanup
+     * drain has removed the Cognito user and the username reservation
+     */
+    public static final String DELETED_AT = "deletedAt";
+
+    /**
+     * Partition attribute of the cleanup index, present only on tombstones
+     */
+    public static final String CLEANUP_PARTITION = "cleanupPartition";
+    public static final String CLEANUP_PENDING = "PENDING";
+    public static final String CLEANUP_FAILED = "FAILED";
+    public static final String CLEANUP_ATTEMPTS = "cleanupAttempts";
+    public static final String CLEANUP_ERROR = "cleanupError";
+
+    /**
+     * GSI: cleanupPartition (hash) + deletedAt (range), sparse, tombstones oldest first
+     */
+    public static final String CLEANUP_INDEX = "cleanup-index";
+
+    private UserTableSchema() {
+    }
+}
@@ -0,0 +1,165 @@
+package com.userservice.service;
+
+import com.userservice.util.TokenBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Works off pending cleanup intents: deletes each Cognito user, then completes the intent
+ * in the store.
+ *
+ * The Cognito user is only deleted while the store holds the username for the deleted
+ * user, so a retry after a failed completion can never delete the account of someone who
+ * registered the username since. An intent whose username is held by another user is
+ * counted as failed and eventually parked for reconciliation.
+ *
+ * A batch of intents is fetched, the Cognito deletes are started concurrently as the
+ * limiter admits them, and every intent is settled once all of them have finished. A
+ * failed intent is retried by a later batch or drain run until it has failed maxAttempts
+ * times, after which it is parked. While Cognito is unavailable (circuit breaker open) the
+ * intents are left untouched and the drain stops, so an outage does not use up attempts.
+ * Runs the same way inside the scheduled drain function and in-process against an
+ * InMemoryCleanupIntentStore.
+ */
+public class CleanupDrainer {
+    private final Function<String, CompletableFuture<Void>> deleteCognitoUser;
+    private final CleanupIntentStore store;
+    private final TokenBucket limiter;
+    private final int maxAttempts;
+
+    /**
+     * @param deleteCognitoUser e.g. CognitoService::deleteUserAsync; must complete normally
+     *                          when the user does not exist
+     */
+    public CleanupDrainer(Function<String, CompletableFuture<Void>> deleteCognitoUser,
+                          CleanupIntentStore store, TokenBucket limiter, int maxAttempts) {
+        this.deleteCognitoUser = deleteCognitoUser;
+        this.store = store;
+        this.limiter = limiter;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Counts of one or more drained batches
+     */
+    public static final class Result {
+        private int completed;
+        private int retried;
+        private int parked;
+        private int deferred;
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        /**
+         * Failed and left pending for another attempt
+         */
+        public int getRetried() {
+            return retried;
+        }
+
+        public int getParked() {
+            return parked;
+        }
+
+        /**
+         * Left untouched because Cognito was unavailable
+         */
+        public int getDeferred() {
+            return deferred;
+        }
+
+        private void add(Result other) {
+            completed += other.completed;
+            retried += other.retried;
+            parked += other.parked;
+            deferred += other.deferred;
+        }
+    }
+
+    /**
+     * Drain batches until the queue is empty, a batch makes no progress or hasTime says stop
+     */
+    public Result drain(int batchSize, BooleanSupplier hasTime) throws Exception {
+        Result total = new Result();
+        while (hasTime.getAsBoolean()) {
+            List<CleanupIntent> intents = store.pending(batchSize);
+            if (intents.isEmpty()) {
+                break;
+            }
+            Result batch = process(intents);
+            total.add(batch);
+            // Failed intents stay pending, so a batch without progress would come back unchanged
+            if (batch.deferred > 0 || batch.completed == 0 || intents.size() < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Drain a single batch
+     */
+    public Result drainBatch(int batchSize) throws Exception {
+        return process(store.pending(batchSize));
+    }
+
+    private Result process(List<CleanupIntent> intents) throws Exception {
+        // Written on SDK threads, read after join()
+        Throwable[] errors = new Throwable[intents.size()];
+        List<CompletableFuture<Void>> calls = new ArrayList<>(intents.size());
+        for (int i = 0; i < intents.size(); i++) {
+            int index = i;
+            if (limiter != null) {
+                limiter.acquire();
+            }
+            CleanupIntent intent = intents.get(i);
+            CompletableFuture<Void> call;
+            try {
+                call = store.holdUsername(intent)
+                        ? deleteCognitoUser.apply(intent.getUsername())
+                        : CompletableFuture.failedFuture(new IllegalStateException(
+                                "Username " + intent.getUsername() + " is reserved by another user"));
+            } catch (Exception e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            calls.add(call.handle((response, error) -> {
+                errors[index] = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(calls.toArray(CompletableFuture<?>[]::new)).join();
+
+        Result result = new Result();
+        for (int i = 0; i < intents.size(); i++) {
+            CleanupIntent intent = intents.get(i);
+            Throwable error = errors[i];
+            if (error == null) {
+                try {
+                    store.complete(intent);
+                    result.completed++;
+                    continue;
+                } catch (Exception e) {
+                    error = e;
+                }
+            }
+            if (error instanceof ServiceUnavailableException) {
+                result.deferred++;
+            } else if (intent.getAttempts() + 1 >= maxAttempts) {
+                store.recordFailure(intent, error.getMessage(), true);
+                result.parked++;
+            } else {
+                store.recordFailure(intent, error.getMessage(), false);
+                result.retried++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package com.userservice.service;
+
+/**
+ * A deleted user whose Cognito account and username reservation still have to be removed
+ */
+public final class CleanupIntent {
+    private final String userId;
+    private final String username;
+    private final long deletedAt;
+    private final int attempts;
+
+    public CleanupIntent(String userId, String username, long deletedAt, int attempts) {
+        this.userId = userId;
+        this.username = username;
+        this.deletedAt = deletedAt;
+        this.attempts = attempts;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getDeletedAt() {
+        return deletedAt;
+    }
+
+    /**
+     * Failed cleanup attempts so far
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,32 @@
+package com.userservice.service;
+
+import java.util.List;
+
+/**
+ * Durable queue of pending user cleanups, drained by CleanupDrainer
+ */
+public interface CleanupIntentStore {
+
+    /**
+     * Up to limit pending intents, oldest deletion first
+     */
+    List<CleanupIntent> pending(int limit) throws Exception;
+
+    /**
+     * Make sure the username is reserved for the intent's user, so nobody can register it
+     * while its Cognito user is being deleted. Reserves it if it is free (users created
+     * before reservations existed); returns false if another user holds it
+     */
+    boolean holdUsername(CleanupIntent intent) throws Exception;
+
+    /**
+     * The Cognito user is gone: release the username reservation and drop the intent, both
+     * or neither. Must be idempotent, a completed intent may be handed out again
+     */
+    void complete(CleanupIntent intent) throws Exception;
+
+    /**
+     * Count a failed attempt; a parked intent is no longer handed out by pending
+     */
+    void recordFailure(CleanupIntent intent, String error, boolean park) throws Exception;
+}
@@ -0,0 +1,307 @@
+package com.userservice.service;
+
+import com.userservice.util.InvocationMetrics;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.InternalErrorException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.TooManyRequestsException;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Retry and circuit breaking for Cognito calls.
+ *
+ * Throttling (TooManyRequestsException, SDK throttling codes), 5xx and client-side I/O
+ * failures are retried with full-jitter exponential backoff; every other error is
+ * returned to the caller immediately. Calls that are not safe to repeat (user creation) are
+ * only retried when the failed attempt cannot have reached Cognito: throttling, or a
+ * connection that was never established. Any other failure of such a call may have taken
+ * effect, so it is returned as ServiceUnavailableException without a second attempt.
+ * Consecutive retryable failures across all calls in the container open the breaker, which then rejects calls with ServiceUnavailableException
+ * until the open period ends. After that a single probe call is let through: success
+ * closes the breaker, another failure opens it again.
+ *
+ * One instance is shared per container, since Cognito quotas apply to the whole account.
+ * The Cognito SDK clients are built without SDK retries so attempts are not multiplied.
+ */
+public class CognitoResilience {
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 8;
+    public static final long DEFAULT_OPEN_MILLIS = 10_000;
+
+    private static final CognitoResilience SHARED = new CognitoResilience(DEFAULT_MAX_ATTEMPTS,
+            DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+
+    private static final String UNAVAILABLE_MESSAGE = "Cognito is temporarily unavailable, retry later";
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+    private final LongUnaryOperator jitter;
+
+    // Breaker state, guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilMillis;
+    private boolean probeInFlight;
+
+    // Reset each time they are reported
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    public CognitoResilience(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                             int failureThreshold, long openMillis) {
+        this(maxAttempts, baseDelayMillis, maxDelayMillis, failureThreshold, openMillis,
+                System::currentTimeMillis, bound -> ThreadLocalRandom.current().nextLong(bound));
+    }
+
+    /**
+     * clock supplies the current time in milliseconds; jitter returns a value in [0, bound)
+     */
+    CognitoResilience(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                      int failureThreshold, long openMillis, LongSupplier clock, LongUnaryOperator jitter) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+        this.jitter = jitter;
+    }
+
+    public static CognitoResilience shared() {
+        return SHARED;
+    }
+
+    /**
+     * Run a blocking Cognito call with retries
+     * @throws ServiceUnavailableException if the breaker is open or retries are exhausted
+     */
+    public <T> T call(Supplier<T> operation) throws ServiceUnavailableException {
+        return call(operation, true);
+    }
+
+    /**
+     * Run a blocking Cognito call that must not be repeated once it may have taken effect
+     * @throws ServiceUnavailableException if the breaker is open, retries are exhausted or
+     * the call failed after it may have reached Cognito
+     */
+    public <T> T callNonIdempotent(Supplier<T> operation) throws ServiceUnavailableException {
+        return call(operation, false);
+    }
+
+    private <T> T call(Supplier<T> operation, boolean idempotent) throws ServiceUnavailableException {
+        for (int attempt = 1; ; attempt++) {
+            acquirePermission();
+            try {
+                T result = operation.get();
+                onResponse();
+                return result;
+            } catch (RuntimeException e) {
+                if (!isFailure(e)) {
+                    onResponse();
+                    throw e;
+                }
+                onFailure();
+                if (attempt >= maxAttempts || !(idempotent || isUnsent(e))) {
+                    throw unavailable(e);
+                }
+                retries.incrementAndGet();
+                try {
+                    Thread.sleep(backoffMillis(attempt));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw unavailable(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run an async Cognito call with retries scheduled off the calling thread
+     * The future fails with ServiceUnavailableException if the breaker is open or retries
+     * are exhausted, otherwise with the call's own error
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(operation, true, 1, result);
+        return result;
+    }
+
+    /**
+     * Asynchronous callNonIdempotent; failures complete the future as callAsync's do
+     */
+    public <T> CompletableFuture<T> callNonIdempotentAsync(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(operation, false, 1, result);
+        return result;
+    }
+
+    /**
+     * Add the retry, throttle and rejection counts since the last report, and whether the
+     * breaker is open, to the invocation's metrics
+     */
+    public void recordMetrics(InvocationMetrics metrics) {
+        metrics.count("CognitoRetries", retries.getAndSet(0));
+        metrics.count("CognitoThrottles", throttles.getAndSet(0));
+        metrics.count("CognitoBreakerRejections", rejections.getAndSet(0));
+        metrics.count("CognitoBreakerOpen", getState() == State.CLOSED ? 0 : 1);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private <T> void attemptAsync(Supplier<CompletableFuture<T>> operation, boolean idempotent, int attempt,
+                                  CompletableFuture<T> result) {
+        try {
+            acquirePermission();
+        } catch (ServiceUnavailableException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+
+        CompletableFuture<T> call;
+        try {
+            call = operation.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+
+        call.whenComplete((value, error) -> {
+            if (error == null) {
+                onResponse();
+                result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (!isFailure(cause)) {
+                onResponse();
+                result.completeExceptionally(cause);
+                return;
+            }
+            onFailure();
+            if (attempt >= maxAttempts || !(idempotent || isUnsent(cause))) {
+                result.completeExceptionally(unavailable(cause));
+                return;
+            }
+            retries.incrementAndGet();
+            CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS)
+                    .execute(() -> attemptAsync(operation, idempotent, attempt + 1, result));
+        });
+    }
+
+    private synchronized void acquirePermission() throws ServiceUnavailableException {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() < openUntilMillis) {
+                rejections.incrementAndGet();
+                throw new ServiceUnavailableException(UNAVAILABLE_MESSAGE, retryAfterSeconds(), null);
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                rejections.incrementAndGet();
+                throw new ServiceUnavailableException(UNAVAILABLE_MESSAGE, retryAfterSeconds(), null);
+            }
+            probeInFlight = true;
+        }
+    }
+
+    /**
+     * Cognito answered, even if with a non-retryable error
+     */
+    private synchronized void onResponse() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openUntilMillis = clock.getAsLong() + openMillis;
+            probeInFlight = false;
+        }
+    }
+
+    private synchronized long retryAfterSeconds() {
+        long remaining = state == State.OPEN ? openUntilMillis - clock.getAsLong() : 0;
+        return Math.max(1, (remaining + 999) / 1000);
+    }
+
+    private ServiceUnavailableException unavailable(Throwable cause) {
+        return new ServiceUnavailableException(UNAVAILABLE_MESSAGE, retryAfterSeconds(), cause);
+    }
+
+    /**
+     * Throttling, 5xx and client-side failures, as opposed to Cognito answering the call
+     */
+    private boolean isFailure(Throwable error) {
+        if (error instanceof TooManyRequestsException
+                || (error instanceof SdkServiceException && ((SdkServiceException) error).isThrottlingException())) {
+            throttles.incrementAndGet();
+            return true;
+        }
+        if (error instanceof InternalErrorException) {
+            return true;
+        }
+        if (error instanceof SdkServiceException) {
+            return ((SdkServiceException) error).statusCode() >= 500;
+        }
+        return error instanceof SdkClientException;
+    }
+
+    /**
+     * Failures that leave the call unprocessed: Cognito throttled it, or no connection was
+     * made. Timeouts and dropped connections are not included, since the request may have
+     * been processed before the response was lost
+     */
+    private static boolean isUnsent(Throwable error) {
+        if (error instanceof TooManyRequestsException
+                || (error instanceof SdkServiceException && ((SdkServiceException) error).isThrottlingException())) {
+            return true;
+        }
+        if (!(error instanceof SdkClientException)) {
+            return false;
+        }
+        for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Full jitter: uniform between 0 and the capped exponential delay
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return jitter.applyAsLong(ceiling + 1);
+    }
+}
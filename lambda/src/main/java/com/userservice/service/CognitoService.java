@@ -1,58 +1,257 @@
 package com.userservice.service;
 
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.Secrets;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class CognitoService {
+    /**
+     * Client metadata key carrying the provisioning token to the pre sign-up trigger
+     */
+    public static final String PROVISIONING_TOKEN_KEY = "provisioningToken";
+
+    // How long the SignUp fast path stays off after a configuration failure
+    private static final long SIGN_UP_RETRY_MILLIS = 5 * 60 * 1000;
+
+    // Shared by every instance in this container
+    private static volatile long signUpRetryAtMillis;
+
     private final CognitoIdentityProviderClient cognitoClient;
+    private final CognitoIdentityProviderAsyncClient asyncClient;
     private final String userPoolId;
+    private final String userPoolClientId;
+    private final String provisioningToken;
+    private final CognitoResilience resilience;
+    private final InvocationMetrics metrics;
 
-    public CognitoService() {
-        this.cognitoClient = CognitoIdentityProviderClient.builder().build();
+    public CognitoService(CognitoIdentityProviderClient cognitoClient, InvocationMetrics metrics) {
+        this(cognitoClient, null, metrics);
+    }
+
+    public CognitoService(CognitoIdentityProviderClient cognitoClient,
+                          CognitoIdentityProviderAsyncClient asyncClient,
+                          InvocationMetrics metrics) {
+        this.cognitoClient = cognitoClient;
+        this.asyncClient = asyncClient;
         this.userPoolId = System.getenv("USER_POOL_ID");
+        this.userPoolClientId = System.getenv("USER_POOL_CLIENT_ID");
+        this.provisioningToken = Secrets.fromEnvironment("PROVISIONING_TOKEN_SECRET_ARN");
+        this.resilience = CognitoResilience.shared();
+        this.metrics = metrics;
     }
 
     /**
      * Create Cognito user with username, role, and password
-     * Sets password as permanent (no temporary password flow)
+     * Sets password as permanent (no temporary password flow). Takes the one-call SignUp
+     * fast path when it is available and falls back to AdminCreateUser + AdminSetUserPassword.
+     * A SignUp or AdminCreateUser that fails after it may have reached Cognito is not repeated,
+     * since a repeat would report the user it created as a duplicate
      */
-    public void createUser(String username, String role, String password) throws Exception {
-        // Set custom role attribute
-        AttributeType roleAttribute = AttributeType.builder()
-                .name("custom:role")
-                .value(role)
-                .build();
+    public CreatePath createUser(String username, String role, String password) throws Exception {
+        try {
+            CreatePath path = isSignUpAvailable() ? signUp(username, role, password) : null;
+
+            if (path == null) {
+                long createStart = metrics.start();
+                resilience.callNonIdempotent(() -> cognitoClient.adminCreateUser(adminCreateUserRequest(username, role, password)));
+                metrics.record("CognitoAdminCreateUser", createStart);
+
+                // Set permanent password (skip temporary password flow for simplicity)
+                long passwordStart = metrics.start();
+                resilience.call(() -> cognitoClient.adminSetUserPassword(setPasswordRequest(username, password)));
+                metrics.record("CognitoAdminSetUserPassword", passwordStart);
+                path = CreatePath.ADMIN_CREATE;
+            }
+
+            metrics.count(path.getMetricName(), 1);
+            return path;
+
+        } catch (CognitoIdentityProviderException e) {
+            throw createError(username, e);
+        }
+    }
+
+    /**
+     * Asynchronous createUser
+     * onCreated runs as soon as the user exists, so callers know a compensating delete is
+     * needed even if a later call fails. Failures complete the future with the same
+     * exceptions createUser throws. Runs on SDK threads, so nothing is recorded in metrics;
+     * callers report the returned path themselves
+     */
+    public CompletableFuture<CreatePath> createUserAsync(String username, String role, String password,
+                                                         Runnable onCreated) {
+        if (asyncClient == null) {
+            throw new IllegalStateException("CognitoService was created without an async client");
+        }
+
+        CompletableFuture<CreatePath> created;
+        if (isSignUpAvailable()) {
+            AtomicBoolean signedUp = new AtomicBoolean();
+            created = resilience.callNonIdempotentAsync(() -> asyncClient.signUp(signUpRequest(username, role, password)))
+                    .thenCompose(response -> {
+                        signedUp.set(true);
+                        onCreated.run();
+                        if (Boolean.TRUE.equals(response.userConfirmed())) {
+                            return CompletableFuture.completedFuture(CreatePath.SIGN_UP);
+                        }
+                        disableSignUp();
+                        return resilience.callAsync(() -> asyncClient.adminConfirmSignUp(confirmSignUpRequest(username)))
+                                .thenApply(confirmed -> CreatePath.SIGN_UP_ADMIN_CONFIRM);
+                    })
+                    .exceptionallyCompose(error -> {
+                        Throwable cause = unwrap(error);
+                        if (signedUp.get() || !isSignUpUnavailable(cause)) {
+                            return CompletableFuture.failedFuture(cause);
+                        }
+                        disableSignUp();
+                        return adminCreateUserAsync(username, role, password, onCreated);
+                    });
+        } else {
+            created = adminCreateUserAsync(username, role, password, onCreated);
+        }
 
+        return created.handle((path, error) -> {
+            if (error != null) {
+                throw new CompletionException(createError(username, unwrap(error)));
+            }
+            return path;
+        });
+    }
+
+    /**
+     * SignUp with the provisioning token; returns null if the fast path turned out to be
+     * unavailable and nothing was created
+     */
+    private CreatePath signUp(String username, String role, String password) throws ServiceUnavailableException {
+        SignUpResponse response;
+        long signUpStart = metrics.start();
         try {
-            // Create user with temporary password
-            AdminCreateUserRequest createRequest = AdminCreateUserRequest.builder()
-                    .userPoolId(userPoolId)
-                    .username(username)
-                    .temporaryPassword(password)
-                    .userAttributes(roleAttribute)
-                    .messageAction(MessageActionType.SUPPRESS) // Don't send welcome email
-                    .build();
-
-            cognitoClient.adminCreateUser(createRequest);
-
-            // Set permanent password (skip temporary password flow for simplicity)
-            AdminSetUserPasswordRequest setPasswordRequest =
-                    AdminSetUserPasswordRequest.builder()
-                            .userPoolId(userPoolId)
-                            .username(username)
-                            .password(password)
-                            .permanent(true)
-                            .build();
-
-            cognitoClient.adminSetUserPassword(setPasswordRequest);
-
-        } catch (UsernameExistsException e) {
-            throw new Exception("Username already exists in Cognito: " + username);
-        } catch (InvalidPasswordException e) {
-            throw new Exception("Password does not meet Cognito password policy: " + e.getMessage());
+            response = resilience.callNonIdempotent(() -> cognitoClient.signUp(signUpRequest(username, role, password)));
         } catch (CognitoIdentityProviderException e) {
-            throw new Exception("Error creating Cognito user: " + e.getMessage());
+            if (!isSignUpUnavailable(e)) {
+                throw e;
+            }
+            disableSignUp();
+            return null;
+        } finally {
+            metrics.record("CognitoSignUp", signUpStart);
+        }
+
+        if (Boolean.TRUE.equals(response.userConfirmed())) {
+            return CreatePath.SIGN_UP;
         }
+
+        // The trigger did not confirm the user; finish with an admin call and stop
+        // using the fast path until the pool setup has had time to be fixed
+        disableSignUp();
+        long confirmStart = metrics.start();
+        resilience.call(() -> cognitoClient.adminConfirmSignUp(confirmSignUpRequest(username)));
+        metrics.record("CognitoAdminConfirmSignUp", confirmStart);
+        return CreatePath.SIGN_UP_ADMIN_CONFIRM;
+    }
+
+    private CompletableFuture<CreatePath> adminCreateUserAsync(String username, String role, String password,
+                                                               Runnable onCreated) {
+        return resilience.callNonIdempotentAsync(() -> asyncClient.adminCreateUser(adminCreateUserRequest(username, role, password)))
+                .thenCompose(created -> {
+                    onCreated.run();
+                    return resilience.callAsync(() -> asyncClient.adminSetUserPassword(setPasswordRequest(username, password)));
+                })
+                .thenApply(passwordSet -> CreatePath.ADMIN_CREATE);
+    }
+
+    /**
+     * The fast path needs the app client id and the provisioning token the pre sign-up
+     * trigger checks, and is skipped for a while after it fails for configuration reasons
+     */
+    private boolean isSignUpAvailable() {
+        return userPoolClientId != null && !userPoolClientId.isEmpty()
+                && provisioningToken != null && !provisioningToken.isEmpty()
+                && System.currentTimeMillis() >= signUpRetryAtMillis;
+    }
+
+    private static void disableSignUp() {
+        signUpRetryAtMillis = System.currentTimeMillis() + SIGN_UP_RETRY_MILLIS;
+    }
+
+    /**
+     * Failures that mean the pool is not set up for the fast path, as opposed to problems
+     * with this particular user
+     */
+    private static boolean isSignUpUnavailable(Throwable error) {
+        return error instanceof UserLambdaValidationException
+                || error instanceof UnexpectedLambdaException
+                || error instanceof InvalidLambdaResponseException
+                || error instanceof NotAuthorizedException
+                || error instanceof ResourceNotFoundException;
+    }
+
+    private static Exception createError(String username, Throwable error) {
+        if (error instanceof ServiceUnavailableException) {
+            return (ServiceUnavailableException) error;
+        }
+        if (error instanceof UsernameExistsException) {
+            return new DuplicateUsernameException("Username already exists in Cognito: " + username);
+        }
+        if (error instanceof InvalidPasswordException) {
+            return new Exception("Password does not meet Cognito password policy: " + error.getMessage());
+        }
+        return new Exception("Error creating Cognito user: " + error.getMessage());
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private SignUpRequest signUpRequest(String username, String role, String password) {
+        return SignUpRequest.builder()
+                .clientId(userPoolClientId)
+                .username(username)
+                .password(password)
+                .userAttributes(roleAttribute(role))
+                .clientMetadata(Map.of(PROVISIONING_TOKEN_KEY, provisioningToken))
+                .build();
+    }
+
+    private AdminConfirmSignUpRequest confirmSignUpRequest(String username) {
+        return AdminConfirmSignUpRequest.builder()
+                .userPoolId(userPoolId)
+                .username(username)
+                .build();
+    }
+
+    private AdminCreateUserRequest adminCreateUserRequest(String username, String role, String password) {
+        // Create user with temporary password
+        return AdminCreateUserRequest.builder()
+                .userPoolId(userPoolId)
+                .username(username)
+                .temporaryPassword(password)
+                .userAttributes(roleAttribute(role))
+                .messageAction(MessageActionType.SUPPRESS) // Don't send welcome email
+                .build();
+    }
+
+    private AdminSetUserPasswordRequest setPasswordRequest(String username, String password) {
+        return AdminSetUserPasswordRequest.builder()
+                .userPoolId(userPoolId)
+                .username(username)
+                .password(password)
+                .permanent(true)
+                .build();
+    }
+
+    private static AttributeType roleAttribute(String role) {
+        return AttributeType.builder()
+                .name("custom:role")
+                .value(role)
+                .build();
     }
 
     /**
@@ -65,8 +264,10 @@ public class CognitoService {
                 .username(username)
                 .build();
 
+        long deleteStart = metrics.start();
         try {
-            cognitoClient.adminDeleteUser(request);
+            resilience.call(() -> cognitoClient.adminDeleteUser(request));
+            metrics.record("CognitoAdminDeleteUser", deleteStart);
         } catch (UserNotFoundException e) {
             // User doesn't exist in Cognito - that's okay, no error
         } catch (CognitoIdentityProviderException e) {
@@ -74,6 +275,66 @@ public class CognitoService {
         }
     }
 
+    /**
+     * Asynchronous deleteUser; completes normally if the user doesn't exist
+     * Failures complete the future with ServiceUnavailableException or the same exception
+     * deleteUser throws. Runs on SDK threads, so nothing is recorded in metrics
+     */
+    public CompletableFuture<Void> deleteUserAsync(String username) {
+        if (asyncClient == null) {
+            throw new IllegalStateException("CognitoService was created without an async client");
+        }
+
+        AdminDeleteUserRequest request = AdminDeleteUserRequest.builder()
+                .userPoolId(userPoolId)
+                .username(username)
+                .build();
+
+        return resilience.callAsync(() -> asyncClient.adminDeleteUser(request))
+                .handle((response, error) -> {
+                    Throwable cause = unwrap(error);
+                    if (cause == null || cause instanceof UserNotFoundException) {
+                        return null;
+                    }
+                    if (cause instanceof ServiceUnavailableException) {
+                        throw new CompletionException(cause);
+                    }
+                    throw new CompletionException(new Exception("Error deleting Cognito user: " + cause.getMessage()));
+                });
+    }
+
+    /**
+     * Report retries and breaker state of the shared resilience layer for this invocation
+     */
+    public void recordResilienceMetrics() {
+        resilience.recordMetrics(metrics);
+    }
+
+    /**
+     * Warm up the Cognito client with a lookup of a user that never exists
+     * Used by the SnapStart checkpoint/restore hooks
+     */
+    public void prime() {
+        try {
+            cognitoClient.adminGetUser(AdminGetUserRequest.builder()
+                    .userPoolId(userPoolId)
+                    .username("__priming__")
+                    .build());
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+        if (asyncClient != null) {
+            try {
+                asyncClient.adminGetUser(AdminGetUserRequest.builder()
+                        .userPoolId(userPoolId)
+                        .username("__priming__")
+                        .build()).join();
+            } catch (Exception e) {
+                // Priming is best effort
+            }
+        }
+    }
+
     /**
      * Update user role in Cognito custom attributes
      */
@@ -91,7 +352,7 @@ public class CognitoService {
                         .build();
 
         try {
-            cognitoClient.adminUpdateUserAttributes(request);
+            resilience.call(() -> cognitoClient.adminUpdateUserAttributes(request));
         } catch (UserNotFoundException e) {
             throw new Exception("User not found in Cognito: " + username);
         } catch (CognitoIdentityProviderException e) {
@@ -0,0 +1,280 @@
+package com.userservice.service;
+
+import com.userservice.model.FileManifestSchema;
+import com.userservice.util.FileKeys;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.S3Objects;
+import com.userservice.util.UploadCompression;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Deduplicating file storage: content is stored once under content/{sha256} and each
+ * user's filename is recorded in the FileManifest table pointing at that key.
+ *
+ * The SHA-256, and the MD5 when the client sent Content-MD5, are computed in one streaming
+ * pass over the body before anything is written; a body that does not match the client's
+ * digests is rejected there, whether or not it would be written. If an object with that
+ * hash already exists the S3 PUT is skipped; otherwise the object is written with the
+ * digest as its x-amz-checksum-sha256, so S3 rejects bytes that do not match the key they
+ * are stored under. Content objects are immutable and shared between
+ * users, so they carry no per-user metadata; that lives in the manifest.
+ *
+ * Compressible new content is stored gzip-encoded. The key still names the hash of the
+ * content as sent, while the S3 checksum covers the stored bytes, and original-size in the
+ * object metadata keeps the uncompressed size.
+ */
+public class ContentAddressedStore {
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final DynamoDbClient dynamoDb;
+    private final String manifestTableName;
+    private final UploadCompression compression;
+    private final InvocationMetrics metrics;
+
+    public ContentAddressedStore(S3Client s3Client, String bucketName,
+                                 DynamoDbClient dynamoDb, String manifestTableName,
+                                 UploadCompression compression, InvocationMetrics metrics) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.dynamoDb = dynamoDb;
+        this.manifestTableName = manifestTableName;
+        this.compression = compression;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Outcome of a store call
+     */
+    public static final class StoredFile {
+        private final String sha256;
+        private final String contentKey;
+        private final String eTag;
+        private final boolean deduplicated;
+
+        StoredFile(String sha256, String contentKey, String eTag, boolean deduplicated) {
+            this.sha256 = sha256;
+            this.contentKey = contentKey;
+            this.eTag = eTag;
+            this.deduplicated = deduplicated;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public String getContentKey() {
+            return contentKey;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * True when the content was already stored and no bytes were written
+         */
+        public boolean isDeduplicated() {
+            return deduplicated;
+        }
+    }
+
+    /**
+     * Store the content if it is new and point username/filename at it. expectedMd5 and
+     * expectedSha256 are the base64 digests the client sent, if any
+     * @throws IllegalArgumentException if the content does not match expectedMd5 or expectedSha256
+     */
+    public StoredFile store(String username, String filename, ContentStreamProvider content,
+                            long contentLength, String contentType,
+                            String expectedMd5, String expectedSha256) throws IOException {
+        long hashStart = metrics.start();
+        MessageDigest[] digests = expectedMd5 != null ? digest(content, "SHA-256", "MD5") : digest(content, "SHA-256");
+        byte[] digest = digests[0].digest();
+        byte[] md5 = expectedMd5 != null ? digests[1].digest() : null;
+        metrics.record("Hash", hashStart);
+
+        // A skipped PUT means S3 never sees the body, so the client's digests are checked here
+        String checksum = Base64.getEncoder().encodeToString(digest);
+        if ((expectedSha256 != null && !expectedSha256.equals(checksum))
+                || (md5 != null && !MessageDigest.isEqual(Base64.getDecoder().decode(expectedMd5), md5))) {
+            throw new IllegalArgumentException("Checksum does not match the uploaded content");
+        }
+
+        String sha256 = HexFormat.of().formatHex(digest);
+        String contentKey = FileKeys.contentKey(sha256);
+
+        long headStart = metrics.start();
+        HeadObjectResponse existing = existing(contentKey, contentLength);
+        metrics.record("HeadObject", headStart);
+
+        String eTag;
+        if (existing != null) {
+            eTag = existing.eTag();
+            metrics.count("DedupHits", 1);
+        } else {
+            ContentStreamProvider storedContent = content;
+            long storedLength = contentLength;
+            String storedChecksum = checksum;
+            String contentEncoding = null;
+            Map<String, String> metadata = new HashMap<>();
+
+            // Content-MD5 describes the bytes as sent, so it rules out compression
+            if (expectedMd5 == null && compression.appliesTo(contentType, contentLength)) {
+                long compressStart = metrics.start();
+                byte[] compressed = compression.compress(content.newStream());
+                metrics.record("Compress", compressStart);
+
+                if (compressed.length < contentLength) {
+                    storedContent = () -> new ByteArrayInputStream(compressed);
+                    storedLength = compressed.length;
+                    storedChecksum = Base64.getEncoder().encodeToString(sha256(storedContent));
+                    contentEncoding = UploadCompression.ENCODING;
+                    metadata.put(UploadCompression.ORIGINAL_SIZE, String.valueOf(contentLength));
+                    metrics.count("CompressionSavedBytes", contentLength - compressed.length);
+                }
+            }
+
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(contentKey)
+                    .contentType(contentType)
+                    .contentEncoding(contentEncoding)
+                    .contentLength(storedLength)
+                    .metadata(metadata)
+                    .contentMD5(expectedMd5)
+                    .checksumSHA256(storedChecksum)
+                    .build();
+
+            long putStart = metrics.start();
+            PutObjectResponse put = s3Client.putObject(putObjectRequest,
+                    RequestBody.fromContentProvider(storedContent, storedLength, contentType));
+            metrics.record("PutObject", putStart);
+            metrics.count("FileBytes", contentLength);
+            eTag = put.eTag();
+        }
+
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(FileManifestSchema.USERNAME, AttributeValue.builder().s(username).build());
+        item.put(FileManifestSchema.FILENAME, AttributeValue.builder().s(filename).build());
+        item.put(FileManifestSchema.SHA256, AttributeValue.builder().s(sha256).build());
+        item.put(FileManifestSchema.CONTENT_KEY, AttributeValue.builder().s(contentKey).build());
+        item.put(FileManifestSchema.SIZE, AttributeValue.builder().n(String.valueOf(contentLength)).build());
+        item.put(FileManifestSchema.CONTENT_TYPE, AttributeValue.builder().s(contentType).build());
+        item.put(FileManifestSchema.UPLOADED_AT, AttributeValue.builder().n(String.valueOf(System.currentTimeMillis())).build());
+
+        long manifestStart = metrics.start();
+        dynamoDb.putItem(PutItemRequest.builder()
+                .tableName(manifestTableName)
+                .item(item)
+                .build());
+        metrics.record("PutManifest", manifestStart);
+
+        return new StoredFile(sha256, contentKey, eTag, existing != null);
+    }
+
+    /**
+     * The content object username/filename currently points at, or null if there is none.
+     * Files without a manifest entry were uploaded before deduplication was enabled and are
+     * looked up under their uploads/ key
+     */
+    public HeadObjectResponse currentObject(String username, String filename) {
+        Map<String, AttributeValue> item = dynamoDb.getItem(GetItemRequest.builder()
+                .tableName(manifestTableName)
+                .key(Map.of(
+                        FileManifestSchema.USERNAME, AttributeValue.builder().s(username).build(),
+                        FileManifestSchema.FILENAME, AttributeValue.builder().s(filename).build()))
+                .consistentRead(true)
+                .build()).item();
+        if (item == null || !item.containsKey(FileManifestSchema.CONTENT_KEY)) {
+            return S3Objects.head(s3Client, bucketName, FileKeys.constructS3Key(username, filename));
+        }
+        return S3Objects.head(s3Client, bucketName, item.get(FileManifestSchema.CONTENT_KEY).s());
+    }
+
+    /**
+     * Issue a GetItem and a HeadObject for keys that never exist
+     */
+    public void prime(String primingKey) {
+        try {
+            dynamoDb.getItem(GetItemRequest.builder()
+                    .tableName(manifestTableName)
+                    .key(Map.of(
+                            FileManifestSchema.USERNAME, AttributeValue.builder().s(primingKey).build(),
+                            FileManifestSchema.FILENAME, AttributeValue.builder().s(primingKey).build()))
+                    .build());
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+        try {
+            sha256(() -> InputStream.nullInputStream());
+            existing(FileKeys.contentKey(primingKey), 0);
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+
+    /**
+     * The content object under this key; a size mismatch means it is not the same content
+     * and is treated as absent, so the PUT replaces it. Compressed objects are compared by
+     * their original size
+     */
+    private HeadObjectResponse existing(String contentKey, long contentLength) {
+        HeadObjectResponse head = S3Objects.head(s3Client, bucketName, contentKey);
+        if (head == null) {
+            return null;
+        }
+        String originalSize = head.metadata().get(UploadCompression.ORIGINAL_SIZE);
+        String size = originalSize != null ? originalSize : String.valueOf(head.contentLength());
+        return size.equals(String.valueOf(contentLength)) ? head : null;
+    }
+
+    private static byte[] sha256(ContentStreamProvider content) {
+        return digest(content, "SHA-256")[0].digest();
+    }
+
+    /**
+     * One pass over the content feeding every given digest algorithm
+     */
+    private static MessageDigest[] digest(ContentStreamProvider content, String... algorithms) {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        try {
+            for (int i = 0; i < algorithms.length; i++) {
+                digests[i] = MessageDigest.getInstance(algorithms[i]);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[8192];
+        try (InputStream in = content.newStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return digests;
+    }
+}
@@ -0,0 +1,23 @@
+package com.userservice.service;
+
+/**
+ * How CognitoService provisioned a user, reported as an invocation counter
+ */
+public enum CreatePath {
+    /** SignUp confirmed by the pre sign-up trigger: one Cognito call */
+    SIGN_UP("CreatePathSignUp"),
+    /** SignUp that the trigger did not confirm, finished with AdminConfirmSignUp */
+    SIGN_UP_ADMIN_CONFIRM("CreatePathSignUpAdminConfirm"),
+    /** AdminCreateUser followed by AdminSetUserPassword */
+    ADMIN_CREATE("CreatePathAdminCreate");
+
+    private final String metricName;
+
+    CreatePath(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
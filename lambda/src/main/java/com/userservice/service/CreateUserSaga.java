@@ -0,0 +1,180 @@
+package com.userservice.service;
+
+import com.userservice.model.UserTableSchema;
+import com.userservice.util.InvocationMetrics;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Create-user pipeline that writes DynamoDB and Cognito concurrently.
+ *
+ * The username reservation and user record go out in one TransactWriteItems while the
+ * Cognito create (see CognitoService.createUserAsync) runs alongside it, so a create costs the longer
+ * of the two branches rather than their sum. Each branch tracks whether its side effect
+ * exists; when either branch fails, the completed ones are compensated (Cognito user
+ * deleted, reservation and user record removed) before the failure is rethrown.
+ * Compensation failures are attached to the rethrown exception as suppressed exceptions.
+ */
+public class CreateUserSaga {
+    private final DynamoDbAsyncClient dynamoDb;
+    private final CognitoService cognitoService;
+    private final String tableName;
+    private final String usernamesTableName;
+    private final InvocationMetrics metrics;
+
+    public CreateUserSaga(DynamoDbAsyncClient dynamoDb, CognitoService cognitoService,
+                          String tableName, String usernamesTableName, InvocationMetrics metrics) {
+        this.dynamoDb = dynamoDb;
+        this.cognitoService = cognitoService;
+        this.tableName = tableName;
+        this.usernamesTableName = usernamesTableName;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Run both branches and wait for them; returns only when the user exists in both stores
+     * @throws DuplicateUsernameException if either store already has the username
+     */
+    public void execute(String userId, String username, String role, String password, long createdAt)
+            throws Exception {
+        AtomicBoolean cognitoUserCreated = new AtomicBoolean();
+        // Written on SDK threads, read after join()
+        long[] elapsed = new long[2];
+        CreatePath[] createPath = new CreatePath[1];
+        long start = System.nanoTime();
+
+        CompletableFuture<Throwable> write = dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder()
+                        .transactItems(
+                                TransactWriteItem.builder().put(Put.builder()
+                                        .tableName(usernamesTableName)
+                                        .item(reservationItem(username, userId, createdAt))
+                                        .conditionExpression("attribute_not_exists(username)")
+                                        .build()).build(),
+                                TransactWriteItem.builder().put(Put.builder()
+                                        .tableName(tableName)
+                                        .item(userItem(userId, username, role, createdAt))
+                                        .conditionExpression("attribute_not_exists(userId)")
+                                        .build()).build())
+                        .build())
+                .handle((response, error) -> {
+                    elapsed[0] = System.nanoTime() - start;
+                    return unwrap(error);
+                });
+
+        CompletableFuture<Throwable> cognito = cognitoService
+                .createUserAsync(username, role, password, () -> cognitoUserCreated.set(true))
+                .handle((path, error) -> {
+                    elapsed[1] = System.nanoTime() - start;
+                    createPath[0] = path;
+                    return unwrap(error);
+                });
+
+        Throwable writeError = write.join();
+        Throwable cognitoError = cognito.join();
+        metrics.recordElapsed("TransactWriteItems", elapsed[0]);
+        metrics.recordElapsed("CognitoCreateUser", elapsed[1]);
+        if (createPath[0] != null) {
+            metrics.count(createPath[0].getMetricName(), 1);
+        }
+
+        if (writeError == null && cognitoError == null) {
+            return;
+        }
+
+        Exception failure = failure(username, writeError, cognitoError);
+        long compensateStart = metrics.start();
+
+        // Compensate whichever side effects exist, the DynamoDB delete overlapping the Cognito one
+        CompletableFuture<Void> itemsRemoved = writeError == null
+                ? deleteUserItems(userId, username)
+                : CompletableFuture.completedFuture(null);
+        if (cognitoUserCreated.get()) {
+            try {
+                cognitoService.deleteUser(username);
+            } catch (Exception e) {
+                failure.addSuppressed(e);
+            }
+        }
+        try {
+            itemsRemoved.join();
+        } catch (CompletionException e) {
+            failure.addSuppressed(unwrap(e));
+        }
+
+        metrics.record("Compensate", compensateStart);
+        throw failure;
+    }
+
+    private Exception failure(String username, Throwable writeError, Throwable cognitoError) {
+        if (writeError instanceof TransactionCanceledException
+                && isConditionFailure((TransactionCanceledException) writeError, 0)) {
+            return new DuplicateUsernameException("Username already exists: " + username);
+        }
+        if (cognitoError instanceof DuplicateUsernameException) {
+            return (DuplicateUsernameException) cognitoError;
+        }
+        if (writeError != null) {
+            return new Exception("Error creating user in database: " + writeError.getMessage());
+        }
+        return cognitoError instanceof Exception
+                ? (Exception) cognitoError
+                : new Exception("Error creating Cognito user: " + cognitoError.getMessage());
+    }
+
+    private Map<String, AttributeValue> userItem(String userId, String username, String role, long createdAt) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("userId", AttributeValue.builder().s(userId).build());
+        item.put("username", AttributeValue.builder().s(username).build());
+        item.put("role", AttributeValue.builder().s(role).build());
+        item.put("createdAt", AttributeValue.builder().n(String.valueOf(createdAt)).build());
+        item.put("updatedAt", AttributeValue.builder().n(String.valueOf(createdAt)).build());
+        item.put(UserTableSchema.LIST_PARTITION,
+                AttributeValue.builder().s(UserTableSchema.LIST_PARTITION_VALUE).build());
+        return item;
+    }
+
+    private Map<String, AttributeValue> reservationItem(String username, String userId, long createdAt) {
+        Map<String, AttributeValue> reservation = new HashMap<>();
+        reservation.put("username", AttributeValue.builder().s(username).build());
+        reservation.put("userId", AttributeValue.builder().s(userId).build());
+        reservation.put("createdAt", AttributeValue.builder().n(String.valueOf(createdAt)).build());
+        return reservation;
+    }
+
+    /**
+     * Remove the user record and its username reservation together
+     */
+    private CompletableFuture<Void> deleteUserItems(String userId, String username) {
+        return dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder()
+                        .transactItems(
+                                TransactWriteItem.builder().delete(Delete.builder()
+                                        .tableName(usernamesTableName)
+                                        .key(Map.of("username", AttributeValue.builder().s(username).build()))
+                                        .conditionExpression("userId = :userId")
+                                        .expressionAttributeValues(Map.of(
+                                                ":userId", AttributeValue.builder().s(userId).build()))
+                                        .build()).build(),
+                                TransactWriteItem.builder().delete(Delete.builder()
+                                        .tableName(tableName)
+                                        .key(Map.of("userId", AttributeValue.builder().s(userId).build()))
+                                        .build()).build())
+                        .build())
+                .thenApply(response -> null);
+    }
+
+    private static boolean isConditionFailure(TransactionCanceledException e, int index) {
+        return e.hasCancellationReasons()
+                && e.cancellationReasons().size() > index
+                && "ConditionalCheckFailed".equals(e.cancellationReasons().get(index).code());
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
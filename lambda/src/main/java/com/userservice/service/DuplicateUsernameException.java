@@ -0,0 +1,7 @@
+package com.userservice.service;
+
+public class DuplicateUsernameException extends Exception {
+    public DuplicateUsernameException(String message) {
+        super(message);
+    }
+}
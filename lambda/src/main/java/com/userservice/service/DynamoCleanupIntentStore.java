@@ -0,0 +1,188 @@
+package com.userservice.service;
+
+import com.userservice.model.UserTableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cleanup intents stored as tombstones in the Users table.
+ *
+ * Deleting a user turns its item into a tombstone in the same write: the listing attributes
+ * (listPartition, role) are removed so the user drops out of both listing indexes, and
+ * deletedAt plus cleanupPartition = PENDING put it into the sparse cleanup index. Completing
+ * an intent releases the username reservation and removes the tombstone in one transaction;
+ * parking it moves it to cleanupPartition = FAILED, where it stays for reconciliation.
+ */
+public class DynamoCleanupIntentStore implements CleanupIntentStore {
+
+    /**
+     * Update expression that turns a user item into a tombstone, see tombstoneValues
+     */
+    public static final String TOMBSTONE_UPDATE = "REMOVE " + UserTableSchema.LIST_PARTITION + ", #role"
+            + " SET " + UserTableSchema.DELETED_AT + " = :deletedAt, "
+            + UserTableSchema.CLEANUP_PARTITION + " = :cleanupPending, "
+            + UserTableSchema.CLEANUP_ATTEMPTS + " = :zero";
+
+    public static final Map<String, String> TOMBSTONE_NAMES = Map.of("#role", "role");
+
+    // The username is free or reserved for the intent's user
+    private static final String OWN_RESERVATION = "attribute_not_exists(username) OR userId = :userId";
+    private static final String TOMBSTONE_EXISTS = "attribute_exists(" + UserTableSchema.DELETED_AT + ")";
+
+    private final DynamoDbClient dynamoDb;
+    private final String tableName;
+    private final String usernamesTableName;
+
+    public DynamoCleanupIntentStore(DynamoDbClient dynamoDb, String tableName, String usernamesTableName) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+        this.usernamesTableName = usernamesTableName;
+    }
+
+    /**
+     * Expression values for TOMBSTONE_UPDATE
+     */
+    public static Map<String, AttributeValue> tombstoneValues(long deletedAt) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":deletedAt", AttributeValue.builder().n(String.valueOf(deletedAt)).build());
+        values.put(":cleanupPending", AttributeValue.builder().s(UserTableSchema.CLEANUP_PENDING).build());
+        values.put(":zero", AttributeValue.builder().n("0").build());
+        return values;
+    }
+
+    @Override
+    public List<CleanupIntent> pending(int limit) {
+        QueryResponse response = dynamoDb.query(QueryRequest.builder()
+                .tableName(tableName)
+                .indexName(UserTableSchema.CLEANUP_INDEX)
+                .keyConditionExpression(UserTableSchema.CLEANUP_PARTITION + " = :cleanupPending")
+                .expressionAttributeValues(Map.of(":cleanupPending",
+                        AttributeValue.builder().s(UserTableSchema.CLEANUP_PENDING).build()))
+                .limit(limit)
+                .build());
+
+        List<CleanupIntent> intents = new ArrayList<>(response.items().size());
+        for (Map<String, AttributeValue> item : response.items()) {
+            AttributeValue attempts = item.get(UserTableSchema.CLEANUP_ATTEMPTS);
+            intents.add(new CleanupIntent(
+                    item.get("userId").s(),
+                    item.get("username").s(),
+                    Long.parseLong(item.get(UserTableSchema.DELETED_AT).n()),
+                    attempts != null ? Integer.parseInt(attempts.n()) : 0));
+        }
+        return intents;
+    }
+
+    @Override
+    public boolean holdUsername(CleanupIntent intent) {
+        try {
+            dynamoDb.updateItem(UpdateItemRequest.builder()
+                    .tableName(usernamesTableName)
+                    .key(usernameKey(intent))
+                    .updateExpression("SET userId = :userId")
+                    .conditionExpression(OWN_RESERVATION)
+                    .expressionAttributeValues(userIdValue(intent))
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void complete(CleanupIntent intent) {
+        try {
+            dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder()
+                    .transactItems(
+                            TransactWriteItem.builder().delete(Delete.builder()
+                                    .tableName(usernamesTableName)
+                                    .key(usernameKey(intent))
+                                    .conditionExpression(OWN_RESERVATION)
+                                    .expressionAttributeValues(userIdValue(intent))
+                                    .build()).build(),
+                            // Only ever remove the tombstone, never a live user item
+                            TransactWriteItem.builder().delete(Delete.builder()
+                                    .tableName(tableName)
+                                    .key(userIdKey(intent))
+                                    .conditionExpression(TOMBSTONE_EXISTS)
+                                    .build()).build())
+                    .build());
+        } catch (TransactionCanceledException e) {
+            if (!isConditionFailure(e, 0) && !isConditionFailure(e, 1)) {
+                throw e;
+            }
+            // One side is already settled: another user holds the username, or an earlier
+            // drain removed the tombstone (and holdUsername reserved the name again since)
+            if (!isConditionFailure(e, 0)) {
+                deleteIfCondition(DeleteItemRequest.builder()
+                        .tableName(usernamesTableName)
+                        .key(usernameKey(intent))
+                        .conditionExpression(OWN_RESERVATION)
+                        .expressionAttributeValues(userIdValue(intent))
+                        .build());
+            }
+            if (!isConditionFailure(e, 1)) {
+                deleteIfCondition(DeleteItemRequest.builder()
+                        .tableName(tableName)
+                        .key(userIdKey(intent))
+                        .conditionExpression(TOMBSTONE_EXISTS)
+                        .build());
+            }
+        }
+    }
+
+    @Override
+    public void recordFailure(CleanupIntent intent, String error, boolean park) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":one", AttributeValue.builder().n("1").build());
+        values.put(":error", AttributeValue.builder().s(error != null ? error : "unknown").build());
+        String update = "ADD " + UserTableSchema.CLEANUP_ATTEMPTS + " :one SET " + UserTableSchema.CLEANUP_ERROR + " = :error";
+        if (park) {
+            update += ", " + UserTableSchema.CLEANUP_PARTITION + " = :cleanupFailed";
+            values.put(":cleanupFailed", AttributeValue.builder().s(UserTableSchema.CLEANUP_FAILED).build());
+        }
+
+        try {
+            dynamoDb.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Map.of("userId", AttributeValue.builder().s(intent.getUserId()).build()))
+                    .updateExpression(update)
+                    .conditionExpression(TOMBSTONE_EXISTS)
+                    .expressionAttributeValues(values)
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Completed meanwhile
+        }
+    }
+
+    private void deleteIfCondition(DeleteItemRequest request) {
+        try {
+            dynamoDb.deleteItem(request);
+        } catch (ConditionalCheckFailedException e) {
+            // Settled meanwhile
+        }
+    }
+
+    private static Map<String, AttributeValue> usernameKey(CleanupIntent intent) {
+        return Map.of("username", AttributeValue.builder().s(intent.getUsername()).build());
+    }
+
+    private static Map<String, AttributeValue> userIdKey(CleanupIntent intent) {
+        return Map.of("userId", AttributeValue.builder().s(intent.getUserId()).build());
+    }
+
+    private static Map<String, AttributeValue> userIdValue(CleanupIntent intent) {
+        return Map.of(":userId", AttributeValue.builder().s(intent.getUserId()).build());
+    }
+
+    private static boolean isConditionFailure(TransactionCanceledException e, int index) {
+        return e.hasCancellationReasons()
+                && e.cancellationReasons().size() > index
+                && "ConditionalCheckFailed".equals(e.cancellationReasons().get(index).code());
+    }
+}
@@ -0,0 +1,84 @@
+package com.userservice.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process CleanupIntentStore for tests and local runs of CleanupDrainer
+ */
+public class InMemoryCleanupIntentStore implements CleanupIntentStore {
+    private final Map<String, CleanupIntent> pending = new LinkedHashMap<>();
+    private final Map<String, CleanupIntent> parked = new LinkedHashMap<>();
+    private final Map<String, String> errors = new LinkedHashMap<>();
+    private final List<CleanupIntent> completed = new ArrayList<>();
+    private final Map<String, String> reservations = new LinkedHashMap<>();
+
+    public synchronized void add(CleanupIntent intent) {
+        pending.put(intent.getUserId(), intent);
+    }
+
+    /**
+     * Reserve a username for a user, as registration does
+     */
+    public synchronized void reserve(String username, String userId) {
+        reservations.put(username, userId);
+    }
+
+    /**
+     * Id of the user holding the username, or null
+     */
+    public synchronized String getReservation(String username) {
+        return reservations.get(username);
+    }
+
+    @Override
+    public synchronized List<CleanupIntent> pending(int limit) {
+        List<CleanupIntent> oldest = new ArrayList<>(pending.values());
+        oldest.sort(Comparator.comparingLong(CleanupIntent::getDeletedAt));
+        return new ArrayList<>(oldest.subList(0, Math.min(limit, oldest.size())));
+    }
+
+    @Override
+    public synchronized boolean holdUsername(CleanupIntent intent) {
+        String holder = reservations.putIfAbsent(intent.getUsername(), intent.getUserId());
+        return holder == null || holder.equals(intent.getUserId());
+    }
+
+    @Override
+    public synchronized void complete(CleanupIntent intent) {
+        reservations.remove(intent.getUsername(), intent.getUserId());
+        if (pending.remove(intent.getUserId()) != null) {
+            completed.add(intent);
+        }
+    }
+
+    @Override
+    public synchronized void recordFailure(CleanupIntent intent, String error, boolean park) {
+        CleanupIntent current = pending.remove(intent.getUserId());
+        if (current == null) {
+            return;
+        }
+        CleanupIntent failed = new CleanupIntent(current.getUserId(), current.getUsername(),
+                current.getDeletedAt(), current.getAttempts() + 1);
+        (park ? parked : pending).put(failed.getUserId(), failed);
+        errors.put(failed.getUserId(), error);
+    }
+
+    public synchronized List<CleanupIntent> getCompleted() {
+        return new ArrayList<>(completed);
+    }
+
+    public synchronized List<CleanupIntent> getParked() {
+        return new ArrayList<>(parked.values());
+    }
+
+    /**
+     * Last recorded error of a user's intent, or null
+     */
+    public synchronized String getError(String userId) {
+        return errors.get(userId);
+    }
+}
@@ -0,0 +1,149 @@
+package com.userservice.service;
+
+import com.userservice.model.User;
+import com.userservice.util.InvocationMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-container UserCache: size-bounded LRU with a TTL for users and a shorter one for
+ * cached absences.
+ *
+ * Entries are never refreshed in place, so a user change reaches this container only
+ * after the TTL or an invalidate. Invalidation only covers this container; other
+ * containers and functions keep their entries until they expire, which bounds
+ * staleness by the TTL. One instance is shared per container (see shared), sized by
+ * USER_CACHE_MAX_ENTRIES, USER_CACHE_TTL_SECONDS and USER_CACHE_NEGATIVE_TTL_SECONDS;
+ * a TTL or size of 0 disables it.
+ */
+public class LocalUserCache implements UserCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final int DEFAULT_TTL_SECONDS = 30;
+    public static final int DEFAULT_NEGATIVE_TTL_SECONDS = 5;
+
+    private static final LocalUserCache SHARED = new LocalUserCache(
+            intFromEnvironment("USER_CACHE_MAX_ENTRIES", DEFAULT_MAX_ENTRIES),
+            intFromEnvironment("USER_CACHE_TTL_SECONDS", DEFAULT_TTL_SECONDS),
+            intFromEnvironment("USER_CACHE_NEGATIVE_TTL_SECONDS", DEFAULT_NEGATIVE_TTL_SECONDS));
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    // Access-ordered, guarded by this
+    private final LinkedHashMap<String, Entry> entries;
+
+    // Since the last report, guarded by this
+    private long hits;
+    private long negativeHits;
+    private long misses;
+
+    // Since creation, guarded by this
+    private long totalLookups;
+    private long totalHits;
+
+    public LocalUserCache(int maxEntries, int ttlSeconds, int negativeTtlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > LocalUserCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static LocalUserCache shared() {
+        return SHARED;
+    }
+
+    @Override
+    public synchronized Lookup get(String userId) {
+        totalLookups++;
+        Entry entry = entries.get(userId);
+        if (entry != null && System.nanoTime() - entry.expiresAtNanos >= 0) {
+            entries.remove(userId);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return Lookup.MISS;
+        }
+
+        totalHits++;
+        if (entry.user == null) {
+            negativeHits++;
+            return Lookup.NOT_FOUND;
+        }
+        hits++;
+        return Lookup.found(entry.user);
+    }
+
+    @Override
+    public void put(User user) {
+        store(user.getUserId(), user, ttlNanos);
+    }
+
+    @Override
+    public void putMissing(String userId) {
+        store(userId, null, negativeTtlNanos);
+    }
+
+    @Override
+    public synchronized void invalidate(String userId) {
+        entries.remove(userId);
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized void recordMetrics(InvocationMetrics metrics) {
+        metrics.count("UserCacheHits", hits);
+        metrics.count("UserCacheNegativeHits", negativeHits);
+        metrics.count("UserCacheMisses", misses);
+        metrics.count("UserCacheSize", entries.size());
+        hits = 0;
+        negativeHits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public synchronized double getHitRatio() {
+        return totalLookups == 0 ? 0 : (double) totalHits / totalLookups;
+    }
+
+    private synchronized void store(String userId, User user, long ttl) {
+        if (maxEntries <= 0 || ttl <= 0) {
+            return;
+        }
+        entries.put(userId, new Entry(user, System.nanoTime() + ttl));
+    }
+
+    private static int intFromEnvironment(String variable, int defaultValue) {
+        String value = System.getenv(variable);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static final class Entry {
+        private final User user;
+        private final long expiresAtNanos;
+
+        private Entry(User user, long expiresAtNanos) {
+            this.user = user;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.userservice.service;
+
+/**
+ * A downstream service is saturated or unavailable; the request can be retried later
+ */
+public class ServiceUnavailableException extends Exception {
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
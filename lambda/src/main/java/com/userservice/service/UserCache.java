@@ -0,0 +1,71 @@
+package com.userservice.service;
+
+import com.userservice.model.User;
+import com.userservice.util.InvocationMetrics;
+
+/**
+ * Read-through cache of User records keyed by userId.
+ *
+ * Absences are cached too (putMissing), so repeated lookups of unknown ids are answered
+ * without a read. LocalUserCache keeps the entries in the container; a shared cache tier
+ * can be plugged in behind the same interface.
+ */
+public interface UserCache {
+
+    /**
+     * Outcome of a lookup: a cached user, a cached absence, or nothing cached
+     */
+    final class Lookup {
+        public static final Lookup MISS = new Lookup(false, null);
+        public static final Lookup NOT_FOUND = new Lookup(true, null);
+
+        private final boolean hit;
+        private final User user;
+
+        private Lookup(boolean hit, User user) {
+            this.hit = hit;
+            this.user = user;
+        }
+
+        public static Lookup found(User user) {
+            return new Lookup(true, user);
+        }
+
+        /**
+         * True if the cache answered, with a user or with NOT_FOUND
+         */
+        public boolean isHit() {
+            return hit;
+        }
+
+        /**
+         * The cached user; null for MISS and NOT_FOUND
+         */
+        public User getUser() {
+            return user;
+        }
+    }
+
+    Lookup get(String userId);
+
+    void put(User user);
+
+    /**
+     * Remember that no user exists with this id
+     */
+    void putMissing(String userId);
+
+    void invalidate(String userId);
+
+    void clear();
+
+    /**
+     * Report hits and misses since the last report
+     */
+    void recordMetrics(InvocationMetrics metrics);
+
+    /**
+     * Share of lookups answered from the cache since it was created
+     */
+    double getHitRatio();
+}
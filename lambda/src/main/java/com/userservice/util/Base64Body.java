@@ -0,0 +1,90 @@
+package com.userservice.util;
+
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Streaming access to a base64 request body without materializing the decoded bytes.
+ *
+ * decodedLength validates the body in one pass over its characters and returns the exact
+ * decoded size, so limits can be enforced before anything is read. openStream then
+ * decodes on the fly from the String itself; each call returns a fresh stream, which lets
+ * the SDK replay the body on retries. Accepts what Base64.getDecoder() accepts: the basic
+ * alphabet, with or without padding, and no line breaks.
+ */
+public final class Base64Body {
+
+    private Base64Body() {
+    }
+
+    /**
+     * Number of bytes the body decodes to
+     * @throws IllegalArgumentException if the body is not valid base64
+     */
+    public static long decodedLength(String body) {
+        int length = body.length();
+        int padding = 0;
+        while (padding < 2 && length - padding > 0 && body.charAt(length - padding - 1) == '=') {
+            padding++;
+        }
+
+        int data = length - padding;
+        if (data % 4 == 1 || (padding > 0 && length % 4 != 0)) {
+            throw new IllegalArgumentException("Invalid base64 length");
+        }
+        for (int i = 0; i < data; i++) {
+            if (!isBase64(body.charAt(i))) {
+                throw new IllegalArgumentException("Illegal base64 character at index " + i);
+            }
+        }
+        return (long) data * 3 / 4;
+    }
+
+    /**
+     * Decoded bytes of the body, decoded as they are read
+     */
+    public static InputStream openStream(String body) {
+        return Base64.getDecoder().wrap(new AsciiStream(body));
+    }
+
+    private static boolean isBase64(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/';
+    }
+
+    /**
+     * The characters of an ASCII string as bytes, read straight from the String
+     */
+    private static final class AsciiStream extends InputStream {
+        private final String value;
+        private int position;
+
+        private AsciiStream(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public int read() {
+            return position < value.length() ? value.charAt(position++) & 0x7F : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= value.length()) {
+                return -1;
+            }
+            int count = Math.min(length, value.length() - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) (value.charAt(position++) & 0x7F);
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return value.length() - position;
+        }
+    }
+}
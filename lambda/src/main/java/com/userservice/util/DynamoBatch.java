@@ -0,0 +1,224 @@
+package com.userservice.util;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * BatchWriteItem and BatchGetItem helpers.
+ *
+ * Requests are split into the per-call limits (25 writes, 100 keys) and whatever DynamoDB
+ * returns as UnprocessedItems / UnprocessedKeys is retried with full-jitter exponential
+ * backoff, as are calls rejected as a whole by throttling or a 5xx. Anything still
+ * unprocessed after the last attempt is handed back to the caller, which decides what
+ * failed. Any other error, such as a ValidationException or a missing table, is thrown.
+ */
+public final class DynamoBatch {
+    public static final int MAX_WRITES_PER_CALL = 25;
+    public static final int MAX_KEYS_PER_CALL = 100;
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+
+    private DynamoBatch() {
+    }
+
+    /**
+     * One write request and the table it targets
+     */
+    public static final class TableWrite {
+        private final String table;
+        private final WriteRequest request;
+
+        public TableWrite(String table, WriteRequest request) {
+            this.table = table;
+            this.request = request;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public WriteRequest getRequest() {
+            return request;
+        }
+    }
+
+    public static final class WriteResult {
+        private final List<TableWrite> unprocessed;
+        private final int retries;
+
+        private WriteResult(List<TableWrite> unprocessed, int retries) {
+            this.unprocessed = unprocessed;
+            this.retries = retries;
+        }
+
+        /**
+         * Writes that were still unprocessed after the last attempt
+         */
+        public List<TableWrite> getUnprocessed() {
+            return unprocessed;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+    }
+
+    public static final class GetResult {
+        private final List<Map<String, AttributeValue>> items;
+        private final List<Map<String, AttributeValue>> unprocessedKeys;
+        private final int retries;
+
+        private GetResult(List<Map<String, AttributeValue>> items,
+                          List<Map<String, AttributeValue>> unprocessedKeys, int retries) {
+            this.items = items;
+            this.unprocessedKeys = unprocessedKeys;
+            this.retries = retries;
+        }
+
+        /**
+         * Items found, in no particular order; missing keys are simply absent
+         */
+        public List<Map<String, AttributeValue>> getItems() {
+            return items;
+        }
+
+        /**
+         * Keys that were still unprocessed after the last attempt
+         */
+        public List<Map<String, AttributeValue>> getUnprocessedKeys() {
+            return unprocessedKeys;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+    }
+
+    public static WriteRequest put(Map<String, AttributeValue> item) {
+        return WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build();
+    }
+
+    public static WriteRequest delete(Map<String, AttributeValue> key) {
+        return WriteRequest.builder().deleteRequest(DeleteRequest.builder().key(key).build()).build();
+    }
+
+    /**
+     * Write everything in groups of 25, retrying unprocessed writes
+     * A chunk rejected as a whole by throttling or a 5xx is retried the same way
+     * @throws DynamoDbException for any other error
+     */
+    public static WriteResult writeAll(DynamoDbClient dynamoDb, List<TableWrite> writes) throws InterruptedException {
+        List<TableWrite> pending = writes;
+        int retries = 0;
+
+        for (int attempt = 1; !pending.isEmpty() && attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                retries += pending.size();
+                backoff(attempt);
+            }
+
+            List<TableWrite> unprocessed = new ArrayList<>();
+            for (int from = 0; from < pending.size(); from += MAX_WRITES_PER_CALL) {
+                List<TableWrite> chunk = pending.subList(from, Math.min(from + MAX_WRITES_PER_CALL, pending.size()));
+                Map<String, List<WriteRequest>> requestItems = new HashMap<>();
+                for (TableWrite write : chunk) {
+                    requestItems.computeIfAbsent(write.table, table -> new ArrayList<>()).add(write.request);
+                }
+
+                try {
+                    BatchWriteItemResponse response = dynamoDb.batchWriteItem(BatchWriteItemRequest.builder()
+                            .requestItems(requestItems)
+                            .build());
+                    if (response.hasUnprocessedItems()) {
+                        response.unprocessedItems().forEach((table, requests) -> {
+                            for (WriteRequest request : requests) {
+                                unprocessed.add(new TableWrite(table, request));
+                            }
+                        });
+                    }
+                } catch (DynamoDbException e) {
+                    if (!isRetryable(e)) {
+                        throw e;
+                    }
+                    unprocessed.addAll(chunk);
+                }
+            }
+            pending = unprocessed;
+        }
+        return new WriteResult(pending, retries);
+    }
+
+    /**
+     * Read the given keys of one table in groups of 100, retrying unprocessed keys
+     * @param projectionExpression attributes to return, or null for the whole item
+     * @throws DynamoDbException for errors other than throttling and 5xx
+     */
+    public static GetResult getAll(DynamoDbClient dynamoDb, String table, List<Map<String, AttributeValue>> keys,
+                                   String projectionExpression) throws InterruptedException {
+        List<Map<String, AttributeValue>> items = new ArrayList<>(keys.size());
+        List<Map<String, AttributeValue>> pending = keys;
+        int retries = 0;
+
+        for (int attempt = 1; !pending.isEmpty() && attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                retries += pending.size();
+                backoff(attempt);
+            }
+
+            List<Map<String, AttributeValue>> unprocessed = new ArrayList<>();
+            for (int from = 0; from < pending.size(); from += MAX_KEYS_PER_CALL) {
+                List<Map<String, AttributeValue>> chunk =
+                        pending.subList(from, Math.min(from + MAX_KEYS_PER_CALL, pending.size()));
+                KeysAndAttributes.Builder keysAndAttributes = KeysAndAttributes.builder().keys(chunk);
+                if (projectionExpression != null) {
+                    keysAndAttributes.projectionExpression(projectionExpression);
+                }
+
+                try {
+                    BatchGetItemResponse response = dynamoDb.batchGetItem(BatchGetItemRequest.builder()
+                            .requestItems(Map.of(table, keysAndAttributes.build()))
+                            .build());
+                    if (response.hasResponses() && response.responses().containsKey(table)) {
+                        items.addAll(response.responses().get(table));
+                    }
+                    if (response.hasUnprocessedKeys() && response.unprocessedKeys().containsKey(table)) {
+                        unprocessed.addAll(response.unprocessedKeys().get(table).keys());
+                    }
+                } catch (DynamoDbException e) {
+                    if (!isRetryable(e)) {
+                        throw e;
+                    }
+                    unprocessed.addAll(chunk);
+                }
+            }
+            pending = unprocessed;
+        }
+        return new GetResult(items, pending, retries);
+    }
+
+    /**
+     * Throttling (ProvisionedThroughputExceeded, RequestLimitExceeded, ThrottlingException)
+     * and server-side failures; everything else would fail again the same way
+     */
+    private static boolean isRetryable(DynamoDbException e) {
+        return e instanceof ProvisionedThroughputExceededException
+                || e instanceof RequestLimitExceededException
+                || e.isThrottlingException()
+                || e.statusCode() >= 500;
+    }
+
+    /**
+     * Full-jitter exponential backoff between attempts
+     */
+    private static void backoff(int attempt) throws InterruptedException {
+        long ceiling = BASE_BACKOFF_MILLIS << (attempt - 1);
+        Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+}
@@ -0,0 +1,52 @@
+package com.userservice.util;
+
+/**
+ * Filename validation and S3 key layout shared by the file upload handlers
+ */
+public final class FileKeys {
+
+    private FileKeys() {
+    }
+
+    /**
+     * Validate filename to prevent path traversal and other security issues
+     */
+    public static boolean isValidFilename(String filename) {
+        if (filename == null || filename.isEmpty()) {
+            return false;
+        }
+
+        // Reject path traversal attempts
+        if (filename.contains("..") || filename.contains("/") || filename.contains("\\")) {
+            return false;
+        }
+
+        // Reject control characters
+        if (filename.matches(".*[\\x00-\\x1F\\x7F].*")) {
+            return false;
+        }
+
+        // Length check
+        if (filename.length() > 255) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Construct S3 key with username prefix for organization
+     * Pattern: uploads/{username}/{filename}
+     */
+    public static String constructS3Key(String username, String filename) {
+        return String.format("uploads/%s/%s", username, filename);
+    }
+
+    /**
+     * S3 key of content-addressed (deduplicated) content
+     * Pattern: content/{hex sha256}
+     */
+    public static String contentKey(String sha256Hex) {
+        return "content/" + sha256Hex;
+    }
+}
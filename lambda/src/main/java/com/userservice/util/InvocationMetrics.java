@@ -0,0 +1,318 @@
+package com.userservice.util;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import java.io.PrintStream;
+
+/**
+ * Per-invocation latency instrumentation emitted as one CloudWatch Embedded Metric Format line.
+ *
+ * A handler owns one instance, calls begin at the start of each invocation, times named
+ * phases with start/record, adds counters with count, and calls finish with the response.
+ * Phase and counter names must be constants. The EMF document is encoded into a reusable
+ * byte buffer and written straight to stdout, so the hot path allocates nothing once the
+ * buffer has grown to size. Instances are not thread-safe; Lambda runs one invocation
+ * per handler instance at a time.
+ */
+public class InvocationMetrics {
+    public static final String NAMESPACE = "UserService";
+
+    private static final int MAX_ENTRIES = 16;
+
+    // First invocation in this JVM (or after a SnapStart restore) is a cold start
+    private static volatile boolean coldStart = true;
+
+    private final String[] phaseNames = new String[MAX_ENTRIES];
+    private final long[] phaseNanos = new long[MAX_ENTRIES];
+    private int phaseCount;
+
+    private final String[] counterNames = new String[MAX_ENTRIES];
+    private final long[] counterValues = new long[MAX_ENTRIES];
+    private int counterCount;
+
+    private final PrintStream out;
+    private byte[] buffer = new byte[2048];
+    private int length;
+
+    private String functionName;
+    private boolean cold;
+    private long startNanos;
+    private long requestSize;
+
+    public InvocationMetrics() {
+        this(System.out);
+    }
+
+    public InvocationMetrics(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Mark the next invocation as cold. Called from SnapStart afterRestore hooks
+     */
+    public static void markRestored() {
+        coldStart = true;
+    }
+
+    /**
+     * Reset state and start timing a new invocation
+     */
+    public void begin(Context context, APIGatewayProxyRequestEvent event) {
+        startNanos = System.nanoTime();
+        cold = coldStart;
+        coldStart = false;
+        functionName = context != null ? context.getFunctionName() : null;
+        requestSize = event != null ? payloadSize(event.getBody(), event.getIsBase64Encoded()) : 0;
+        phaseCount = 0;
+        counterCount = 0;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Add the time elapsed since startNanos to the named phase
+     */
+    public void record(String phase, long startNanos) {
+        recordElapsed(phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add an already measured duration to the named phase, e.g. one timed on another thread
+     */
+    public void recordElapsed(String phase, long elapsed) {
+        for (int i = 0; i < phaseCount; i++) {
+            if (phaseNames[i] == phase || phaseNames[i].equals(phase)) {
+                phaseNanos[i] += elapsed;
+                return;
+            }
+        }
+        if (phaseCount < MAX_ENTRIES) {
+            phaseNames[phaseCount] = phase;
+            phaseNanos[phaseCount] = elapsed;
+            phaseCount++;
+        }
+    }
+
+    /**
+     * Add a value to the named counter
+     */
+    public void count(String counter, long value) {
+        for (int i = 0; i < counterCount; i++) {
+            if (counterNames[i] == counter || counterNames[i].equals(counter)) {
+                counterValues[i] += value;
+                return;
+            }
+        }
+        if (counterCount < MAX_ENTRIES) {
+            counterNames[counterCount] = counter;
+            counterValues[counterCount] = value;
+            counterCount++;
+        }
+    }
+
+    /**
+     * Emit the EMF line for this invocation and return the response unchanged
+     */
+    public APIGatewayProxyResponseEvent finish(APIGatewayProxyResponseEvent response) {
+        long totalNanos = System.nanoTime() - startNanos;
+        int statusCode = response != null && response.getStatusCode() != null ? response.getStatusCode() : 500;
+        long responseSize = response != null ? payloadSize(response.getBody(), response.getIsBase64Encoded()) : 0;
+
+        emit(totalNanos, statusCode, responseSize);
+        return response;
+    }
+
+    /**
+     * Emit the EMF line for an invocation without an HTTP response, e.g. a scheduled one
+     */
+    public void finish(int statusCode) {
+        emit(System.nanoTime() - startNanos, statusCode, 0);
+    }
+
+    /**
+     * Size in bytes of the payload a body carries: the decoded size of a base64 body,
+     * otherwise its UTF-8 length. Computed without encoding or decoding anything
+     */
+    static long payloadSize(String body, Boolean isBase64Encoded) {
+        if (body == null) {
+            return 0;
+        }
+        int length = body.length();
+        if (isBase64Encoded != null && isBase64Encoded) {
+            int padding = 0;
+            while (padding < 2 && length - padding > 0 && body.charAt(length - padding - 1) == '=') {
+                padding++;
+            }
+            return (long) (length - padding) * 3 / 4;
+        }
+
+        long bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = body.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(body.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private void emit(long totalNanos, int statusCode, long responseSize) {
+        try {
+            encode(totalNanos, statusCode, responseSize);
+            out.write(buffer, 0, length);
+            out.flush();
+        } catch (RuntimeException e) {
+            // Metrics must never fail the request
+        }
+    }
+
+    private void encode(long totalNanos, int statusCode, long responseSize) {
+        length = 0;
+
+        ascii("{\"_aws\":{\"Timestamp\":");
+        number(System.currentTimeMillis());
+        ascii(",\"CloudWatchMetrics\":[{\"Namespace\":\"");
+        ascii(NAMESPACE);
+        ascii("\",\"Dimensions\":[[\"FunctionName\"]],\"Metrics\":[");
+        metricDefinition("Duration", "Milliseconds");
+        for (int i = 0; i < phaseCount; i++) {
+            put(',');
+            metricDefinition(phaseNames[i], "Milliseconds");
+        }
+        for (int i = 0; i < counterCount; i++) {
+            put(',');
+            metricDefinition(counterNames[i], "Count");
+        }
+        put(',');
+        metricDefinition("ColdStart", "Count");
+        put(',');
+        metricDefinition("RequestSize", "Bytes");
+        put(',');
+        metricDefinition("ResponseSize", "Bytes");
+        ascii("]}]}");
+
+        ascii(",\"FunctionName\":");
+        string(functionName != null ? functionName : "unknown");
+        ascii(",\"StatusCode\":");
+        number(statusCode);
+        ascii(",\"Outcome\":\"");
+        ascii(statusCode >= 500 ? "server_error" : statusCode >= 400 ? "client_error" : "success");
+        ascii("\",\"ColdStart\":");
+        number(cold ? 1 : 0);
+        ascii(",\"Duration\":");
+        millis(totalNanos);
+        for (int i = 0; i < phaseCount; i++) {
+            put(',');
+            string(phaseNames[i]);
+            put(':');
+            millis(phaseNanos[i]);
+        }
+        for (int i = 0; i < counterCount; i++) {
+            put(',');
+            string(counterNames[i]);
+            put(':');
+            number(counterValues[i]);
+        }
+        ascii(",\"RequestSize\":");
+        number(requestSize);
+        ascii(",\"ResponseSize\":");
+        number(responseSize);
+        ascii("}\n");
+    }
+
+    private void metricDefinition(String name, String unit) {
+        ascii("{\"Name\":");
+        string(name);
+        ascii(",\"Unit\":\"");
+        ascii(unit);
+        ascii("\"}");
+    }
+
+    /**
+     * Nanoseconds written as milliseconds with microsecond precision
+     */
+    private void millis(long nanos) {
+        long micros = nanos / 1000;
+        number(micros / 1000);
+        put('.');
+        long fraction = micros % 1000;
+        put((byte) ('0' + fraction / 100));
+        put((byte) ('0' + (fraction / 10) % 10));
+        put((byte) ('0' + fraction % 10));
+    }
+
+    private void number(long value) {
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        if (value == 0) {
+            put('0');
+            return;
+        }
+        int digits = 0;
+        for (long v = value; v > 0; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * JSON string with escaping; names are expected to be ASCII
+     */
+    private void string(String value) {
+        put('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                put('\\');
+                put((byte) c);
+            } else if (c < 0x20 || c > 0x7E) {
+                put('?');
+            } else {
+                put((byte) c);
+            }
+        }
+        put('"');
+    }
+
+    private void ascii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void put(char c) {
+        put((byte) c);
+    }
+
+    private void put(byte b) {
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.userservice.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Streaming JSON writer backed by a reusable per-thread character buffer.
+ * Callers write the document with a JsonGenerator and get the finished String back,
+ * without building an intermediate object graph for Jackson to introspect.
+ * Not reentrant: a Body must not call write itself.
+ */
+public final class JsonOutput {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    // Buffers that grew past this after a large response are dropped instead of retained
+    private static final int MAX_RETAINED_CHARS = 256 * 1024;
+
+    private static final ThreadLocal<StringWriter> buffers =
+            ThreadLocal.withInitial(() -> new StringWriter(512));
+
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    private JsonOutput() {
+    }
+
+    public static String write(Body body) throws IOException {
+        StringWriter writer = buffers.get();
+        writer.getBuffer().setLength(0);
+
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            body.writeTo(generator);
+        }
+
+        String json = writer.toString();
+        if (writer.getBuffer().capacity() > MAX_RETAINED_CHARS) {
+            buffers.remove();
+        }
+        return json;
+    }
+}
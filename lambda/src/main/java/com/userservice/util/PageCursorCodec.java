@@ -0,0 +1,183 @@
+package com.userservice.util;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opaque, signed pagination cursor for DynamoDB LastEvaluatedKey maps.
+ *
+ * Binary layout (then base64url without padding):
+ *   version (1) | attribute count (1) | per attribute: name length (1), name (UTF-8),
+ *   type (1: 'S', 'N' or 'B'), value length (2), value bytes | HMAC-SHA256 tag (16)
+ *
+ * The tag covers the payload and a caller-supplied scope (e.g. index name and partition),
+ * so a cursor is only accepted for the listing it was issued by, and forged or corrupted
+ * cursors are rejected before any DynamoDB call is made.
+ */
+public class PageCursorCodec {
+    public static final byte VERSION = 1;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int TAG_LENGTH = 16;
+    private static final int MAX_CURSOR_LENGTH = 4096;
+
+    private final SecretKeySpec signingKey;
+
+    public PageCursorCodec(byte[] key) {
+        this.signingKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+    }
+
+    /**
+     * Codec keyed by the given signing key. Without one, which only happens when no signing
+     * secret is configured (local runs), a random per-container key is used, so cursors stay
+     * valid only within the container that issued them. A configured secret that cannot be
+     * read fails initialization in Secrets instead of falling back here
+     */
+    public static PageCursorCodec withKey(String key) {
+        if (key != null && !key.isEmpty()) {
+            return new PageCursorCodec(key.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return new PageCursorCodec(random);
+    }
+
+    public String encode(String scope, Map<String, AttributeValue> lastEvaluatedKey) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(VERSION);
+        out.write(lastEvaluatedKey.size());
+
+        for (Map.Entry<String, AttributeValue> entry : lastEvaluatedKey.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 255) {
+                throw new IllegalArgumentException("Key attribute name too long: " + entry.getKey());
+            }
+            out.write(name.length);
+            out.write(name, 0, name.length);
+
+            AttributeValue value = entry.getValue();
+            byte[] bytes;
+            if (value.s() != null) {
+                out.write('S');
+                bytes = value.s().getBytes(StandardCharsets.UTF_8);
+            } else if (value.n() != null) {
+                out.write('N');
+                bytes = value.n().getBytes(StandardCharsets.US_ASCII);
+            } else if (value.b() != null) {
+                out.write('B');
+                bytes = value.b().asByteArray();
+            } else {
+                throw new IllegalArgumentException("Unsupported key attribute type: " + entry.getKey());
+            }
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Key attribute value too long: " + entry.getKey());
+            }
+            out.write(bytes.length >>> 8);
+            out.write(bytes.length & 0xFF);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        byte[] payload = out.toByteArray();
+        byte[] tag = tag(scope, payload, payload.length);
+        out.write(tag, 0, TAG_LENGTH);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Verify and decode a cursor issued for the same scope
+     * @throws IllegalArgumentException if the cursor is malformed, forged or from another scope
+     */
+    public Map<String, AttributeValue> decode(String scope, String cursor) {
+        if (cursor == null || cursor.isEmpty() || cursor.length() > MAX_CURSOR_LENGTH) {
+            throw new IllegalArgumentException("Invalid pagination cursor");
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid pagination cursor");
+        }
+        if (bytes.length < 2 + TAG_LENGTH) {
+            throw new IllegalArgumentException("Invalid pagination cursor");
+        }
+
+        int payloadLength = bytes.length - TAG_LENGTH;
+        byte[] expected = tag(scope, bytes, payloadLength);
+        byte[] actual = new byte[TAG_LENGTH];
+        System.arraycopy(bytes, payloadLength, actual, 0, TAG_LENGTH);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            throw new IllegalArgumentException("Invalid pagination cursor");
+        }
+
+        if (bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported pagination cursor version");
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, payloadLength - 1);
+            int count = buffer.get() & 0xFF;
+            Map<String, AttributeValue> key = new HashMap<>();
+
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buffer.get() & 0xFF];
+                buffer.get(name);
+                byte type = buffer.get();
+                byte[] value = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(value);
+
+                AttributeValue attribute;
+                switch (type) {
+                    case 'S':
+                        attribute = AttributeValue.builder().s(new String(value, StandardCharsets.UTF_8)).build();
+                        break;
+                    case 'N':
+                        attribute = AttributeValue.builder().n(new String(value, StandardCharsets.US_ASCII)).build();
+                        break;
+                    case 'B':
+                        attribute = AttributeValue.builder().b(SdkBytes.fromByteArray(value)).build();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid pagination cursor");
+                }
+                key.put(new String(name, StandardCharsets.UTF_8), attribute);
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Invalid pagination cursor");
+            }
+            return key;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid pagination cursor");
+        }
+    }
+
+    private byte[] tag(String scope, byte[] payload, int payloadLength) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(signingKey);
+            mac.update(scope.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(payload, 0, payloadLength);
+            byte[] full = mac.doFinal();
+            byte[] truncated = new byte[TAG_LENGTH];
+            System.arraycopy(full, 0, truncated, 0, TAG_LENGTH);
+            return truncated;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+}
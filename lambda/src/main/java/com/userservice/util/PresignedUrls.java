@@ -0,0 +1,45 @@
+package com.userservice.util;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings and response helpers shared by the handlers that hand out presigned S3 URLs
+ */
+public final class PresignedUrls {
+    public static final int DEFAULT_EXPIRY_SECONDS = 900;
+
+    private PresignedUrls() {
+    }
+
+    /**
+     * URL lifetime from PRESIGN_EXPIRY_SECONDS, default 15 minutes
+     */
+    public static Duration expiryFromEnvironment() {
+        String value = System.getenv("PRESIGN_EXPIRY_SECONDS");
+        long seconds = DEFAULT_EXPIRY_SECONDS;
+        if (value != null && !value.isEmpty()) {
+            try {
+                seconds = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // Keep the default
+            }
+        }
+        return Duration.ofSeconds(seconds > 0 ? seconds : DEFAULT_EXPIRY_SECONDS);
+    }
+
+    /**
+     * Signed headers the client has to send with the request; Host is implied by the URL
+     */
+    public static Map<String, String> clientHeaders(Map<String, List<String>> signedHeaders) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : signedHeaders.entrySet()) {
+            if (!"host".equalsIgnoreCase(header.getKey())) {
+                headers.put(header.getKey(), String.join(",", header.getValue()));
+            }
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,95 @@
+package com.userservice.util;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.userservice.auth.AuthorizationUtil;
+import com.userservice.model.User;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Warm-up helpers run from the SnapStart checkpoint/restore hooks.
+ *
+ * Each method drives a real code path against a dummy request so class loading, Jackson
+ * introspection, SDK marshallers and TLS setup happen before the snapshot is taken rather
+ * than on the first request. Failures are expected (dummy keys do not exist) and ignored.
+ */
+public final class Priming {
+    public static final String PRIMING_KEY = "__priming__";
+
+    // Token without an exp claim, so it is decoded but never cached
+    private static final String PRIMING_TOKEN = "eyJhbGciOiJub25lIn0."
+            + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    ("{\"sub\":\"" + PRIMING_KEY + "\",\"cognito:username\":\"" + PRIMING_KEY
+                            + "\",\"custom:role\":\"guest\"}").getBytes(StandardCharsets.UTF_8))
+            + ".signature";
+
+    private Priming() {
+    }
+
+    /**
+     * Exercise auth header parsing and response serialization
+     */
+    public static void primeRequestPath() {
+        try {
+            APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent()
+                    .withHeaders(Map.of("Authorization", "Bearer " + PRIMING_TOKEN));
+            AuthorizationUtil.extractAuthContext(event);
+
+            long now = System.currentTimeMillis();
+            ResponseUtil.success(new User(PRIMING_KEY, PRIMING_KEY, "guest", now, now));
+            ResponseUtil.badRequest("Priming request");
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+
+    /**
+     * Issue a GetItem for a key that never exists
+     */
+    public static void primeDynamoDb(DynamoDbClient dynamoDb, String tableName) {
+        try {
+            dynamoDb.getItem(GetItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Map.of("userId", AttributeValue.builder().s(PRIMING_KEY).build()))
+                    .build());
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+
+    /**
+     * Async variant of primeDynamoDb, also starting the Netty event loop before the snapshot
+     */
+    public static void primeDynamoDbAsync(DynamoDbAsyncClient dynamoDb, String tableName) {
+        try {
+            dynamoDb.getItem(GetItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Map.of("userId", AttributeValue.builder().s(PRIMING_KEY).build()))
+                    .build()).join();
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+
+    /**
+     * Issue a HeadObject for a key that never exists
+     */
+    public static void primeS3(S3Client s3Client, String bucketName) {
+        try {
+            s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key("priming/" + PRIMING_KEY)
+                    .build());
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+}
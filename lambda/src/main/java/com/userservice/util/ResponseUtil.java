@@ -4,20 +4,64 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ResponseUtil {
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
-    private static final Map<String, String> DEFAULT_HEADERS = new HashMap<>();
-
-    static {
-        DEFAULT_HEADERS.put("Content-Type", "application/json");
-        DEFAULT_HEADERS.put("Access-Control-Allow-Origin", "*");
-        DEFAULT_HEADERS.put("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS");
-        DEFAULT_HEADERS.put("Access-Control-Allow-Headers", "Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token");
-    }
+    // Built once and shared by every response, so it must never be mutated
+    private static final Map<String, String> DEFAULT_HEADERS = Map.of(
+            "Content-Type", "application/json",
+            "Access-Control-Allow-Origin", "*",
+            "Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS",
+            "Access-Control-Allow-Headers", "Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token,"
+                    + "If-Match,If-None-Match,Content-MD5,x-amz-checksum-sha256",
+            "Access-Control-Expose-Headers", "ETag"
+    );
+
+    private static final String INTERNAL_ERROR_BODY = "{\"error\":\"Internal server error\"}";
+
+    // Fixed error messages used by the handlers; their bodies are encoded once at class load
+    private static final List<String> STATIC_ERROR_MESSAGES = List.of(
+            "Authentication required",
+            "Authentication required to upload files",
+            "Invalid Authorization header format. Expected 'Bearer <token>'",
+            "You are not authorized to create users",
+            "You can only create your own user entry",
+            "You are not authorized to view users",
+            "You are not authorized to list users",
+            "You are not authorized to delete this user",
+            "You are not authorized to upload files",
+            "Request body is required",
+            "Cognito is temporarily unavailable, retry later",
+            "Request body must be a JSON array of users",
+            "Request body must be a JSON object with a userIds array",
+            "Request body must be a JSON object with a numeric contentLength",
+            "Request body must be a JSON object",
+            "uploadId is required",
+            "Upload session not found",
+            "parts must be in ascending partNumber order",
+            "ids cannot be combined with other query parameters",
+            "userId is required in path",
+            "userId cannot be empty",
+            "Limit must be between 1 and 100",
+            "Invalid limit parameter",
+            "Invalid pagination cursor",
+            "filename is required in path",
+            "filename cannot be empty",
+            "Invalid filename. Filename cannot contain path separators or special characters",
+            "Invalid base64 encoded content",
+            "File is empty",
+            "Invalid Content-MD5 header",
+            "Invalid x-amz-checksum-sha256 header",
+            "Checksum does not match the uploaded content",
+            "Precondition failed"
+    );
+
+    private static final Map<String, String> STATIC_ERROR_BODIES = encodeStaticErrorBodies();
 
     public static APIGatewayProxyResponseEvent success(Object data) {
         return response(200, data);
@@ -27,12 +71,43 @@ public class ResponseUtil {
         return response(201, data);
     }
 
+    /**
+     * 200 response with a body that is already serialized JSON
+     */
+    public static APIGatewayProxyResponseEvent successJson(String json) {
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(200)
+                .withHeaders(DEFAULT_HEADERS)
+                .withBody(json);
+    }
+
     public static APIGatewayProxyResponseEvent noContent() {
         return new APIGatewayProxyResponseEvent()
                 .withStatusCode(204)
                 .withHeaders(DEFAULT_HEADERS);
     }
 
+    /**
+     * 304 without a body; the current object already has the content that was sent
+     */
+    public static APIGatewayProxyResponseEvent notModified(String etag) {
+        return withETag(new APIGatewayProxyResponseEvent()
+                .withStatusCode(304)
+                .withHeaders(DEFAULT_HEADERS), etag);
+    }
+
+    /**
+     * Add an ETag header to the response
+     */
+    public static APIGatewayProxyResponseEvent withETag(APIGatewayProxyResponseEvent response, String etag) {
+        if (etag == null) {
+            return response;
+        }
+        Map<String, String> headers = new HashMap<>(response.getHeaders());
+        headers.put("ETag", etag);
+        return response.withHeaders(headers);
+    }
+
     public static APIGatewayProxyResponseEvent badRequest(String message) {
         return error(400, message);
     }
@@ -53,10 +128,24 @@ public class ResponseUtil {
         return error(409, message);
     }
 
+    public static APIGatewayProxyResponseEvent preconditionFailed(String message) {
+        return error(412, message);
+    }
+
     public static APIGatewayProxyResponseEvent internalServerError(String message) {
         return error(500, message);
     }
 
+    /**
+     * 503 with a Retry-After header telling the client when to try again
+     */
+    public static APIGatewayProxyResponseEvent serviceUnavailable(String message, long retryAfterSeconds) {
+        APIGatewayProxyResponseEvent response = error(503, message);
+        Map<String, String> headers = new HashMap<>(response.getHeaders());
+        headers.put("Retry-After", String.valueOf(retryAfterSeconds));
+        return response.withHeaders(headers);
+    }
+
     private static APIGatewayProxyResponseEvent response(int statusCode, Object data) {
         try {
             String body = objectMapper.writeValueAsString(data);
@@ -70,19 +159,40 @@ public class ResponseUtil {
     }
 
     private static APIGatewayProxyResponseEvent error(int statusCode, String message) {
-        Map<String, String> errorBody = new HashMap<>();
-        errorBody.put("error", message);
-        try {
-            String body = objectMapper.writeValueAsString(errorBody);
-            return new APIGatewayProxyResponseEvent()
-                    .withStatusCode(statusCode)
-                    .withHeaders(DEFAULT_HEADERS)
-                    .withBody(body);
-        } catch (JsonProcessingException e) {
-            return new APIGatewayProxyResponseEvent()
-                    .withStatusCode(500)
-                    .withHeaders(DEFAULT_HEADERS)
-                    .withBody("{\"error\":\"Internal server error\"}");
+        String body = STATIC_ERROR_BODIES.get(message);
+        if (body == null) {
+            try {
+                body = encodeError(message);
+            } catch (IOException e) {
+                return new APIGatewayProxyResponseEvent()
+                        .withStatusCode(500)
+                        .withHeaders(DEFAULT_HEADERS)
+                        .withBody(INTERNAL_ERROR_BODY);
+            }
+        }
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(statusCode)
+                .withHeaders(DEFAULT_HEADERS)
+                .withBody(body);
+    }
+
+    private static String encodeError(String message) throws IOException {
+        return JsonOutput.write(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("error", message);
+            generator.writeEndObject();
+        });
+    }
+
+    private static Map<String, String> encodeStaticErrorBodies() {
+        Map<String, String> bodies = new HashMap<>();
+        for (String message : STATIC_ERROR_MESSAGES) {
+            try {
+                bodies.put(message, encodeError(message));
+            } catch (IOException e) {
+                // Falls back to streaming encoding on each call
+            }
         }
+        return Map.copyOf(bodies);
     }
 }
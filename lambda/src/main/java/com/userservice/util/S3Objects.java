@@ -0,0 +1,34 @@
+package com.userservice.util;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Lookups of existing objects in the files bucket
+ */
+public final class S3Objects {
+
+    private S3Objects() {
+    }
+
+    /**
+     * HeadObject including the stored checksums, or null if there is no such object
+     */
+    public static HeadObjectResponse head(S3Client s3Client, String bucketName, String key) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+}
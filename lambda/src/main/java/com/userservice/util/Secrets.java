@@ -0,0 +1,39 @@
+package com.userservice.util;
+
+import com.userservice.ClientRegistry;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+
+/**
+ * Secret values read from Secrets Manager during initialization.
+ *
+ * The environment only carries the secret ARN, so the value never appears in the function
+ * configuration or the CloudFormation template. Handlers read their secrets in the
+ * constructor, which runs before the SnapStart checkpoint, so restored environments do not
+ * call Secrets Manager again.
+ */
+public final class Secrets {
+
+    private Secrets() {
+    }
+
+    /**
+     * Value of the secret whose ARN is in the given environment variable, or null if the
+     * variable is not set
+     * @throws software.amazon.awssdk.core.exception.SdkException if the secret cannot be read;
+     * a configured secret that cannot be read fails initialization
+     * @throws IllegalStateException if the secret has no string value
+     */
+    public static String fromEnvironment(String arnVariable) {
+        String secretId = System.getenv(arnVariable);
+        if (secretId == null || secretId.isEmpty()) {
+            return null;
+        }
+        String value = ClientRegistry.secretsManager().getSecretValue(GetSecretValueRequest.builder()
+                .secretId(secretId)
+                .build()).secretString();
+        if (value == null || value.isEmpty()) {
+            throw new IllegalStateException("Secret " + secretId + " from " + arnVariable + " has no string value");
+        }
+        return value;
+    }
+}
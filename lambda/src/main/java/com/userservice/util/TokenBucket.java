@@ -0,0 +1,69 @@
+package com.userservice.util;
+
+/**
+ * Blocking token-bucket rate limiter.
+ *
+ * Tokens refill continuously at permitsPerSecond up to capacity, so short bursts up to
+ * capacity pass immediately and sustained throughput settles at the refill rate.
+ * Thread-safe; acquire sleeps the calling thread until a token is available.
+ */
+public class TokenBucket {
+    private final double permitsPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Bucket refilling at the per-second rate in the given environment variable, with a
+     * burst of one second's worth of tokens
+     */
+    public static TokenBucket fromEnvironment(String variable, int defaultPermitsPerSecond) {
+        int rate = defaultPermitsPerSecond;
+        String configured = System.getenv(variable);
+        if (configured != null && !configured.isEmpty()) {
+            try {
+                rate = Math.max(1, Integer.parseInt(configured));
+            } catch (NumberFormatException e) {
+                // Keep the default
+            }
+        }
+        return new TokenBucket(rate, rate);
+    }
+
+    /**
+     * Take one token, waiting for the refill if the bucket is empty
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    /**
+     * Take one token if available
+     * @return 0 if a token was taken, otherwise the nanoseconds until one will be
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / permitsPerNano);
+    }
+}
@@ -0,0 +1,111 @@
+package com.userservice.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip storage encoding for compressible uploads.
+ *
+ * Configured by UPLOAD_COMPRESSION (gzip, anything else disables it), UPLOAD_COMPRESSION_LEVEL
+ * (1-9, default 6) and UPLOAD_COMPRESSION_MIN_BYTES (default 1024; smaller bodies are stored
+ * as they are). Text, JSON, CSV, XML and similar types are compressed; the object is stored
+ * with Content-Encoding: gzip, so HTTP clients reading it decode it transparently. The output
+ * carries no timestamp, so the same input and level always give the same bytes and ETag.
+ */
+public final class UploadCompression {
+    public static final String ENCODING = "gzip";
+
+    /**
+     * Object metadata key holding the uncompressed size of a compressed object
+     */
+    public static final String ORIGINAL_SIZE = "original-size";
+
+    public static final int DEFAULT_LEVEL = 6;
+    public static final long DEFAULT_MIN_BYTES = 1024;
+
+    private static final Set<String> COMPRESSIBLE_TYPES = Set.of(
+            "application/json",
+            "application/x-ndjson",
+            "application/xml",
+            "application/javascript",
+            "application/x-yaml",
+            "application/yaml",
+            "application/sql",
+            "image/svg+xml"
+    );
+
+    private final boolean enabled;
+    private final int level;
+    private final long minBytes;
+
+    public UploadCompression(boolean enabled, int level, long minBytes) {
+        this.enabled = enabled;
+        this.level = level;
+        this.minBytes = minBytes;
+    }
+
+    public static UploadCompression fromEnvironment() {
+        boolean enabled = ENCODING.equalsIgnoreCase(System.getenv("UPLOAD_COMPRESSION"));
+        int level = (int) longFromEnvironment("UPLOAD_COMPRESSION_LEVEL", DEFAULT_LEVEL);
+        long minBytes = longFromEnvironment("UPLOAD_COMPRESSION_MIN_BYTES", DEFAULT_MIN_BYTES);
+        return new UploadCompression(enabled,
+                level >= 1 && level <= 9 ? level : DEFAULT_LEVEL,
+                minBytes >= 0 ? minBytes : DEFAULT_MIN_BYTES);
+    }
+
+    /**
+     * Whether a body of this type and size should be compressed
+     */
+    public boolean appliesTo(String contentType, long contentLength) {
+        return enabled && contentLength >= minBytes && isCompressible(contentType);
+    }
+
+    /**
+     * Gzip the whole stream into memory; the compressed size has to be known before the PUT
+     */
+    public byte[] compress(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (InputStream source = in; OutputStream gzip = new LeveledGzipOutputStream(buffer, level)) {
+            source.transferTo(gzip);
+        }
+        return buffer.toByteArray();
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return type.startsWith("text/")
+                || type.endsWith("+json")
+                || type.endsWith("+xml")
+                || COMPRESSIBLE_TYPES.contains(type);
+    }
+
+    private static long longFromEnvironment(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * GZIPOutputStream with a compression level; the JDK class only offers the default
+     */
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+        private LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 64 * 1024);
+            def.setLevel(level);
+        }
+    }
+}
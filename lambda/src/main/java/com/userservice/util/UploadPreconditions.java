@@ -0,0 +1,158 @@
+package com.userservice.util;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conditional and checksum headers of a file upload, evaluated against the object the
+ * upload would replace.
+ *
+ * If-Match and If-None-Match follow RFC 9110: a failed precondition means 412 and nothing
+ * is written. Content-MD5 and x-amz-checksum-sha256 describe the body being sent; when the
+ * current object already has that content the upload is reported as not modified (304).
+ * MD5 is compared with the ETag, which S3 sets to the MD5 of single-PUT objects without
+ * KMS encryption; multipart ETags never match. SHA-256 is compared with the checksum S3
+ * stored with the object, so it only matches objects that were written with one.
+ */
+public final class UploadPreconditions {
+
+    public enum Outcome {
+        PROCEED,
+        NOT_MODIFIED,
+        PRECONDITION_FAILED
+    }
+
+    private static final UploadPreconditions NONE = new UploadPreconditions(null, null, null, null);
+
+    private final List<String> ifMatch;
+    private final List<String> ifNoneMatch;
+    private final String contentMd5;
+    private final String checksumSha256;
+
+    private UploadPreconditions(List<String> ifMatch, List<String> ifNoneMatch,
+                                String contentMd5, String checksumSha256) {
+        this.ifMatch = ifMatch;
+        this.ifNoneMatch = ifNoneMatch;
+        this.contentMd5 = contentMd5;
+        this.checksumSha256 = checksumSha256;
+    }
+
+    /**
+     * Read the headers case-insensitively; absent headers impose no condition
+     * @throws IllegalArgumentException if a checksum header is not a base64 digest of the right size
+     */
+    public static UploadPreconditions fromHeaders(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return NONE;
+        }
+
+        String contentMd5 = header(headers, "Content-MD5");
+        if (contentMd5 != null && !isDigest(contentMd5, 16)) {
+            throw new IllegalArgumentException("Invalid Content-MD5 header");
+        }
+        String checksumSha256 = header(headers, "x-amz-checksum-sha256");
+        if (checksumSha256 != null && !isDigest(checksumSha256, 32)) {
+            throw new IllegalArgumentException("Invalid x-amz-checksum-sha256 header");
+        }
+
+        return new UploadPreconditions(
+                entityTags(header(headers, "If-Match")),
+                entityTags(header(headers, "If-None-Match")),
+                contentMd5,
+                checksumSha256);
+    }
+
+    /**
+     * Whether evaluate needs the current object, i.e. any of the headers was sent
+     */
+    public boolean requiresCurrentObject() {
+        return ifMatch != null || ifNoneMatch != null || contentMd5 != null || checksumSha256 != null;
+    }
+
+    /**
+     * Base64 MD5 of the body as sent by the client, or null
+     */
+    public String getContentMd5() {
+        return contentMd5;
+    }
+
+    /**
+     * Base64 SHA-256 of the body as sent by the client, or null
+     */
+    public String getChecksumSha256() {
+        return checksumSha256;
+    }
+
+    /**
+     * Evaluate against the current object; a null eTag means there is none
+     */
+    public Outcome evaluate(String currentETag, String currentChecksumSha256) {
+        String current = currentETag == null ? null : unquote(currentETag);
+
+        if (ifMatch != null && (current == null || !(ifMatch.contains("*") || ifMatch.contains(current)))) {
+            return Outcome.PRECONDITION_FAILED;
+        }
+        if (ifNoneMatch != null && current != null && (ifNoneMatch.contains("*") || ifNoneMatch.contains(current))) {
+            return Outcome.PRECONDITION_FAILED;
+        }
+        if (current == null) {
+            return Outcome.PROCEED;
+        }
+
+        if (checksumSha256 != null && checksumSha256.equals(currentChecksumSha256)) {
+            return Outcome.NOT_MODIFIED;
+        }
+        if (contentMd5 != null && !current.contains("-")
+                && current.equalsIgnoreCase(HexFormat.of().formatHex(Base64.getDecoder().decode(contentMd5)))) {
+            return Outcome.NOT_MODIFIED;
+        }
+        return Outcome.PROCEED;
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                String value = header.getValue();
+                return value == null || value.trim().isEmpty() ? null : value.trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Comma-separated entity tags without quotes; weak tags compare by their opaque value
+     */
+    private static List<String> entityTags(String value) {
+        if (value == null) {
+            return null;
+        }
+        List<String> tags = new ArrayList<>();
+        for (String tag : value.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (!tag.isEmpty()) {
+                tags.add(unquote(tag));
+            }
+        }
+        return tags;
+    }
+
+    private static String unquote(String tag) {
+        return tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")
+                ? tag.substring(1, tag.length() - 1)
+                : tag;
+    }
+
+    private static boolean isDigest(String value, int length) {
+        try {
+            return Base64.getDecoder().decode(value).length == length;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
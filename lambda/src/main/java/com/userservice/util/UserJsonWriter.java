@@ -0,0 +1,104 @@
+package com.userservice.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes user JSON straight from DynamoDB items with a JsonGenerator.
+ * Produces the same shape as serializing the User model, without creating User objects
+ * or an intermediate response Map.
+ */
+public final class UserJsonWriter {
+
+    private UserJsonWriter() {
+    }
+
+    /**
+     * List response: {"users":[...],"count":n,"lastEvaluatedKey":"..."}
+     * lastEvaluatedKey is omitted when null
+     */
+    public static String writeUserList(List<Map<String, AttributeValue>> items, String lastEvaluatedKey)
+            throws IOException {
+        return JsonOutput.write(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("users");
+            for (Map<String, AttributeValue> item : items) {
+                writeUser(generator, item);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("count", items.size());
+            if (lastEvaluatedKey != null) {
+                generator.writeStringField("lastEvaluatedKey", lastEvaluatedKey);
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * Multi-get response: {"users":[...],"count":n,"missing":[...]}
+     * unprocessed lists ids that could not be read and is omitted when empty
+     */
+    public static String writeUserBatch(List<Map<String, AttributeValue>> items, List<String> missing,
+                                        List<String> unprocessed) throws IOException {
+        return JsonOutput.write(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("users");
+            for (Map<String, AttributeValue> item : items) {
+                writeUser(generator, item);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("count", items.size());
+            writeStrings(generator, "missing", missing);
+            if (!unprocessed.isEmpty()) {
+                writeStrings(generator, "unprocessed", unprocessed);
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * Single user object from a Users table item
+     */
+    public static void writeUser(JsonGenerator generator, Map<String, AttributeValue> item) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "userId", item.get("userId"));
+        writeString(generator, "username", item.get("username"));
+        writeString(generator, "role", item.get("role"));
+        writeNumber(generator, "createdAt", item.get("createdAt"));
+        writeNumber(generator, "updatedAt", item.get("updatedAt"));
+        generator.writeEndObject();
+    }
+
+    private static void writeStrings(JsonGenerator generator, String field, List<String> values) throws IOException {
+        generator.writeArrayFieldStart(field);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeString(JsonGenerator generator, String field, AttributeValue value) throws IOException {
+        generator.writeFieldName(field);
+        if (value == null || value.s() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value.s());
+        }
+    }
+
+    /**
+     * DynamoDB numbers are already decimal text, so they are copied through without parsing
+     */
+    private static void writeNumber(JsonGenerator generator, String field, AttributeValue value) throws IOException {
+        generator.writeFieldName(field);
+        if (value == null || value.n() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.n());
+        }
+    }
+}
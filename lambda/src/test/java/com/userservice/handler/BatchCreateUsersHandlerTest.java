@@ -0,0 +1,273 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.service.CognitoService;
+import com.userservice.testing.TestContext;
+import com.userservice.util.InvocationMetrics;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminCreateUserRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminCreateUserResponse;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminDeleteUserRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminDeleteUserResponse;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminSetUserPasswordRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.AdminSetUserPasswordResponse;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.InvalidPasswordException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.UserNotFoundException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.UsernameExistsException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Batch create against in-memory Users and Usernames tables and an in-memory user pool:
+ * names are claimed conditionally before Cognito is called, and claims of entries that
+ * fail later are released
+ */
+class BatchCreateUsersHandlerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Map<String, Map<String, AttributeValue>> users = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, AttributeValue>> reservations = new ConcurrentHashMap<>();
+    private final Set<String> cognitoUsers = ConcurrentHashMap.newKeySet();
+    private final Set<String> cognitoCreateCalls = ConcurrentHashMap.newKeySet();
+    private DynamoDbException writeFailure;
+
+    @Test
+    void reservedNamesNeverReachCognito() throws Exception {
+        // Held by a deleted user whose cleanup has not run yet
+        reservations.put("taken", reservation("taken", "tombstoned-user"));
+
+        JsonNode response = batchCreate("alice", "taken", "bob");
+
+        assertEquals(List.of("created", "conflict", "created"), statuses(response));
+        assertEquals(Set.of("alice", "bob"), cognitoCreateCalls);
+        assertEquals("tombstoned-user", reservations.get("taken").get("userId").s());
+
+        assertEquals(2, users.size());
+        for (JsonNode result : response.get("results")) {
+            if ("created".equals(result.get("status").asText())) {
+                String userId = result.get("userId").asText();
+                assertTrue(users.containsKey(userId));
+                assertEquals(userId, reservations.get(result.get("username").asText()).get("userId").s());
+            }
+        }
+    }
+
+    @Test
+    void cognitoFailureReleasesClaim() throws Exception {
+        JsonNode response = batchCreate("alice", "weak");
+
+        assertEquals(List.of("created", "failed"), statuses(response));
+        assertFalse(reservations.containsKey("weak"));
+        assertFalse(cognitoUsers.contains("weak"));
+        assertEquals(1, users.size());
+    }
+
+    @Test
+    void cognitoConflictReleasesClaimButKeepsCognitoUser() throws Exception {
+        // Exists in Cognito without a reservation
+        cognitoUsers.add("legacy");
+
+        JsonNode response = batchCreate("legacy", "alice");
+
+        assertEquals(List.of("conflict", "created"), statuses(response));
+        assertFalse(reservations.containsKey("legacy"));
+        assertTrue(cognitoUsers.contains("legacy"));
+        assertTrue(cognitoUsers.contains("alice"));
+    }
+
+    @Test
+    void nonRetryableWriteErrorUndoesEveryEntry() throws Exception {
+        writeFailure = (DynamoDbException) DynamoDbException.builder()
+                .statusCode(400).message("Item size has exceeded the maximum allowed size").build();
+
+        APIGatewayProxyResponseEvent response = invoke("alice", "bob");
+
+        assertEquals(500, response.getStatusCode());
+        assertTrue(cognitoUsers.isEmpty());
+        assertTrue(reservations.isEmpty());
+        assertTrue(users.isEmpty());
+    }
+
+    private JsonNode batchCreate(String... usernames) throws Exception {
+        APIGatewayProxyResponseEvent response = invoke(usernames);
+        assertEquals(200, response.getStatusCode(), response.getBody());
+        return OBJECT_MAPPER.readTree(response.getBody());
+    }
+
+    private APIGatewayProxyResponseEvent invoke(String... usernames) {
+        StringBuilder body = new StringBuilder("[");
+        for (String username : usernames) {
+            if (body.length() > 1) {
+                body.append(',');
+            }
+            body.append("{\"username\":\"").append(username)
+                    .append("\",\"role\":\"user\",\"password\":\"Password123!\"}");
+        }
+        body.append(']');
+
+        InvocationMetrics metrics = new InvocationMetrics(new PrintStream(OutputStream.nullOutputStream()));
+        BatchCreateUsersHandler handler = new BatchCreateUsersHandler(
+                new FakeDynamoDb(), new FakeDynamoDbAsync(), "Users", "Usernames",
+                new CognitoService(new FakeCognito(), new FakeCognitoAsync(), metrics), metrics);
+
+        return handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withHeaders(Map.of("Authorization", TestContext.bearerToken("admin", "globaladmin")))
+                .withBody(body.toString()), new TestContext());
+    }
+
+    private static List<String> statuses(JsonNode response) {
+        List<String> statuses = new ArrayList<>();
+        for (JsonNode result : response.get("results")) {
+            statuses.add(result.get("status").asText());
+        }
+        return statuses;
+    }
+
+    private static Map<String, AttributeValue> reservation(String username, String userId) {
+        return Map.of(
+                "username", AttributeValue.builder().s(username).build(),
+                "userId", AttributeValue.builder().s(userId).build());
+    }
+
+    private final class FakeDynamoDbAsync implements DynamoDbAsyncClient {
+        @Override
+        public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+            assertEquals("Usernames", request.tableName());
+            assertEquals("attribute_not_exists(username)", request.conditionExpression());
+            String username = request.item().get("username").s();
+            if (reservations.putIfAbsent(username, request.item()) != null) {
+                return CompletableFuture.failedFuture(ConditionalCheckFailedException.builder()
+                        .message("The conditional request failed").build());
+            }
+            return CompletableFuture.completedFuture(PutItemResponse.builder().build());
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final class FakeDynamoDb implements DynamoDbClient {
+        @Override
+        public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+            if (writeFailure != null) {
+                throw writeFailure;
+            }
+            for (Map.Entry<String, List<WriteRequest>> table : request.requestItems().entrySet()) {
+                assertEquals("Users", table.getKey());
+                for (WriteRequest write : table.getValue()) {
+                    Map<String, AttributeValue> item = write.putRequest().item();
+                    users.put(item.get("userId").s(), item);
+                }
+            }
+            return BatchWriteItemResponse.builder().build();
+        }
+
+        @Override
+        public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+            if ("Users".equals(request.tableName())) {
+                users.remove(request.key().get("userId").s());
+                return DeleteItemResponse.builder().build();
+            }
+            assertEquals("Usernames", request.tableName());
+            String username = request.key().get("username").s();
+            AttributeValue owner = request.expressionAttributeValues().get(":userId");
+            Map<String, AttributeValue> current = reservations.get(username);
+            if (current == null || !owner.equals(current.get("userId")) || !reservations.remove(username, current)) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+            return DeleteItemResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final class FakeCognitoAsync implements CognitoIdentityProviderAsyncClient {
+        @Override
+        public CompletableFuture<AdminCreateUserResponse> adminCreateUser(AdminCreateUserRequest request) {
+            cognitoCreateCalls.add(request.username());
+            if ("weak".equals(request.username())) {
+                return CompletableFuture.failedFuture(InvalidPasswordException.builder()
+                        .message("Password did not conform with policy").build());
+            }
+            if (!cognitoUsers.add(request.username())) {
+                return CompletableFuture.failedFuture(UsernameExistsException.builder()
+                        .message("User account already exists").build());
+            }
+            return CompletableFuture.completedFuture(AdminCreateUserResponse.builder().build());
+        }
+
+        @Override
+        public CompletableFuture<AdminSetUserPasswordResponse> adminSetUserPassword(AdminSetUserPasswordRequest request) {
+            return CompletableFuture.completedFuture(AdminSetUserPasswordResponse.builder().build());
+        }
+
+        @Override
+        public String serviceName() {
+            return "cognito-idp";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final class FakeCognito implements CognitoIdentityProviderClient {
+        @Override
+        public AdminDeleteUserResponse adminDeleteUser(AdminDeleteUserRequest request) {
+            if (!cognitoUsers.remove(request.username())) {
+                throw UserNotFoundException.builder().message("User does not exist").build();
+            }
+            return AdminDeleteUserResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "cognito-idp";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.model.UserTableSchema;
+import com.userservice.service.LocalUserCache;
+import com.userservice.testing.TestContext;
+import com.userservice.util.InvocationMetrics;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Batch delete against an in-memory Users table: targets are tombstoned in place with a
+ * conditional update, and a target that changed after the read is left alone
+ */
+class BatchDeleteUsersHandlerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Map<String, Map<String, AttributeValue>> users = new ConcurrentHashMap<>();
+    private Runnable beforeUpdate = () -> { };
+
+    @Test
+    void tombstonesPermittedTargetsInPlace() throws Exception {
+        users.put("u1", user("u1", "alice"));
+        users.put("u2", user("u2", "bob"));
+
+        JsonNode response = batchDelete("globaladmin", "u1", "u2", "missing");
+
+        assertEquals(List.of("deleted", "deleted", "not_found"), statuses(response));
+        Map<String, AttributeValue> tombstone = users.get("u1");
+        assertTrue(tombstone.containsKey(UserTableSchema.DELETED_AT));
+        assertEquals(UserTableSchema.CLEANUP_PENDING, tombstone.get(UserTableSchema.CLEANUP_PARTITION).s());
+        assertFalse(tombstone.containsKey(UserTableSchema.LIST_PARTITION));
+        assertFalse(tombstone.containsKey("role"));
+        // Attributes the handler never read are kept
+        assertEquals("alice@example.com", tombstone.get("email").s());
+    }
+
+    @Test
+    void targetChangedAfterReadIsNotOverwritten() throws Exception {
+        users.put("u1", user("u1", "alice"));
+        users.put("u2", user("u2", "bob"));
+        Map<String, AttributeValue> deletedMeanwhile = new HashMap<>(user("u2", "bob"));
+        deletedMeanwhile.remove(UserTableSchema.LIST_PARTITION);
+        deletedMeanwhile.put(UserTableSchema.DELETED_AT, AttributeValue.builder().n("1700000005000").build());
+        deletedMeanwhile.put(UserTableSchema.CLEANUP_ATTEMPTS, AttributeValue.builder().n("3").build());
+        beforeUpdate = () -> users.put("u2", deletedMeanwhile);
+
+        JsonNode response = batchDelete("globaladmin", "u1", "u2");
+
+        assertEquals(List.of("deleted", "not_found"), statuses(response));
+        assertEquals(1, response.get("deleted").asInt());
+        assertEquals(deletedMeanwhile, users.get("u2"));
+    }
+
+    @Test
+    void superuserDeletesOnlyThemselves() throws Exception {
+        users.put("u1", user("u1", "alice"));
+        users.put("u2", user("u2", "bob"));
+
+        JsonNode response = batchDeleteAs("alice", "superuser", "u1", "u2");
+
+        assertEquals(List.of("deleted", "forbidden"), statuses(response));
+        assertFalse(users.get("u2").containsKey(UserTableSchema.DELETED_AT));
+    }
+
+    private JsonNode batchDelete(String role, String... userIds) throws Exception {
+        return batchDeleteAs("admin", role, userIds);
+    }
+
+    private JsonNode batchDeleteAs(String caller, String role, String... userIds) throws Exception {
+        InvocationMetrics metrics = new InvocationMetrics(new PrintStream(OutputStream.nullOutputStream()));
+        BatchDeleteUsersHandler handler = new BatchDeleteUsersHandler(new FakeDynamoDb(), new FakeDynamoDbAsync(),
+                "Users", new LocalUserCache(100, 30, 5), metrics);
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withHeaders(Map.of("Authorization", TestContext.bearerToken(caller, role)))
+                .withBody(OBJECT_MAPPER.writeValueAsString(Map.of("userIds", List.of(userIds)))), new TestContext());
+        assertEquals(200, response.getStatusCode(), response.getBody());
+        return OBJECT_MAPPER.readTree(response.getBody());
+    }
+
+    private static List<String> statuses(JsonNode response) {
+        List<String> statuses = new ArrayList<>();
+        for (JsonNode result : response.get("results")) {
+            statuses.add(result.get("status").asText());
+        }
+        return statuses;
+    }
+
+    private static Map<String, AttributeValue> user(String userId, String username) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("userId", AttributeValue.builder().s(userId).build());
+        item.put("username", AttributeValue.builder().s(username).build());
+        item.put("email", AttributeValue.builder().s(username + "@example.com").build());
+        item.put("role", AttributeValue.builder().s("user").build());
+        item.put(UserTableSchema.LIST_PARTITION, AttributeValue.builder().s("USERS").build());
+        return item;
+    }
+
+    private final class FakeDynamoDb implements DynamoDbClient {
+        @Override
+        public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+            KeysAndAttributes keys = request.requestItems().get("Users");
+            List<Map<String, AttributeValue>> found = new ArrayList<>();
+            for (Map<String, AttributeValue> key : keys.keys()) {
+                Map<String, AttributeValue> item = users.get(key.get("userId").s());
+                if (item != null) {
+                    found.add(new HashMap<>(item));
+                }
+            }
+            return BatchGetItemResponse.builder().responses(Map.of("Users", found)).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Applies TOMBSTONE_UPDATE under the handler's condition
+     */
+    private final class FakeDynamoDbAsync implements DynamoDbAsyncClient {
+        @Override
+        public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+            beforeUpdate.run();
+            assertEquals("attribute_exists(userId) AND attribute_not_exists(" + UserTableSchema.DELETED_AT
+                    + ") AND username = :username", request.conditionExpression());
+
+            Map<String, AttributeValue> values = request.expressionAttributeValues();
+            Map<String, AttributeValue> item = users.get(request.key().get("userId").s());
+            if (item == null || item.containsKey(UserTableSchema.DELETED_AT)
+                    || !values.get(":username").equals(item.get("username"))) {
+                return CompletableFuture.failedFuture(ConditionalCheckFailedException.builder()
+                        .message("The conditional request failed").build());
+            }
+
+            Map<String, AttributeValue> tombstone = new HashMap<>(item);
+            tombstone.remove(UserTableSchema.LIST_PARTITION);
+            tombstone.remove("role");
+            tombstone.put(UserTableSchema.DELETED_AT, values.get(":deletedAt"));
+            tombstone.put(UserTableSchema.CLEANUP_PARTITION, values.get(":cleanupPending"));
+            tombstone.put(UserTableSchema.CLEANUP_ATTEMPTS, values.get(":zero"));
+            users.put(item.get("userId").s(), tombstone);
+            return CompletableFuture.completedFuture(UpdateItemResponse.builder().build());
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.userservice.service.LocalUserCache;
+import com.userservice.testing.TestContext;
+import com.userservice.util.InvocationMetrics;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the CRaC hooks directly: priming before the checkpoint, then credentials refresh,
+ * cold-start marking, cache reset and re-priming after restore, in that order
+ */
+class GetUserHandlerCheckpointTest {
+
+    @Test
+    void restoreResetsStateBeforeServingRequests() {
+        RecordingDynamoDb dynamoDb = new RecordingDynamoDb();
+        ByteArrayOutputStream emf = new ByteArrayOutputStream();
+        GetUserHandler handler = new GetUserHandler(dynamoDb, "Users",
+                new LocalUserCache(100, 300, 5), new InvocationMetrics(new PrintStream(emf)));
+
+        handler.beforeCheckpoint(null);
+        assertEquals(List.of("__priming__"), dynamoDb.requestedIds);
+
+        // Served from DynamoDB, then cached
+        assertEquals(200, getUser(handler, "u1").getStatusCode());
+        assertEquals(200, getUser(handler, "u1").getStatusCode());
+        assertEquals(List.of("__priming__", "u1"), dynamoDb.requestedIds);
+
+        emf.reset();
+        handler.afterRestore(null);
+        // Re-primed after restore; the cache entry from before the snapshot is gone
+        assertEquals(List.of("__priming__", "u1", "__priming__"), dynamoDb.requestedIds);
+
+        assertEquals(200, getUser(handler, "u1").getStatusCode());
+        assertEquals(List.of("__priming__", "u1", "__priming__", "u1"), dynamoDb.requestedIds);
+        assertTrue(emf.toString(StandardCharsets.UTF_8).contains("\"ColdStart\":1"),
+                "first invocation after restore is reported as a cold start");
+
+        emf.reset();
+        assertEquals(200, getUser(handler, "u1").getStatusCode());
+        assertTrue(emf.toString(StandardCharsets.UTF_8).contains("\"ColdStart\":0"));
+        assertEquals(4, dynamoDb.requestedIds.size());
+    }
+
+    private static APIGatewayProxyResponseEvent getUser(GetUserHandler handler, String userId) {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent()
+                .withHeaders(Map.of("Authorization", TestContext.bearerToken("alice", "user")))
+                .withPathParameters(Map.of("userId", userId));
+        return handler.handleRequest(event, new TestContext());
+    }
+
+    private static final class RecordingDynamoDb implements DynamoDbClient {
+        private final List<String> requestedIds = new ArrayList<>();
+
+        @Override
+        public GetItemResponse getItem(GetItemRequest request) {
+            String userId = request.key().get("userId").s();
+            requestedIds.add(userId);
+            if (userId.startsWith("__")) {
+                return GetItemResponse.builder().build();
+            }
+            return GetItemResponse.builder().item(Map.of(
+                    "userId", AttributeValue.builder().s(userId).build(),
+                    "username", AttributeValue.builder().s("alice").build(),
+                    "role", AttributeValue.builder().s("user").build(),
+                    "createdAt", AttributeValue.builder().n("1700000000000").build(),
+                    "updatedAt", AttributeValue.builder().n("1700000000000").build()
+            )).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
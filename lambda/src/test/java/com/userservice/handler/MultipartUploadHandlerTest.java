@@ -0,0 +1,197 @@
+package com.userservice.handler;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.testing.TestContext;
+import com.userservice.util.InvocationMetrics;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.Part;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Part URLs for SHA256 sessions are only signed with a checksum; the session's algorithm
+ * is looked up only when a part comes without one. Completions S3 would refuse are 400s
+ */
+class MultipartUploadHandlerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String CHECKSUM = "n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg=";
+
+    private final Map<String, ChecksumAlgorithm> sessions = new HashMap<>();
+    private final Map<String, List<Part>> uploadedParts = new HashMap<>();
+    private S3Exception completeError;
+    private int listPartsCalls;
+    private int completeCalls;
+
+    @Test
+    void sha256SessionRejectsPartWithoutChecksum() throws Exception {
+        sessions.put("sha-session", ChecksumAlgorithm.SHA256);
+
+        APIGatewayProxyResponseEvent response = presignParts("sha-session",
+                "[{\"partNumber\":1,\"checksumSha256\":\"" + CHECKSUM + "\"},{\"partNumber\":2}]");
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("parts[1].checksumSha256 is required"), response.getBody());
+        assertEquals(1, listPartsCalls);
+    }
+
+    @Test
+    void partsWithChecksumsAreSignedWithoutLookup() throws Exception {
+        sessions.put("sha-session", ChecksumAlgorithm.SHA256);
+
+        APIGatewayProxyResponseEvent response = presignParts("sha-session",
+                "[{\"partNumber\":1,\"checksumSha256\":\"" + CHECKSUM + "\"}]");
+
+        assertEquals(200, response.getStatusCode(), response.getBody());
+        assertEquals(0, listPartsCalls);
+        JsonNode part = OBJECT_MAPPER.readTree(response.getBody()).get("parts").get(0);
+        assertEquals(CHECKSUM, part.get("headers").get("x-amz-checksum-sha256").asText());
+        assertTrue(part.get("url").asText().contains("x-amz-checksum-sha256"));
+    }
+
+    @Test
+    void plainSessionSignsPartsWithoutChecksum() throws Exception {
+        sessions.put("plain-session", null);
+
+        APIGatewayProxyResponseEvent response = presignParts("plain-session",
+                "[{\"partNumber\":1},{\"partNumber\":2}]");
+
+        assertEquals(200, response.getStatusCode(), response.getBody());
+        assertEquals(1, listPartsCalls);
+        assertEquals(2, OBJECT_MAPPER.readTree(response.getBody()).get("parts").size());
+    }
+
+    @Test
+    void unknownSessionIsNotFound() throws Exception {
+        assertEquals(404, presignParts("missing", "[{\"partNumber\":1}]").getStatusCode());
+    }
+
+    @Test
+    void smallPartBeforeTheLastIsRejectedBeforeCompleting() throws Exception {
+        sessions.put("plain-session", null);
+        uploadedParts.put("plain-session", List.of(
+                part(1, "etag-1", MultipartUploadHandler.MIN_PART_SIZE),
+                part(2, "etag-2", 1024),
+                part(3, "etag-3", 512)));
+
+        APIGatewayProxyResponseEvent response = complete("plain-session", "[{\"partNumber\":1,\"etag\":\"etag-1\"},"
+                + "{\"partNumber\":2,\"etag\":\"etag-2\"},{\"partNumber\":3,\"etag\":\"etag-3\"}]");
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("Part 2 is smaller than the 5 MB minimum"), response.getBody());
+        assertEquals(0, completeCalls);
+
+        // The last part completed may be small
+        APIGatewayProxyResponseEvent last = complete("plain-session", "[{\"partNumber\":1,\"etag\":\"etag-1\"},"
+                + "{\"partNumber\":3,\"etag\":\"etag-3\"}]");
+        assertEquals(201, last.getStatusCode(), last.getBody());
+        assertEquals(1, completeCalls);
+    }
+
+    @Test
+    void clientErrorsFromCompletionAreBadRequests() throws Exception {
+        sessions.put("plain-session", null);
+        uploadedParts.put("plain-session", List.of(part(1, "etag-1", 1024)));
+        completeError = (S3Exception) S3Exception.builder()
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .errorCode("InvalidPart")
+                        .errorMessage("One or more of the specified parts could not be found.")
+                        .build())
+                .build();
+
+        APIGatewayProxyResponseEvent response = complete("plain-session", "[{\"partNumber\":1,\"etag\":\"etag-1\"}]");
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("One or more of the specified parts could not be found."),
+                response.getBody());
+        assertEquals(1, completeCalls);
+    }
+
+    private APIGatewayProxyResponseEvent presignParts(String uploadId, String parts) {
+        return multipart("/files/{filename}/multipart/parts", uploadId, parts);
+    }
+
+    private APIGatewayProxyResponseEvent complete(String uploadId, String parts) {
+        return multipart("/files/{filename}/multipart/complete", uploadId, parts);
+    }
+
+    private APIGatewayProxyResponseEvent multipart(String resource, String uploadId, String parts) {
+        S3Presigner presigner = S3Presigner.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")))
+                .build();
+        MultipartUploadHandler handler = new MultipartUploadHandler(new FakeS3(), presigner, "user-files",
+                Duration.ofMinutes(15), new InvocationMetrics(new PrintStream(OutputStream.nullOutputStream())));
+
+        return handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withResource(resource)
+                .withHeaders(Map.of("Authorization", TestContext.bearerToken("alice", "user")))
+                .withPathParameters(Map.of("filename", "video.mp4"))
+                .withBody("{\"uploadId\":\"" + uploadId + "\",\"parts\":" + parts + "}"), new TestContext());
+    }
+
+    private static Part part(int partNumber, String eTag, long size) {
+        return Part.builder().partNumber(partNumber).eTag("\"" + eTag + "\"").size(size).build();
+    }
+
+    private final class FakeS3 implements S3Client {
+        @Override
+        public ListPartsResponse listParts(ListPartsRequest request) {
+            listPartsCalls++;
+            assertEquals("uploads/alice/video.mp4", request.key());
+            if (!sessions.containsKey(request.uploadId())) {
+                throw NoSuchUploadException.builder().statusCode(404).message("The specified upload does not exist").build();
+            }
+            return ListPartsResponse.builder()
+                    .uploadId(request.uploadId())
+                    .checksumAlgorithm(sessions.get(request.uploadId()))
+                    .parts(uploadedParts.getOrDefault(request.uploadId(), List.of()))
+                    .isTruncated(false)
+                    .build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completeCalls++;
+            if (completeError != null) {
+                throw completeError;
+            }
+            return CompleteMultipartUploadResponse.builder().eTag("\"complete-etag-2\"").build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.userservice.handler;
+
+import com.userservice.testing.TestContext;
+import com.userservice.util.InvocationMetrics;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the backfill against an in-memory Users table, including resuming from the key a
+ * time-limited invocation hands back
+ */
+class UserIndexBackfillHandlerTest {
+
+    @Test
+    void backfillsLegacyUsersOnly() {
+        FakeUsersTable table = new FakeUsersTable(2);
+        table.put(user("u1", "GlobalAdmin", null, false));
+        table.put(user("u2", "user", "USERS", false));
+        table.put(user("u3", "USER", null, true));
+        table.put(user("u4", null, null, false));
+        table.put(user("u5", "admin", null, false));
+
+        Map<String, Object> result = handler(table).handleRequest(new HashMap<>(), new TestContext());
+
+        assertEquals(5, result.get("scanned"));
+        assertEquals(2, result.get("updated"));
+        assertEquals(true, result.get("complete"));
+        assertNull(result.get(UserIndexBackfillHandler.LAST_EVALUATED_KEY));
+
+        assertEquals("USERS", table.get("u1", "listPartition"));
+        assertEquals("globaladmin", table.get("u1", "role"));
+        // Tombstones stay out of the listing indexes
+        assertNull(table.get("u3", "listPartition"));
+        assertEquals("USER", table.get("u3", "role"));
+        assertEquals("USERS", table.get("u4", "listPartition"));
+        assertNull(table.get("u4", "role"));
+        // Unknown roles are not touched
+        assertNull(table.get("u5", "listPartition"));
+    }
+
+    @Test
+    void resumesFromReturnedKey() {
+        FakeUsersTable table = new FakeUsersTable(2);
+        for (int i = 1; i <= 5; i++) {
+            table.put(user("u" + i, "Guest", null, false));
+        }
+        UserIndexBackfillHandler handler = handler(table);
+
+        // Below the time reserve only one page is processed per invocation
+        List<Integer> pages = new ArrayList<>();
+        Map<String, Object> event = new HashMap<>();
+        Map<String, Object> result;
+        do {
+            result = handler.handleRequest(event, new TestContext("UserService-UserIndexBackfill", 5_000));
+            pages.add((Integer) result.get("updated"));
+            event = new HashMap<>();
+            event.put(UserIndexBackfillHandler.EXCLUSIVE_START_KEY, result.get(UserIndexBackfillHandler.LAST_EVALUATED_KEY));
+        } while (!(Boolean) result.get("complete"));
+
+        assertEquals(List.of(2, 2, 1), pages);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals("guest", table.get("u" + i, "role"));
+            assertEquals("USERS", table.get("u" + i, "listPartition"));
+        }
+    }
+
+    @Test
+    void concurrentRoleChangeWins() {
+        FakeUsersTable table = new FakeUsersTable(10);
+        table.put(user("u1", "GlobalAdmin", null, false));
+        table.beforeUpdate = () -> table.items.get("u1").put("role", AttributeValue.builder().s("user").build());
+
+        Map<String, Object> result = handler(table).handleRequest(new HashMap<>(), new TestContext());
+
+        assertEquals(0, result.get("updated"));
+        assertEquals(1, result.get("skipped"));
+        assertEquals("user", table.get("u1", "role"));
+        assertFalse(table.items.get("u1").containsKey("listPartition"));
+        assertTrue((Boolean) result.get("complete"));
+    }
+
+    private static UserIndexBackfillHandler handler(FakeUsersTable table) {
+        return new UserIndexBackfillHandler(table, "Users",
+                new InvocationMetrics(new PrintStream(OutputStream.nullOutputStream())));
+    }
+
+    private static Map<String, AttributeValue> user(String userId, String role, String listPartition, boolean deleted) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("userId", AttributeValue.builder().s(userId).build());
+        item.put("username", AttributeValue.builder().s("name-" + userId).build());
+        item.put("createdAt", AttributeValue.builder().n("1700000000000").build());
+        if (role != null) {
+            item.put("role", AttributeValue.builder().s(role).build());
+        }
+        if (listPartition != null) {
+            item.put("listPartition", AttributeValue.builder().s(listPartition).build());
+        }
+        if (deleted) {
+            item.put("deletedAt", AttributeValue.builder().n("1700000001000").build());
+        }
+        return item;
+    }
+
+    /**
+     * Users table ordered by userId, with just enough condition evaluation for the backfill
+     */
+    private static final class FakeUsersTable implements DynamoDbClient {
+        private final TreeMap<String, Map<String, AttributeValue>> items = new TreeMap<>();
+        private final int pageSize;
+        private Runnable beforeUpdate = () -> { };
+
+        private FakeUsersTable(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        private void put(Map<String, AttributeValue> item) {
+            items.put(item.get("userId").s(), item);
+        }
+
+        private String get(String userId, String attribute) {
+            AttributeValue value = items.get(userId).get(attribute);
+            return value == null ? null : value.s();
+        }
+
+        @Override
+        public ScanResponse scan(ScanRequest request) {
+            Map<String, Map<String, AttributeValue>> remaining = request.hasExclusiveStartKey()
+                    ? items.tailMap(request.exclusiveStartKey().get("userId").s(), false)
+                    : items;
+            int limit = Math.min(pageSize, request.limit());
+
+            List<Map<String, AttributeValue>> page = new ArrayList<>();
+            for (Map<String, AttributeValue> item : remaining.values()) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(new HashMap<>(item));
+            }
+
+            ScanResponse.Builder response = ScanResponse.builder().items(page);
+            if (page.size() == limit && remaining.size() > limit) {
+                response.lastEvaluatedKey(Map.of("userId", page.get(page.size() - 1).get("userId")));
+            }
+            return response.build();
+        }
+
+        @Override
+        public UpdateItemResponse updateItem(UpdateItemRequest request) {
+            beforeUpdate.run();
+
+            Map<String, AttributeValue> item = items.get(request.key().get("userId").s());
+            Map<String, AttributeValue> values = request.expressionAttributeValues();
+            AttributeValue expectedRole = values.get(":currentRole");
+            if (item == null || item.containsKey("deletedAt") || !Objects.equals(expectedRole, item.get("role"))) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+
+            item.put("listPartition", values.get(":partition"));
+            if (values.containsKey(":role")) {
+                item.put("role", values.get(":role"));
+            }
+            return UpdateItemResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
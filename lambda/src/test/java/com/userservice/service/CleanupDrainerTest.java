@@ -0,0 +1,162 @@
+package com.userservice.service;
+
+import com.userservice.util.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drains an InMemoryCleanupIntentStore with a scripted Cognito delete: completion, retry,
+ * parking after maxAttempts, deferral while Cognito is unavailable and the username hold
+ * that keeps a retried delete away from a newly registered user
+ */
+class CleanupDrainerTest {
+    private final Set<String> failedCompletions = new HashSet<>();
+    private final InMemoryCleanupIntentStore store = new InMemoryCleanupIntentStore() {
+        @Override
+        public synchronized void complete(CleanupIntent intent) {
+            if (failedCompletions.remove(intent.getUserId())) {
+                throw new IllegalStateException("Transaction cancelled");
+            }
+            super.complete(intent);
+        }
+    };
+    private final List<String> deleted = new ArrayList<>();
+    private final Map<String, RuntimeException> thrown = new HashMap<>();
+    private final Map<String, Throwable> failures = new HashMap<>();
+
+    @Test
+    void drainsOldestFirstAcrossBatches() throws Exception {
+        for (int i = 5; i >= 1; i--) {
+            store.add(new CleanupIntent("u" + i, "user" + i, 1_000L * i, 0));
+        }
+
+        CleanupDrainer.Result result = drainer(3).drain(2, () -> true);
+
+        assertEquals(5, result.getCompleted());
+        assertEquals(0, result.getRetried());
+        assertEquals(List.of("user1", "user2", "user3", "user4", "user5"), deleted);
+        assertEquals(5, store.getCompleted().size());
+        assertTrue(store.pending(10).isEmpty());
+    }
+
+    @Test
+    void failedIntentIsRetriedThenParked() throws Exception {
+        store.add(new CleanupIntent("u1", "alice", 1_000, 0));
+        store.add(new CleanupIntent("u2", "bob", 2_000, 0));
+        failures.put("bob", new IllegalStateException("Rate exceeded"));
+        CleanupDrainer drainer = drainer(2);
+
+        CleanupDrainer.Result first = drainer.drain(10, () -> true);
+        assertEquals(1, first.getCompleted());
+        assertEquals(1, first.getRetried());
+        List<CleanupIntent> pending = store.pending(10);
+        assertEquals(1, pending.size());
+        assertEquals(1, pending.get(0).getAttempts());
+
+        CleanupDrainer.Result second = drainer.drain(10, () -> true);
+        assertEquals(1, second.getParked());
+        assertTrue(store.pending(10).isEmpty());
+        assertEquals("u2", store.getParked().get(0).getUserId());
+        assertEquals("Rate exceeded", store.getError("u2"));
+    }
+
+    @Test
+    void synchronousFailureCountsAsAttempt() throws Exception {
+        store.add(new CleanupIntent("u1", "alice", 1_000, 0));
+        thrown.put("alice", new IllegalArgumentException("Invalid username"));
+
+        CleanupDrainer.Result result = drainer(1).drainBatch(10);
+
+        assertEquals(1, result.getParked());
+        assertEquals("Invalid username", store.getError("u1"));
+    }
+
+    @Test
+    void unavailableCognitoDefersWithoutUsingAttempts() throws Exception {
+        store.add(new CleanupIntent("u1", "alice", 1_000, 0));
+        store.add(new CleanupIntent("u2", "bob", 2_000, 0));
+        store.add(new CleanupIntent("u3", "carol", 3_000, 0));
+        failures.put("bob", new ServiceUnavailableException("Cognito is temporarily unavailable", 5, null));
+
+        CleanupDrainer.Result result = drainer(1).drain(2, () -> true);
+
+        // The batch with the deferred intent ends the drain before carol is reached
+        assertEquals(1, result.getCompleted());
+        assertEquals(1, result.getDeferred());
+        assertEquals(0, result.getParked());
+        assertEquals(List.of("alice", "bob"), deleted);
+        List<CleanupIntent> pending = store.pending(10);
+        assertEquals(2, pending.size());
+        assertEquals(0, pending.get(0).getAttempts());
+        assertTrue(store.getParked().isEmpty());
+    }
+
+    @Test
+    void usernameStaysHeldWhenCompletionFailsAfterCognitoDelete() throws Exception {
+        // Created before reservations existed, so nothing holds the username yet
+        store.add(new CleanupIntent("u1", "alice", 1_000, 0));
+        failedCompletions.add("u1");
+        CleanupDrainer drainer = drainer(3);
+
+        CleanupDrainer.Result first = drainer.drain(10, () -> true);
+        assertEquals(1, first.getRetried());
+        assertEquals("Transaction cancelled", store.getError("u1"));
+        // A registration claiming alice now fails, so the retry cannot hit a new account
+        assertEquals("u1", store.getReservation("alice"));
+
+        CleanupDrainer.Result second = drainer.drain(10, () -> true);
+        assertEquals(1, second.getCompleted());
+        assertEquals(List.of("alice", "alice"), deleted);
+        assertNull(store.getReservation("alice"));
+        assertTrue(store.pending(10).isEmpty());
+    }
+
+    @Test
+    void usernameHeldByAnotherUserIsNotDeleted() throws Exception {
+        store.add(new CleanupIntent("u1", "alice", 1_000, 0));
+        store.reserve("alice", "u2");
+
+        CleanupDrainer.Result result = drainer(1).drainBatch(10);
+
+        assertEquals(1, result.getParked());
+        assertTrue(deleted.isEmpty());
+        assertEquals("u2", store.getReservation("alice"));
+        assertEquals("Username alice is reserved by another user", store.getError("u1"));
+    }
+
+    @Test
+    void stopsWhenOutOfTime() throws Exception {
+        store.add(new CleanupIntent("u1", "alice", 1_000, 0));
+
+        CleanupDrainer.Result result = drainer(1).drain(10, () -> false);
+
+        assertEquals(0, result.getCompleted());
+        assertTrue(deleted.isEmpty());
+        assertEquals(1, store.pending(10).size());
+    }
+
+    private CleanupDrainer drainer(int maxAttempts) {
+        return new CleanupDrainer(this::deleteCognitoUser, store, new TokenBucket(1_000, 100), maxAttempts);
+    }
+
+    private CompletableFuture<Void> deleteCognitoUser(String username) {
+        deleted.add(username);
+        RuntimeException e = thrown.get(username);
+        if (e != null) {
+            throw e;
+        }
+        Throwable failure = failures.get(username);
+        return failure != null ? CompletableFuture.failedFuture(failure) : CompletableFuture.completedFuture(null);
+    }
+}
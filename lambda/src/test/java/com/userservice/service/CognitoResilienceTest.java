@@ -0,0 +1,276 @@
+package com.userservice.service;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.userservice.util.ResponseUtil;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.CognitoIdentityProviderException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.InternalErrorException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.InvalidParameterException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.TooManyRequestsException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.UsernameExistsException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives CognitoResilience with a scripted fake client, a manual clock and a recording
+ * jitter source, so retries, backoff bounds and breaker transitions are deterministic
+ */
+class CognitoResilienceTest {
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final List<Long> jitterBounds = new ArrayList<>();
+
+    @Test
+    void retriesThrottlingServerAndClientFailures() throws Exception {
+        CognitoResilience resilience = resilience(6, 100);
+        ScriptedClient client = new ScriptedClient(
+                TooManyRequestsException.builder().statusCode(400).message("Rate exceeded").build(),
+                serviceError(400, "ThrottlingException"),
+                InternalErrorException.builder().statusCode(500).message("Internal error").build(),
+                serviceError(503, "ServiceUnavailable"),
+                SdkClientException.create("Connection reset"),
+                "created");
+
+        assertEquals("created", resilience.call(client));
+        assertEquals(6, client.calls);
+        assertEquals(CognitoResilience.State.CLOSED, resilience.getState());
+    }
+
+    @Test
+    void returnsOtherErrorsWithoutRetrying() {
+        CognitoResilience resilience = resilience(4, 100);
+        UsernameExistsException exists = UsernameExistsException.builder().statusCode(400).message("exists").build();
+        ScriptedClient client = new ScriptedClient(exists, "unused");
+
+        assertSame(exists, assertThrows(UsernameExistsException.class, () -> resilience.call(client)));
+        assertEquals(1, client.calls);
+
+        ScriptedClient invalid = new ScriptedClient(
+                InvalidParameterException.builder().statusCode(400).message("bad").build());
+        assertThrows(InvalidParameterException.class, () -> resilience.call(invalid));
+        assertEquals(1, invalid.calls);
+        assertTrue(jitterBounds.isEmpty());
+    }
+
+    @Test
+    void nonIdempotentCallIsNotRepeatedAfterTimeout() {
+        CognitoResilience resilience = resilience(4, 100);
+        SdkClientException timeout = SdkClientException.create("Read timed out", new SocketTimeoutException());
+        UsernameExistsException exists = UsernameExistsException.builder().statusCode(400).message("exists").build();
+
+        // The first attempt may have created the user; a retry would only see it as a duplicate
+        ScriptedClient client = new ScriptedClient(timeout, exists);
+        assertSame(timeout, assertThrows(ServiceUnavailableException.class,
+                () -> resilience.callNonIdempotent(client)).getCause());
+        assertEquals(1, client.calls);
+
+        ScriptedClient async = new ScriptedClient(serviceError(500, "InternalError"), exists);
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> resilience.callNonIdempotentAsync(async.async()).join());
+        assertInstanceOf(ServiceUnavailableException.class, e.getCause());
+        assertEquals(1, async.calls);
+        assertTrue(jitterBounds.isEmpty());
+    }
+
+    @Test
+    void nonIdempotentCallRetriesFailuresThatNeverReachedCognito() throws Exception {
+        CognitoResilience resilience = resilience(4, 100);
+        ScriptedClient client = new ScriptedClient(
+                throttle(),
+                SdkClientException.create("Unable to connect", new ConnectException("Connection refused")),
+                SdkClientException.create("Unable to resolve host", new UnknownHostException("cognito-idp")),
+                "created");
+
+        assertEquals("created", resilience.callNonIdempotent(client));
+        assertEquals(4, client.calls);
+
+        ScriptedClient async = new ScriptedClient(serviceError(400, "ThrottlingException"), "created");
+        assertEquals("created", resilience.callNonIdempotentAsync(async.async()).join());
+        assertEquals(2, async.calls);
+    }
+
+    @Test
+    void fullJitterIsBoundedByCappedExponentialDelay() throws Exception {
+        CognitoResilience resilience = new CognitoResilience(8, 100, 2000, 100, 10_000, now::get, bound -> {
+            jitterBounds.add(bound);
+            return 0;
+        });
+        ScriptedClient client = new ScriptedClient(
+                throttle(), throttle(), throttle(), throttle(), throttle(), throttle(), throttle(), "created");
+
+        assertEquals("created", resilience.call(client));
+        // Uniform in [0, min(max, base * 2^(attempt-1))], inclusive
+        assertEquals(List.of(101L, 201L, 401L, 801L, 1601L, 2001L, 2001L), jitterBounds);
+
+        CognitoResilience random = new CognitoResilience(4, 100, 2000, 8, 10_000);
+        for (int i = 0; i < 1000; i++) {
+            long delay = random.backoffMillis(3);
+            assertTrue(delay >= 0 && delay <= 400, "delay " + delay);
+        }
+    }
+
+    @Test
+    void exhaustedRetriesBecomeServiceUnavailable() {
+        CognitoResilience resilience = resilience(3, 100);
+        InternalErrorException last = InternalErrorException.builder().statusCode(500).message("third").build();
+        ScriptedClient client = new ScriptedClient(throttle(), throttle(), last, "unused");
+
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class, () -> resilience.call(client));
+        assertEquals(3, client.calls);
+        assertSame(last, e.getCause());
+        assertEquals(1, e.getRetryAfterSeconds());
+    }
+
+    @Test
+    void breakerOpensRejectsThenProbes() throws Exception {
+        CognitoResilience resilience = resilience(1, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ServiceUnavailableException.class, () -> resilience.call(new ScriptedClient(throttle())));
+        }
+        assertEquals(CognitoResilience.State.OPEN, resilience.getState());
+
+        // Rejected without reaching Cognito while open; Retry-After counts down with the clock
+        ScriptedClient rejected = new ScriptedClient("unused");
+        assertEquals(10, assertThrows(ServiceUnavailableException.class,
+                () -> resilience.call(rejected)).getRetryAfterSeconds());
+        now.addAndGet(4_500);
+        assertEquals(6, assertThrows(ServiceUnavailableException.class,
+                () -> resilience.call(rejected)).getRetryAfterSeconds());
+        assertEquals(0, rejected.calls);
+
+        // After the open period one probe goes through; its failure opens the breaker again
+        now.addAndGet(5_500);
+        ScriptedClient failedProbe = new ScriptedClient(throttle());
+        assertThrows(ServiceUnavailableException.class, () -> resilience.call(failedProbe));
+        assertEquals(1, failedProbe.calls);
+        assertEquals(CognitoResilience.State.OPEN, resilience.getState());
+
+        // A probe in flight holds off every other call until it completes
+        now.addAndGet(10_000);
+        CompletableFuture<String> probeResponse = new CompletableFuture<>();
+        CompletableFuture<String> probe = resilience.callAsync(() -> probeResponse);
+        assertEquals(CognitoResilience.State.HALF_OPEN, resilience.getState());
+        CompletionException concurrent = assertThrows(CompletionException.class,
+                () -> resilience.callAsync(() -> CompletableFuture.completedFuture("unused")).join());
+        assertInstanceOf(ServiceUnavailableException.class, concurrent.getCause());
+
+        probeResponse.complete("created");
+        assertEquals("created", probe.join());
+        assertEquals(CognitoResilience.State.CLOSED, resilience.getState());
+        assertEquals("created", resilience.call(new ScriptedClient("created")));
+    }
+
+    @Test
+    void nonRetryableAnswerClosesBreakerAndResetsFailureCount() {
+        CognitoResilience resilience = resilience(1, 2);
+
+        assertThrows(ServiceUnavailableException.class, () -> resilience.call(new ScriptedClient(throttle())));
+        // Cognito answered, so the earlier failure no longer counts towards the threshold
+        assertThrows(UsernameExistsException.class, () -> resilience.call(new ScriptedClient(
+                UsernameExistsException.builder().statusCode(400).message("exists").build())));
+        assertThrows(ServiceUnavailableException.class, () -> resilience.call(new ScriptedClient(throttle())));
+        assertEquals(CognitoResilience.State.CLOSED, resilience.getState());
+    }
+
+    @Test
+    void asyncCallsRetryOffTheCallingThread() {
+        CognitoResilience resilience = resilience(3, 100);
+        ScriptedClient client = new ScriptedClient(throttle(), serviceError(502, "BadGateway"), "created");
+        assertEquals("created", resilience.callAsync(client.async()).join());
+        assertEquals(3, client.calls);
+
+        ScriptedClient failing = new ScriptedClient(throttle(), throttle(), throttle());
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> resilience.callAsync(failing.async()).join());
+        assertInstanceOf(ServiceUnavailableException.class, e.getCause());
+        assertInstanceOf(TooManyRequestsException.class, e.getCause().getCause());
+    }
+
+    @Test
+    void serviceUnavailableMapsTo503WithRetryAfter() {
+        CognitoResilience resilience = resilience(1, 1);
+        assertThrows(ServiceUnavailableException.class, () -> resilience.call(new ScriptedClient(throttle())));
+        now.addAndGet(2_100);
+
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+                () -> resilience.call(new ScriptedClient("unused")));
+        APIGatewayProxyResponseEvent response = ResponseUtil.serviceUnavailable(e.getMessage(), e.getRetryAfterSeconds());
+
+        assertEquals(503, response.getStatusCode());
+        assertEquals("8", response.getHeaders().get("Retry-After"));
+        assertTrue(response.getBody().contains("Cognito is temporarily unavailable"));
+    }
+
+    /**
+     * Breaker opening after failureThreshold consecutive failures for 10 seconds; backoff
+     * delays are recorded and skipped
+     */
+    private CognitoResilience resilience(int maxAttempts, int failureThreshold) {
+        return new CognitoResilience(maxAttempts, 100, 2000, failureThreshold, 10_000, now::get, bound -> {
+            jitterBounds.add(bound);
+            return 0;
+        });
+    }
+
+    private static TooManyRequestsException throttle() {
+        return TooManyRequestsException.builder().statusCode(400).message("Rate exceeded").build();
+    }
+
+    private static CognitoIdentityProviderException serviceError(int statusCode, String errorCode) {
+        return (CognitoIdentityProviderException) CognitoIdentityProviderException.builder()
+                .statusCode(statusCode)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).errorMessage(errorCode).build())
+                .build();
+    }
+
+    /**
+     * Answers each call with the next scripted outcome: a RuntimeException is thrown (or
+     * fails the future), anything else is returned
+     */
+    private static final class ScriptedClient implements Supplier<String> {
+        private final Deque<Object> script;
+        private int calls;
+
+        private ScriptedClient(Object... outcomes) {
+            this.script = new ArrayDeque<>(List.of(outcomes));
+        }
+
+        @Override
+        public String get() {
+            calls++;
+            Object outcome = script.removeFirst();
+            if (outcome instanceof RuntimeException) {
+                throw (RuntimeException) outcome;
+            }
+            return (String) outcome;
+        }
+
+        private Supplier<CompletableFuture<String>> async() {
+            return () -> {
+                try {
+                    return CompletableFuture.completedFuture(get());
+                } catch (RuntimeException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            };
+        }
+    }
+}
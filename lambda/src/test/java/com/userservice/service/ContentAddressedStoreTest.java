@@ -0,0 +1,230 @@
+package com.userservice.service;
+
+import com.userservice.model.FileManifestSchema;
+import com.userservice.util.InvocationMetrics;
+import com.userservice.util.UploadCompression;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Content is written once per SHA-256 and every upload records its filename in the
+ * manifest; bodies that do not match the client's digests are rejected whether or not the
+ * write is skipped. The current object for conditional uploads follows the manifest,
+ * falling back to the uploads/ key for files stored before deduplication was enabled
+ */
+class ContentAddressedStoreTest {
+    private static final byte[] CONTENT = "id,amount\n1,100\n2,250\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, Map<String, AttributeValue>> manifest = new HashMap<>();
+    private final Map<String, HeadObjectResponse> objects = new HashMap<>();
+    private final List<PutObjectRequest> puts = new ArrayList<>();
+    private final List<byte[]> putBodies = new ArrayList<>();
+
+    @Test
+    void newContentIsWrittenUnderItsHash() throws Exception {
+        ContentAddressedStore.StoredFile stored = store().store("alice", "report.csv", content(),
+                CONTENT.length, "text/csv", null, base64("SHA-256", CONTENT));
+
+        String sha256 = HexFormat.of().formatHex(digest("SHA-256", CONTENT));
+        assertEquals(sha256, stored.getSha256());
+        assertEquals("content/" + sha256, stored.getContentKey());
+        assertFalse(stored.isDeduplicated());
+        assertEquals("\"put-etag\"", stored.getETag());
+
+        assertEquals(1, puts.size());
+        assertEquals("content/" + sha256, puts.get(0).key());
+        assertEquals(base64("SHA-256", CONTENT), puts.get(0).checksumSHA256());
+        assertArrayEquals(CONTENT, putBodies.get(0));
+        assertManifestPointsAt("alice", "report.csv", "content/" + sha256);
+    }
+
+    @Test
+    void existingContentIsNotWrittenAgain() throws Exception {
+        String contentKey = "content/" + HexFormat.of().formatHex(digest("SHA-256", CONTENT));
+        objects.put(contentKey, object("\"stored-etag\"", CONTENT.length));
+
+        ContentAddressedStore.StoredFile stored = store().store("bob", "copy.csv", content(),
+                CONTENT.length, "text/csv", base64("MD5", CONTENT), null);
+
+        assertTrue(stored.isDeduplicated());
+        assertEquals("\"stored-etag\"", stored.getETag());
+        assertTrue(puts.isEmpty());
+        assertManifestPointsAt("bob", "copy.csv", contentKey);
+    }
+
+    @Test
+    void objectOfAnotherSizeUnderTheKeyIsReplaced() throws Exception {
+        String contentKey = "content/" + HexFormat.of().formatHex(digest("SHA-256", CONTENT));
+        objects.put(contentKey, object("\"truncated-etag\"", CONTENT.length - 1));
+
+        assertFalse(store().store("alice", "report.csv", content(), CONTENT.length, "text/csv", null, null)
+                .isDeduplicated());
+        assertEquals(1, puts.size());
+    }
+
+    @Test
+    void rejectsSha256Mismatch() {
+        byte[] other = "something else".getBytes(StandardCharsets.UTF_8);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> store().store(
+                "alice", "report.csv", content(), CONTENT.length, "text/csv", null, base64("SHA-256", other)));
+
+        assertEquals("Checksum does not match the uploaded content", e.getMessage());
+        assertTrue(puts.isEmpty());
+        assertTrue(manifest.isEmpty());
+    }
+
+    @Test
+    void rejectsMd5MismatchEvenWhenTheWriteWouldBeSkipped() {
+        String contentKey = "content/" + HexFormat.of().formatHex(digest("SHA-256", CONTENT));
+        objects.put(contentKey, object("\"stored-etag\"", CONTENT.length));
+        byte[] other = "something else".getBytes(StandardCharsets.UTF_8);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> store().store(
+                "bob", "copy.csv", content(), CONTENT.length, "text/csv", base64("MD5", other), null));
+
+        assertEquals("Checksum does not match the uploaded content", e.getMessage());
+        assertTrue(puts.isEmpty());
+        assertTrue(manifest.isEmpty());
+    }
+
+    @Test
+    void currentObjectFollowsManifest() {
+        manifest.put("alice/report.csv", Map.of(
+                FileManifestSchema.CONTENT_KEY, AttributeValue.builder().s("content/abc123").build()));
+        objects.put("content/abc123", object("\"content-etag\"", 10));
+        objects.put("uploads/alice/report.csv", object("\"legacy-etag\"", 10));
+
+        assertEquals("\"content-etag\"", store().currentObject("alice", "report.csv").eTag());
+    }
+
+    @Test
+    void currentObjectFallsBackToUploadsKey() {
+        objects.put("uploads/alice/report.csv", object("\"legacy-etag\"", 10));
+
+        assertEquals("\"legacy-etag\"", store().currentObject("alice", "report.csv").eTag());
+        assertNull(store().currentObject("alice", "missing.csv"));
+    }
+
+    private ContentAddressedStore store() {
+        return new ContentAddressedStore(new FakeS3(), "user-files", new FakeManifest(), "FileManifest",
+                new UploadCompression(false, UploadCompression.DEFAULT_LEVEL, UploadCompression.DEFAULT_MIN_BYTES),
+                new InvocationMetrics(new PrintStream(OutputStream.nullOutputStream())));
+    }
+
+    private void assertManifestPointsAt(String username, String filename, String contentKey) {
+        Map<String, AttributeValue> item = manifest.get(username + "/" + filename);
+        assertEquals(contentKey, item.get(FileManifestSchema.CONTENT_KEY).s());
+        assertEquals(String.valueOf(CONTENT.length), item.get(FileManifestSchema.SIZE).n());
+        assertEquals("text/csv", item.get(FileManifestSchema.CONTENT_TYPE).s());
+    }
+
+    private static ContentStreamProvider content() {
+        return () -> new ByteArrayInputStream(CONTENT);
+    }
+
+    private static HeadObjectResponse object(String eTag, long size) {
+        return HeadObjectResponse.builder().eTag(eTag).contentLength(size).build();
+    }
+
+    private static byte[] digest(String algorithm, byte[] bytes) {
+        try {
+            return MessageDigest.getInstance(algorithm).digest(bytes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String base64(String algorithm, byte[] bytes) {
+        return Base64.getEncoder().encodeToString(digest(algorithm, bytes));
+    }
+
+    private final class FakeManifest implements DynamoDbClient {
+        @Override
+        public GetItemResponse getItem(GetItemRequest request) {
+            String key = request.key().get(FileManifestSchema.USERNAME).s() + "/"
+                    + request.key().get(FileManifestSchema.FILENAME).s();
+            return GetItemResponse.builder().item(manifest.get(key)).build();
+        }
+
+        @Override
+        public PutItemResponse putItem(PutItemRequest request) {
+            manifest.put(request.item().get(FileManifestSchema.USERNAME).s() + "/"
+                    + request.item().get(FileManifestSchema.FILENAME).s(), request.item());
+            return PutItemResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final class FakeS3 implements S3Client {
+        @Override
+        public HeadObjectResponse headObject(HeadObjectRequest request) {
+            HeadObjectResponse object = objects.get(request.key());
+            if (object == null) {
+                throw S3Exception.builder().statusCode(404).message("Not Found").build();
+            }
+            return object;
+        }
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+            puts.add(request);
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                putBodies.add(in.readAllBytes());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return PutObjectResponse.builder().eTag("\"put-etag\"").build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.userservice.service;
+
+import com.userservice.model.UserTableSchema;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Completion releases the reservation and removes the tombstone in one transaction, and
+ * settles the remaining side alone when the other one is already settled
+ */
+class DynamoCleanupIntentStoreTest {
+    private static final CleanupIntent INTENT = new CleanupIntent("u1", "alice", 1_000, 0);
+
+    // table name -> key value -> userId attribute, or "deleted" for a tombstone
+    private final Map<String, Map<String, String>> tables = new HashMap<>(Map.of(
+            "Users", new HashMap<>(), "Usernames", new HashMap<>()));
+    private final List<String> calls = new ArrayList<>();
+
+    private final DynamoCleanupIntentStore store = new DynamoCleanupIntentStore(new FakeDynamoDb(), "Users", "Usernames");
+
+    @Test
+    void completeReleasesReservationAndTombstoneTogether() {
+        tables.get("Users").put("u1", "deleted");
+        tables.get("Usernames").put("alice", "u1");
+
+        store.complete(INTENT);
+
+        assertEquals(List.of("TransactWriteItems"), calls);
+        assertTrue(tables.get("Users").isEmpty());
+        assertTrue(tables.get("Usernames").isEmpty());
+    }
+
+    @Test
+    void reservationOfAnotherUserIsKept() {
+        tables.get("Users").put("u1", "deleted");
+        tables.get("Usernames").put("alice", "u2");
+
+        assertFalse(store.holdUsername(INTENT));
+        store.complete(INTENT);
+
+        assertTrue(tables.get("Users").isEmpty());
+        assertEquals("u2", tables.get("Usernames").get("alice"));
+    }
+
+    @Test
+    void repeatedIntentReleasesTheNameItHeldAgain() {
+        // An earlier drain completed the intent; the index handed it out once more
+        assertTrue(store.holdUsername(INTENT));
+        assertEquals("u1", tables.get("Usernames").get("alice"));
+
+        store.complete(INTENT);
+
+        assertEquals(List.of("UpdateItem", "TransactWriteItems", "DeleteItem"), calls);
+        assertNull(tables.get("Usernames").get("alice"));
+    }
+
+    /**
+     * Users items are tombstones or live users; Usernames items map to a userId. Only the
+     * condition expressions DynamoCleanupIntentStore uses are understood
+     */
+    private final class FakeDynamoDb implements DynamoDbClient {
+        @Override
+        public UpdateItemResponse updateItem(UpdateItemRequest request) {
+            calls.add("UpdateItem");
+            assertEquals("SET userId = :userId", request.updateExpression());
+            if (!conditionHolds(request.tableName(), request.key(), request.conditionExpression(),
+                    request.expressionAttributeValues())) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+            tables.get(request.tableName()).put(keyValue(request.key()),
+                    request.expressionAttributeValues().get(":userId").s());
+            return UpdateItemResponse.builder().build();
+        }
+
+        @Override
+        public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+            calls.add("DeleteItem");
+            if (!conditionHolds(request.tableName(), request.key(), request.conditionExpression(),
+                    request.expressionAttributeValues())) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+            tables.get(request.tableName()).remove(keyValue(request.key()));
+            return DeleteItemResponse.builder().build();
+        }
+
+        @Override
+        public TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+            calls.add("TransactWriteItems");
+            List<CancellationReason> reasons = new ArrayList<>();
+            boolean cancelled = false;
+            for (TransactWriteItem item : request.transactItems()) {
+                Delete delete = item.delete();
+                boolean holds = conditionHolds(delete.tableName(), delete.key(), delete.conditionExpression(),
+                        delete.expressionAttributeValues());
+                reasons.add(CancellationReason.builder().code(holds ? "None" : "ConditionalCheckFailed").build());
+                cancelled |= !holds;
+            }
+            if (cancelled) {
+                throw TransactionCanceledException.builder().cancellationReasons(reasons).build();
+            }
+            for (TransactWriteItem item : request.transactItems()) {
+                tables.get(item.delete().tableName()).remove(keyValue(item.delete().key()));
+            }
+            return TransactWriteItemsResponse.builder().build();
+        }
+
+        private boolean conditionHolds(String table, Map<String, AttributeValue> key, String condition,
+                                       Map<String, AttributeValue> values) {
+            String current = tables.get(table).get(keyValue(key));
+            if (condition.equals("attribute_exists(" + UserTableSchema.DELETED_AT + ")")) {
+                return "deleted".equals(current);
+            }
+            assertEquals("attribute_not_exists(username) OR userId = :userId", condition);
+            return current == null || current.equals(values.get(":userId").s());
+        }
+
+        private String keyValue(Map<String, AttributeValue> key) {
+            return key.values().iterator().next().s();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.userservice.testing;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Lambda Context with a fixed function name, a generous time budget and a silent logger
+ */
+public class TestContext implements Context {
+    private final String functionName;
+    private final int remainingMillis;
+
+    public TestContext() {
+        this("UserService-Test", 30_000);
+    }
+
+    public TestContext(String functionName, int remainingMillis) {
+        this.functionName = functionName;
+        this.remainingMillis = remainingMillis;
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return "test-request";
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return "/aws/lambda/" + functionName;
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return "test";
+    }
+
+    @Override
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return "arn:aws:lambda:us-east-1:000000000000:function:" + functionName;
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return remainingMillis;
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return 512;
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return new LambdaLogger() {
+            @Override
+            public void log(String message) {
+            }
+
+            @Override
+            public void log(byte[] message) {
+            }
+        };
+    }
+
+    /**
+     * Bearer token with the claims AuthorizationUtil reads; the signature is not checked
+     */
+    public static String bearerToken(String username, String role) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String payload = "{\"sub\":\"sub-" + username + "\",\"cognito:username\":\"" + username
+                + "\",\"custom:role\":\"" + role + "\"}";
+        return "Bearer " + encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+}
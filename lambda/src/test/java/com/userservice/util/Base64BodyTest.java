@@ -0,0 +1,106 @@
+package com.userservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * decodedLength must accept exactly what Base64.getDecoder() accepts and agree on the
+ * length; openStream must produce the same bytes
+ */
+class Base64BodyTest {
+
+    @Test
+    void paddedAndUnpaddedBodies() throws Exception {
+        assertDecodesLikeJdk("QUJD");
+        assertDecodesLikeJdk("QUI=");
+        assertDecodesLikeJdk("QUI");
+        assertDecodesLikeJdk("QQ==");
+        assertDecodesLikeJdk("QQ");
+        assertDecodesLikeJdk("+/+/");
+        assertEquals(2, Base64Body.decodedLength("QUI="));
+        assertEquals(2, Base64Body.decodedLength("QUI"));
+    }
+
+    @Test
+    void emptyBodyIsZeroBytes() throws Exception {
+        assertDecodesLikeJdk("");
+        assertEquals(0, Base64Body.decodedLength(""));
+    }
+
+    @Test
+    void rejectsWhatTheJdkDecoderRejects() {
+        assertRejected("Q");
+        assertRejected("QUJDQ");
+        assertRejected("QQ=");
+        assertRejected("QQ===");
+        assertRejected("=");
+        assertRejected("====");
+        assertRejected("QQ==QQ==");
+        assertRejected("QU=D");
+        assertRejected("QUJD\n");
+        assertRejected("QUJ-");
+        assertRejected("QUJ_");
+        assertRejected("QUJé");
+    }
+
+    @Test
+    void agreesWithJdkDecoderOnGeneratedBodies() throws Exception {
+        char[] alphabet = {'A', 'g', '0', '+', '/', '=', '-', '\n'};
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            char[] body = new char[random.nextInt(13)];
+            for (int j = 0; j < body.length; j++) {
+                // Mostly valid characters, so plenty of bodies get past the first few checks
+                body[j] = alphabet[random.nextInt(10) < 8 ? random.nextInt(6) : random.nextInt(alphabet.length)];
+            }
+            String value = new String(body);
+
+            byte[] expected;
+            try {
+                expected = Base64.getDecoder().decode(value);
+            } catch (IllegalArgumentException e) {
+                assertRejected(value);
+                continue;
+            }
+            assertEquals(expected.length, Base64Body.decodedLength(value), value);
+            assertArrayEquals(expected, readAll(value), value);
+        }
+    }
+
+    @Test
+    void streamMatchesJdkDecoderForLargeBodies() throws Exception {
+        byte[] content = new byte[3 * 1024 * 1024 + 1];
+        new Random(7).nextBytes(content);
+        String padded = Base64.getEncoder().encodeToString(content);
+        String unpadded = Base64.getEncoder().withoutPadding().encodeToString(content);
+
+        assertEquals(content.length, Base64Body.decodedLength(padded));
+        assertEquals(content.length, Base64Body.decodedLength(unpadded));
+        assertArrayEquals(content, readAll(padded));
+        assertArrayEquals(content, readAll(unpadded));
+    }
+
+    private static void assertDecodesLikeJdk(String body) throws Exception {
+        byte[] expected = Base64.getDecoder().decode(body);
+        assertEquals(expected.length, Base64Body.decodedLength(body));
+        assertArrayEquals(expected, readAll(body));
+    }
+
+    private static void assertRejected(String body) {
+        assertThrows(IllegalArgumentException.class, () -> Base64.getDecoder().decode(body), "JDK accepted " + body);
+        assertThrows(IllegalArgumentException.class, () -> Base64Body.decodedLength(body), "Accepted " + body);
+    }
+
+    private static byte[] readAll(String body) throws Exception {
+        try (InputStream in = Base64Body.openStream(body)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.userservice.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Which whole-call failures DynamoBatch retries and which it hands to the caller
+ */
+class DynamoBatchTest {
+
+    @Test
+    void retriesThrottledAndServerFailedWrites() throws Exception {
+        ScriptedDynamoDb dynamoDb = new ScriptedDynamoDb(
+                ProvisionedThroughputExceededException.builder().statusCode(400).message("throttled").build(),
+                serviceError(400, "ThrottlingException"),
+                serviceError(500, "InternalServerError"));
+
+        DynamoBatch.WriteResult result = DynamoBatch.writeAll(dynamoDb, writes(3));
+
+        assertEquals(4, dynamoDb.calls);
+        assertTrue(result.getUnprocessed().isEmpty());
+        assertEquals(9, result.getRetries());
+    }
+
+    @Test
+    void surfacesOtherWriteErrors() {
+        DynamoDbException validation = serviceError(400, "ValidationException");
+        ScriptedDynamoDb dynamoDb = new ScriptedDynamoDb(validation);
+
+        assertSame(validation, assertThrows(DynamoDbException.class, () -> DynamoBatch.writeAll(dynamoDb, writes(3))));
+        assertEquals(1, dynamoDb.calls);
+    }
+
+    @Test
+    void retriesServerFailedReadsAndSurfacesOtherErrors() throws Exception {
+        ScriptedDynamoDb unavailable = new ScriptedDynamoDb(serviceError(503, "ServiceUnavailable"));
+        DynamoBatch.GetResult result = DynamoBatch.getAll(unavailable, "Users",
+                List.of(Map.of("userId", AttributeValue.builder().s("u1").build())), null);
+        assertEquals(2, unavailable.calls);
+        assertEquals(1, result.getItems().size());
+        assertTrue(result.getUnprocessedKeys().isEmpty());
+
+        ResourceNotFoundException missing = ResourceNotFoundException.builder()
+                .statusCode(400).message("Requested resource not found").build();
+        ScriptedDynamoDb dynamoDb = new ScriptedDynamoDb(missing);
+        assertSame(missing, assertThrows(ResourceNotFoundException.class, () -> DynamoBatch.getAll(dynamoDb, "Users",
+                List.of(Map.of("userId", AttributeValue.builder().s("u1").build())), null)));
+        assertEquals(1, dynamoDb.calls);
+    }
+
+    private static List<DynamoBatch.TableWrite> writes(int count) {
+        List<DynamoBatch.TableWrite> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(new DynamoBatch.TableWrite("Users",
+                    DynamoBatch.put(Map.of("userId", AttributeValue.builder().s("u" + i).build()))));
+        }
+        return writes;
+    }
+
+    private static DynamoDbException serviceError(int statusCode, String errorCode) {
+        return (DynamoDbException) DynamoDbException.builder()
+                .statusCode(statusCode)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).errorMessage(errorCode).build())
+                .build();
+    }
+
+    /**
+     * Fails the first calls with the scripted errors, then processes everything
+     */
+    private static final class ScriptedDynamoDb implements DynamoDbClient {
+        private final Deque<DynamoDbException> failures;
+        private int calls;
+
+        private ScriptedDynamoDb(DynamoDbException... failures) {
+            this.failures = new ArrayDeque<>(List.of(failures));
+        }
+
+        @Override
+        public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+            calls++;
+            if (!failures.isEmpty()) {
+                throw failures.removeFirst();
+            }
+            return BatchWriteItemResponse.builder().build();
+        }
+
+        @Override
+        public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+            calls++;
+            if (!failures.isEmpty()) {
+                throw failures.removeFirst();
+            }
+            return BatchGetItemResponse.builder()
+                    .responses(Map.of("Users", request.requestItems().get("Users").keys()))
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
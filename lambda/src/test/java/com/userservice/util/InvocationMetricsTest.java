@@ -0,0 +1,98 @@
+package com.userservice.util;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.testing.TestContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvocationMetricsTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final InvocationMetrics metrics = new InvocationMetrics(new PrintStream(out));
+
+    @Test
+    void emitsOneEmfDocumentPerInvocation() throws Exception {
+        metrics.begin(new TestContext("UserService-GetUser", 30_000),
+                new APIGatewayProxyRequestEvent().withBody("{\"name\":\"é\"}"));
+        metrics.record("Auth", metrics.start());
+        metrics.count("UserCacheHits", 2);
+        metrics.count("UserCacheHits", 1);
+        metrics.finish(new APIGatewayProxyResponseEvent().withStatusCode(404).withBody("{\"error\":\"€\"}"));
+
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertTrue(output.endsWith("\n"));
+        assertEquals(1, output.split("\n").length);
+
+        JsonNode document = OBJECT_MAPPER.readTree(output);
+        JsonNode directive = document.path("_aws").path("CloudWatchMetrics").get(0);
+        assertEquals(InvocationMetrics.NAMESPACE, directive.path("Namespace").asText());
+        assertEquals("FunctionName", directive.path("Dimensions").get(0).get(0).asText());
+        assertTrue(document.path("_aws").path("Timestamp").canConvertToLong());
+
+        Map<String, String> units = new HashMap<>();
+        for (JsonNode metric : directive.path("Metrics")) {
+            units.put(metric.path("Name").asText(), metric.path("Unit").asText());
+        }
+        assertEquals(Map.of(
+                "Duration", "Milliseconds",
+                "Auth", "Milliseconds",
+                "UserCacheHits", "Count",
+                "ColdStart", "Count",
+                "RequestSize", "Bytes",
+                "ResponseSize", "Bytes"), units);
+
+        // Every declared metric has a value at the root
+        for (String name : units.keySet()) {
+            assertTrue(document.path(name).isNumber(), name);
+        }
+        assertEquals("UserService-GetUser", document.path("FunctionName").asText());
+        assertEquals(404, document.path("StatusCode").asInt());
+        assertEquals("client_error", document.path("Outcome").asText());
+        assertEquals(3, document.path("UserCacheHits").asLong());
+        assertEquals("{\"name\":\"é\"}".getBytes(StandardCharsets.UTF_8).length, document.path("RequestSize").asLong());
+        assertEquals("{\"error\":\"€\"}".getBytes(StandardCharsets.UTF_8).length, document.path("ResponseSize").asLong());
+    }
+
+    @Test
+    void stateIsResetBetweenInvocations() throws Exception {
+        metrics.begin(null, null);
+        metrics.count("FileBytes", 10);
+        metrics.finish(500);
+
+        out.reset();
+        metrics.begin(null, null);
+        metrics.finish(new APIGatewayProxyResponseEvent().withStatusCode(200));
+
+        JsonNode document = OBJECT_MAPPER.readTree(out.toString(StandardCharsets.UTF_8));
+        assertTrue(document.path("FileBytes").isMissingNode());
+        assertEquals("unknown", document.path("FunctionName").asText());
+        assertEquals("success", document.path("Outcome").asText());
+    }
+
+    @Test
+    void payloadSizeCountsBytesNotChars() {
+        assertEquals(0, InvocationMetrics.payloadSize(null, null));
+        assertEquals(3, InvocationMetrics.payloadSize("abc", false));
+        assertEquals(2, InvocationMetrics.payloadSize("é", null));
+        assertEquals(3, InvocationMetrics.payloadSize("€", null));
+        assertEquals(4, InvocationMetrics.payloadSize("😀", null));
+
+        for (int size : new int[]{0, 1, 2, 3, 100, 1001}) {
+            String body = Base64.getEncoder().encodeToString(new byte[size]);
+            assertEquals(size, InvocationMetrics.payloadSize(body, true));
+        }
+    }
+}
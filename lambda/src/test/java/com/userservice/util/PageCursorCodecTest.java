@@ -0,0 +1,85 @@
+package com.userservice.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PageCursorCodecTest {
+    private static final byte[] KEY = "cursor-signing-key".getBytes(StandardCharsets.UTF_8);
+    private static final String SCOPE = "createdAt-index#USERS";
+
+    private final PageCursorCodec codec = new PageCursorCodec(KEY);
+
+    private final Map<String, AttributeValue> lastKey = Map.of(
+            "userId", AttributeValue.builder().s("0f8fad5b-d9cb-469f-a165-70867728950e").build(),
+            "createdAt", AttributeValue.builder().n("1700000000000").build(),
+            "listPartition", AttributeValue.builder().s("USERS").build(),
+            "blob", AttributeValue.builder().b(SdkBytes.fromByteArray(new byte[]{0, -1, 42})).build());
+
+    @Test
+    void roundTripsStringNumberAndBinaryKeys() {
+        String cursor = codec.encode(SCOPE, lastKey);
+
+        assertEquals(lastKey, codec.decode(SCOPE, cursor));
+        assertEquals(lastKey, new PageCursorCodec(KEY).decode(SCOPE, cursor));
+        assertEquals(PageCursorCodec.VERSION, Base64.getUrlDecoder().decode(cursor)[0]);
+    }
+
+    @Test
+    void rejectsTamperedCursor() {
+        byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(SCOPE, lastKey));
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] tampered = bytes.clone();
+            tampered[i] ^= 1;
+            assertInvalid("Invalid pagination cursor", SCOPE, encode(tampered));
+        }
+        assertInvalid("Invalid pagination cursor", SCOPE, encode(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertInvalid("Invalid pagination cursor", SCOPE, "not*base64");
+        assertInvalid("Invalid pagination cursor", SCOPE, "");
+    }
+
+    @Test
+    void rejectsCursorFromAnotherScopeOrKey() {
+        String cursor = codec.encode(SCOPE, lastKey);
+
+        assertInvalid("Invalid pagination cursor", "role-createdAt-index#user", cursor);
+        assertThrows(IllegalArgumentException.class,
+                () -> new PageCursorCodec("another-key".getBytes(StandardCharsets.UTF_8)).decode(SCOPE, cursor));
+    }
+
+    @Test
+    void rejectsSignedCursorOfAnotherVersion() throws Exception {
+        byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(SCOPE, lastKey));
+        byte[] payload = Arrays.copyOf(bytes, bytes.length - 16);
+        payload[0] = PageCursorCodec.VERSION + 1;
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(KEY, "HmacSHA256"));
+        mac.update(SCOPE.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        byte[] tag = Arrays.copyOf(mac.doFinal(payload), 16);
+        byte[] resigned = Arrays.copyOf(payload, payload.length + 16);
+        System.arraycopy(tag, 0, resigned, payload.length, 16);
+
+        assertInvalid("Unsupported pagination cursor version", SCOPE, encode(resigned));
+    }
+
+    private void assertInvalid(String message, String scope, String cursor) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> codec.decode(scope, cursor));
+        assertEquals(message, e.getMessage());
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
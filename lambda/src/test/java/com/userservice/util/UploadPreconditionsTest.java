@@ -0,0 +1,149 @@
+package com.userservice.util;
+
+import com.userservice.util.UploadPreconditions.Outcome;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Each outcome of evaluate: 412 for a failed If-Match / If-None-Match, 304 when the
+ * current object already has the content described by Content-MD5 or the SHA-256
+ * checksum, otherwise the upload proceeds
+ */
+class UploadPreconditionsTest {
+    private static final byte[] BODY = "hello".getBytes(StandardCharsets.UTF_8);
+    private static final String CURRENT = "\"5d41402abc4b2a76b9719d911017c592\"";
+
+    @Test
+    void noHeadersImposeNoCondition() {
+        UploadPreconditions none = UploadPreconditions.fromHeaders(Map.of("Content-Type", "text/plain"));
+
+        assertFalse(none.requiresCurrentObject());
+        assertFalse(UploadPreconditions.fromHeaders(null).requiresCurrentObject());
+        assertEquals(Outcome.PROCEED, none.evaluate(CURRENT, null));
+        assertEquals(Outcome.PROCEED, none.evaluate(null, null));
+    }
+
+    @Test
+    void ifMatchRequiresTheCurrentTag() {
+        assertEquals(Outcome.PROCEED, headers("If-Match", CURRENT).evaluate(CURRENT, null));
+        assertEquals(Outcome.PROCEED, headers("If-Match", "\"other\", " + CURRENT).evaluate(CURRENT, null));
+        assertEquals(Outcome.PRECONDITION_FAILED, headers("If-Match", "\"other\"").evaluate(CURRENT, null));
+        // Nothing to match
+        assertEquals(Outcome.PRECONDITION_FAILED, headers("If-Match", CURRENT).evaluate(null, null));
+    }
+
+    @Test
+    void ifMatchWildcardRequiresAnyCurrentObject() {
+        assertEquals(Outcome.PROCEED, headers("If-Match", "*").evaluate(CURRENT, null));
+        assertEquals(Outcome.PRECONDITION_FAILED, headers("If-Match", "*").evaluate(null, null));
+    }
+
+    @Test
+    void ifNoneMatchFailsOnTheCurrentTag() {
+        assertEquals(Outcome.PRECONDITION_FAILED, headers("If-None-Match", CURRENT).evaluate(CURRENT, null));
+        assertEquals(Outcome.PROCEED, headers("If-None-Match", "\"other\"").evaluate(CURRENT, null));
+        assertEquals(Outcome.PROCEED, headers("If-None-Match", CURRENT).evaluate(null, null));
+    }
+
+    @Test
+    void ifNoneMatchWildcardOnlyCreates() {
+        assertEquals(Outcome.PRECONDITION_FAILED, headers("If-None-Match", "*").evaluate(CURRENT, null));
+        assertEquals(Outcome.PROCEED, headers("If-None-Match", "*").evaluate(null, null));
+    }
+
+    @Test
+    void weakTagsCompareByOpaqueValue() {
+        String weak = "W/" + CURRENT;
+        assertEquals(Outcome.PROCEED, headers("If-Match", weak).evaluate(CURRENT, null));
+        assertEquals(Outcome.PRECONDITION_FAILED, headers("If-None-Match", weak).evaluate(CURRENT, null));
+        // Unquoted current tags compare the same way
+        assertEquals(Outcome.PROCEED, headers("If-Match", CURRENT).evaluate(CURRENT.replace("\"", ""), null));
+    }
+
+    @Test
+    void contentMd5OfCurrentObjectIsNotModified() {
+        UploadPreconditions md5 = headers("Content-MD5", base64("MD5", BODY));
+
+        assertTrue(md5.requiresCurrentObject());
+        assertEquals(Outcome.NOT_MODIFIED, md5.evaluate(CURRENT, null));
+        assertEquals(Outcome.NOT_MODIFIED, md5.evaluate(CURRENT.toUpperCase(), null));
+        assertEquals(Outcome.PROCEED, md5.evaluate("\"0123456789abcdef0123456789abcdef\"", null));
+        assertEquals(Outcome.PROCEED, md5.evaluate(null, null));
+    }
+
+    @Test
+    void multipartETagNeverMatchesContentMd5() {
+        String md5Hex = HexFormat.of().formatHex(digest("MD5", BODY));
+        UploadPreconditions md5 = headers("Content-MD5", base64("MD5", BODY));
+
+        assertEquals(Outcome.PROCEED, md5.evaluate("\"" + md5Hex + "-2\"", null));
+    }
+
+    @Test
+    void sha256OfCurrentObjectIsNotModified() {
+        String sha256 = base64("SHA-256", BODY);
+        UploadPreconditions checksum = headers("x-amz-checksum-sha256", sha256);
+
+        assertEquals(Outcome.NOT_MODIFIED, checksum.evaluate("\"multipart-etag-3\"", sha256));
+        assertEquals(Outcome.PROCEED, checksum.evaluate(CURRENT, base64("SHA-256", new byte[0])));
+        // Objects written without a checksum never match
+        assertEquals(Outcome.PROCEED, checksum.evaluate(CURRENT, null));
+        assertEquals(Outcome.PROCEED, checksum.evaluate(null, null));
+    }
+
+    @Test
+    void failedPreconditionWinsOverMatchingContent() {
+        UploadPreconditions conditional = UploadPreconditions.fromHeaders(Map.of(
+                "If-Match", "\"other\"",
+                "Content-MD5", base64("MD5", BODY)));
+
+        assertEquals(Outcome.PRECONDITION_FAILED, conditional.evaluate(CURRENT, null));
+    }
+
+    @Test
+    void headersAreReadCaseInsensitively() {
+        UploadPreconditions lower = UploadPreconditions.fromHeaders(Map.of(
+                "if-none-match", "*",
+                "content-md5", " " + base64("MD5", BODY) + " ",
+                "X-Amz-Checksum-Sha256", base64("SHA-256", BODY)));
+
+        assertEquals(base64("MD5", BODY), lower.getContentMd5());
+        assertEquals(base64("SHA-256", BODY), lower.getChecksumSha256());
+        assertEquals(Outcome.PRECONDITION_FAILED, lower.evaluate(CURRENT, null));
+        assertNull(headers("Content-MD5", " ").getContentMd5());
+    }
+
+    @Test
+    void rejectsMalformedChecksumHeaders() {
+        assertThrows(IllegalArgumentException.class, () -> headers("Content-MD5", "not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> headers("Content-MD5", base64("SHA-256", BODY)));
+        assertThrows(IllegalArgumentException.class, () -> headers("x-amz-checksum-sha256", base64("MD5", BODY)));
+    }
+
+    private static UploadPreconditions headers(String name, String value) {
+        return UploadPreconditions.fromHeaders(Map.of(name, value));
+    }
+
+    private static byte[] digest(String algorithm, byte[] bytes) {
+        try {
+            return MessageDigest.getInstance(algorithm).digest(bytes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String base64(String algorithm, byte[] bytes) {
+        return Base64.getEncoder().encodeToString(digest(algorithm, bytes));
+    }
+}
@@ -0,0 +1,106 @@
+package com.userservice.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-pass claims decoding against the previous per-claim decoding, which split the
+ * token, decoded the payload and built a JsonNode tree once for each of username, sub and role.
+ *
+ * Tokens are shaped like Cognito ID tokens: the standard claims, cognito:groups, email
+ * and a 256-byte RS256 signature segment. "admin" adds a longer group list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClaimsDecodingBenchmark {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Param({"user", "admin"})
+    public String profile;
+
+    private String token;
+
+    @Setup
+    public void setUp() {
+        String groups = "user".equals(profile)
+                ? "[\"users\"]"
+                : "[\"users\",\"superusers\",\"globaladmins\",\"exporters\",\"uploaders\",\"auditors\"]";
+        String payload = "{"
+                + "\"sub\":\"5f3c1a9e-7b2d-4c8e-9a61-0d4e2b7f8c13\","
+                + "\"cognito:groups\":" + groups + ","
+                + "\"email_verified\":true,"
+                + "\"iss\":\"https://cognito-idp.us-east-1.amazonaws.com/us-east-1_AbCdEfGhI\","
+                + "\"cognito:username\":\"jane.doe\","
+                + "\"origin_jti\":\"8d0a4f5e-3c2b-4a19-b6e7-1f9c8d7e6a5b\","
+                + "\"aud\":\"4q2r6s8t0u1v3w5x7y9z1a3b5c\","
+                + "\"event_id\":\"b7e6d5c4-a3b2-4c1d-8e9f-0a1b2c3d4e5f\","
+                + "\"token_use\":\"id\","
+                + "\"auth_time\":1700000000,"
+                + "\"custom:role\":\"" + ("user".equals(profile) ? "user" : "globaladmin") + "\","
+                + "\"exp\":1700003600,"
+                + "\"iat\":1700000000,"
+                + "\"jti\":\"2c4e6a8b-0d1f-4e3a-9b5c-7d9e1f3a5b7c\","
+                + "\"email\":\"jane.doe@example.com\""
+                + "}";
+
+        byte[] signature = new byte[256];
+        new Random(42).nextBytes(signature);
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        token = encoder.encodeToString("{\"kid\":\"abc123\",\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(signature);
+    }
+
+    @Benchmark
+    public TokenClaims singlePass() throws Exception {
+        return CognitoTokenValidator.decodeClaims(token);
+    }
+
+    @Benchmark
+    public void perClaimTree(Blackhole blackhole) throws Exception {
+        blackhole.consume(treeClaim(token, "cognito:username"));
+        blackhole.consume(treeClaim(token, "sub"));
+        blackhole.consume(treeClaim(token, "custom:role"));
+    }
+
+    /**
+     * The previous extractUsername / extractSub / extractRole body
+     */
+    private static String treeClaim(String jwtToken, String claim) throws Exception {
+        String[] parts = jwtToken.split("\\.");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid JWT token format");
+        }
+
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]));
+        JsonNode claims = OBJECT_MAPPER.readTree(payload);
+
+        JsonNode node = claims.get(claim);
+        if (node == null) {
+            throw new IllegalArgumentException(claim + " claim not found in JWT token");
+        }
+        return node.asText();
+    }
+}
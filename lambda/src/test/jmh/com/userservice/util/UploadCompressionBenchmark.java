@@ -0,0 +1,104 @@
+package com.userservice.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU spent against bytes saved by gzip upload compression, on generated JSON and CSV
+ * payloads of 1 MB. The payloads come from a fixed seed, so every run compresses the same
+ * bytes; storedAsSent copies the body without compressing it, as the baseline.
+ *
+ * The time per operation is the added CPU per upload. Setup prints the stored size for
+ * each payload and level as "<payload> level <n>: <bytes sent> -> <bytes stored> bytes".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UploadCompressionBenchmark {
+    private static final int PAYLOAD_BYTES = 1024 * 1024;
+    private static final String[] ROLES = {"guest", "user", "superuser", "globaladmin"};
+
+    @Param({"json", "csv"})
+    public String payload;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    private byte[] body;
+    private UploadCompression compression;
+
+    @Setup
+    public void setUp() throws Exception {
+        body = "json".equals(payload) ? json(new Random(42)) : csv(new Random(42));
+        compression = new UploadCompression(true, level, UploadCompression.DEFAULT_MIN_BYTES);
+        System.out.printf("%n%s level %d: %d -> %d bytes%n",
+                payload, level, body.length, compression.compress(new ByteArrayInputStream(body)).length);
+    }
+
+    @Benchmark
+    public byte[] gzip() throws Exception {
+        return compression.compress(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public byte[] storedAsSent() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+        new ByteArrayInputStream(body).transferTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * An export-style JSON array of user records
+     */
+    private static byte[] json(Random random) {
+        StringBuilder json = new StringBuilder("[");
+        long createdAt = 1_700_000_000_000L;
+        for (int i = 0; json.length() < PAYLOAD_BYTES; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"userId\":\"").append(new UUID(random.nextLong(), random.nextLong()))
+                    .append("\",\"username\":\"user.").append(random.nextInt(1_000_000)).append("@example.com\"")
+                    .append(",\"role\":\"").append(ROLES[random.nextInt(ROLES.length)])
+                    .append("\",\"createdAt\":").append(createdAt + random.nextInt(86_400_000))
+                    .append(",\"updatedAt\":").append(createdAt + random.nextInt(86_400_000) * 2L)
+                    .append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A CSV report with an id, a date, a region, a unit count and an amount per row
+     */
+    private static byte[] csv(Random random) {
+        StringBuilder csv = new StringBuilder("id,date,region,units,amount\n");
+        String[] regions = {"us-east-1", "us-west-2", "eu-west-1", "ap-southeast-2"};
+        for (int i = 1; csv.length() < PAYLOAD_BYTES; i++) {
+            csv.append(i).append(",2024-")
+                    .append(String.format("%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28))).append(',')
+                    .append(regions[random.nextInt(regions.length)]).append(',')
+                    .append(random.nextInt(500)).append(',')
+                    .append(random.nextInt(1_000_000) / 100.0).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+package com.userservice.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.userservice.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing a page of DynamoDB items as the list response: streaming straight from the
+ * items with UserJsonWriter, against the previous path of building User objects and a
+ * response Map and serializing them with ObjectMapper.
+ *
+ * Run with -prof gc to compare allocation per page as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserPageSerializationBenchmark {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String[] ROLES = {"guest", "user", "superuser", "globaladmin"};
+
+    @Param({"100"})
+    public int pageSize;
+
+    private List<Map<String, AttributeValue>> items;
+    private String lastEvaluatedKey;
+
+    @Setup
+    public void setUp() {
+        items = new ArrayList<>(pageSize);
+        long createdAt = 1_700_000_000_000L;
+        for (int i = 0; i < pageSize; i++) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("userId", AttributeValue.builder().s(UUID.nameUUIDFromBytes(new byte[]{(byte) i}).toString()).build());
+            item.put("username", AttributeValue.builder().s("user." + i + "@example.com").build());
+            item.put("role", AttributeValue.builder().s(ROLES[i % ROLES.length]).build());
+            item.put("createdAt", AttributeValue.builder().n(String.valueOf(createdAt + i * 1000L)).build());
+            item.put("updatedAt", AttributeValue.builder().n(String.valueOf(createdAt + i * 2000L)).build());
+            item.put("listPartition", AttributeValue.builder().s("USERS").build());
+            items.add(item);
+        }
+        lastEvaluatedKey = "eyJ2IjoxLCJrIjp7fX0.c2lnbmF0dXJl";
+    }
+
+    @Benchmark
+    public String streamFromItems() throws Exception {
+        return UserJsonWriter.writeUserList(items, lastEvaluatedKey);
+    }
+
+    @Benchmark
+    public String userObjectsAndMap() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (Map<String, AttributeValue> item : items) {
+            users.add(new User(
+                    item.get("userId").s(),
+                    item.get("username").s(),
+                    item.get("role").s(),
+                    Long.parseLong(item.get("createdAt").n()),
+                    Long.parseLong(item.get("updatedAt").n())
+            ));
+        }
+
+        Map<String, Object> responseData = new HashMap<>();
+        responseData.put("users", users);
+        responseData.put("count", users.size());
+        responseData.put("lastEvaluatedKey", lastEvaluatedKey);
+        return OBJECT_MAPPER.writeValueAsString(responseData);
+    }
+}
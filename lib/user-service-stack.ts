@@ -6,6 +6,9 @@ import * as apigateway from 'aws-cdk-lib/aws-apigateway';
 import * as cognito from 'aws-cdk-lib/aws-cognito';
 import * as iam from 'aws-cdk-lib/aws-iam';
 import * as s3 from 'aws-cdk-lib/aws-s3';
+import * as secretsmanager from 'aws-cdk-lib/aws-secretsmanager';
+import * as events from 'aws-cdk-lib/aws-events';
+import * as targets from 'aws-cdk-lib/aws-events-targets';
 import * as path from 'path';
 
 export class UserServiceStack extends cdk.Stack {
@@ -36,6 +39,86 @@ export class UserServiceStack extends cdk.Stack {
       projectionType: dynamodb.ProjectionType.ALL,
     });
 
+    // Indexes added after the table was first deployed. CloudFormation creates or deletes at
+    // most one GSI per table update, so an existing table has to take them one deploy at a
+    // time: deploy with -c usersTableIndexStage=1, then 2, then without the flag (all three).
+    // A new table is created with all of them at once.
+    const addedUsersIndexes: dynamodb.GlobalSecondaryIndexProps[] = [
+      // Listing index: every user shares the fixed listPartition value, sorted by creation time
+      {
+        indexName: 'created-index',
+        partitionKey: {
+          name: 'listPartition',
+          type: dynamodb.AttributeType.STRING,
+        },
+        sortKey: {
+          name: 'createdAt',
+          type: dynamodb.AttributeType.NUMBER,
+        },
+        projectionType: dynamodb.ProjectionType.ALL,
+      },
+      // Listing index for a single role, sorted by creation time
+      {
+        indexName: 'role-created-index',
+        partitionKey: {
+          name: 'role',
+          type: dynamodb.AttributeType.STRING,
+        },
+        sortKey: {
+          name: 'createdAt',
+          type: dynamodb.AttributeType.NUMBER,
+        },
+        projectionType: dynamodb.ProjectionType.ALL,
+      },
+      // Cleanup queue: sparse, only tombstones of deleted users carry cleanupPartition
+      {
+        indexName: 'cleanup-index',
+        partitionKey: {
+          name: 'cleanupPartition',
+          type: dynamodb.AttributeType.STRING,
+        },
+        sortKey: {
+          name: 'deletedAt',
+          type: dynamodb.AttributeType.NUMBER,
+        },
+        projectionType: dynamodb.ProjectionType.ALL,
+      },
+    ];
+    const usersTableIndexStage = Number(this.node.tryGetContext('usersTableIndexStage') ?? addedUsersIndexes.length);
+    addedUsersIndexes
+      .slice(0, usersTableIndexStage)
+      .forEach((index) => usersTable.addGlobalSecondaryIndex(index));
+
+    // Username reservations: one item per username, written in the same
+    // transaction as the user record so uniqueness is enforced atomically
+    const usernamesTable = new dynamodb.Table(this, 'UsernamesTable', {
+      tableName: 'Usernames',
+      partitionKey: {
+        name: 'username',
+        type: dynamodb.AttributeType.STRING,
+      },
+      billingMode: dynamodb.BillingMode.PAY_PER_REQUEST,
+      removalPolicy: cdk.RemovalPolicy.DESTROY, // Change to RETAIN for production
+      pointInTimeRecovery: true,
+    });
+
+    // File manifest: maps each user's filenames to deduplicated content
+    // stored once per SHA-256 under content/ in the files bucket
+    const fileManifestTable = new dynamodb.Table(this, 'FileManifestTable', {
+      tableName: 'FileManifest',
+      partitionKey: {
+        name: 'username',
+        type: dynamodb.AttributeType.STRING,
+      },
+      sortKey: {
+        name: 'filename',
+        type: dynamodb.AttributeType.STRING,
+      },
+      billingMode: dynamodb.BillingMode.PAY_PER_REQUEST,
+      removalPolicy: cdk.RemovalPolicy.DESTROY, // Change to RETAIN for production
+      pointInTimeRecovery: true,
+    });
+
     // ========================================
     // Cognito User Pool
     // ========================================
@@ -82,6 +165,46 @@ export class UserServiceStack extends cdk.Stack {
       versioned: false,
       removalPolicy: cdk.RemovalPolicy.DESTROY,
       autoDeleteObjects: true,
+      lifecycleRules: [
+        {
+          // Clean up parts of exports/uploads that never completed
+          abortIncompleteMultipartUploadAfter: cdk.Duration.days(1),
+        },
+      ],
+      // Browsers upload straight to the bucket with presigned URLs
+      cors: [
+        {
+          allowedOrigins: ['*'],
+          allowedMethods: [s3.HttpMethods.PUT],
+          allowedHeaders: ['*'],
+          exposedHeaders: ['ETag'],
+          maxAge: 3000,
+        },
+      ],
+    });
+
+    // ========================================
+    // Pagination Cursor Signing Key
+    // ========================================
+    const cursorSigningSecret = new secretsmanager.Secret(this, 'CursorSigningSecret', {
+      description: 'HMAC key for signing GET /users pagination cursors',
+      generateSecretString: {
+        passwordLength: 64,
+        excludePunctuation: true,
+      },
+    });
+
+    // ========================================
+    // Provisioning Token
+    // ========================================
+    // Shared by the create functions and the pre sign-up trigger; SignUp calls carrying
+    // it are auto-confirmed, so a user is provisioned with a single Cognito call
+    const provisioningTokenSecret = new secretsmanager.Secret(this, 'ProvisioningTokenSecret', {
+      description: 'Token the pre sign-up trigger requires to auto-confirm SignUp calls',
+      generateSecretString: {
+        passwordLength: 64,
+        excludePunctuation: true,
+      },
     });
 
     // ========================================
@@ -95,8 +218,11 @@ export class UserServiceStack extends cdk.Stack {
       code: lambda.Code.fromAsset(lambdaCodePath),
       timeout: cdk.Duration.seconds(30),
       memorySize: 512,
+      // Snapshot the initialized (and primed) execution environment on each published version
+      snapStart: lambda.SnapStartConf.ON_PUBLISHED_VERSIONS,
       environment: {
         TABLE_NAME: usersTable.tableName,
+        USERNAMES_TABLE_NAME: usernamesTable.tableName,
         USER_POOL_ID: userPool.userPoolId,
         USER_POOL_CLIENT_ID: userPoolClient.userPoolClientId,
         AWS_REGION: this.region,
@@ -110,6 +236,24 @@ export class UserServiceStack extends cdk.Stack {
       functionName: 'UserService-CreateUser',
       handler: 'com.userservice.handler.CreateUserHandler::handleRequest',
       description: 'Create a new user',
+      environment: {
+        ...commonLambdaProps.environment,
+        PROVISIONING_TOKEN_SECRET_ARN: provisioningTokenSecret.secretArn,
+      },
+    });
+
+    // Batch Create Users Lambda
+    const batchCreateUsersFunction = new lambda.Function(this, 'BatchCreateUsersFunction', {
+      ...commonLambdaProps,
+      functionName: 'UserService-BatchCreateUsers',
+      handler: 'com.userservice.handler.BatchCreateUsersHandler::handleRequest',
+      description: 'Create up to 100 users in one request',
+      environment: {
+        ...commonLambdaProps.environment,
+        // Cognito admin API requests per second this function may issue
+        COGNITO_ADMIN_RPS: '25',
+        PROVISIONING_TOKEN_SECRET_ARN: provisioningTokenSecret.secretArn,
+      },
     });
 
     // Get User Lambda
@@ -118,6 +262,13 @@ export class UserServiceStack extends cdk.Stack {
       functionName: 'UserService-GetUser',
       handler: 'com.userservice.handler.GetUserHandler::handleRequest',
       description: 'Get user by ID',
+      environment: {
+        ...commonLambdaProps.environment,
+        // In-container user cache; staleness after changes is bounded by the TTL
+        USER_CACHE_MAX_ENTRIES: '10000',
+        USER_CACHE_TTL_SECONDS: '30',
+        USER_CACHE_NEGATIVE_TTL_SECONDS: '5',
+      },
     });
 
     // List Users Lambda
@@ -126,6 +277,11 @@ export class UserServiceStack extends cdk.Stack {
       functionName: 'UserService-ListUsers',
       handler: 'com.userservice.handler.ListUsersHandler::handleRequest',
       description: 'List all users with pagination',
+      environment: {
+        ...commonLambdaProps.environment,
+        // Only the ARN; the handler reads the key once during initialization
+        CURSOR_SIGNING_SECRET_ARN: cursorSigningSecret.secretArn,
+      },
     });
 
     // Delete User Lambda
@@ -136,6 +292,32 @@ export class UserServiceStack extends cdk.Stack {
       description: 'Delete a user',
     });
 
+    // Batch Delete Users Lambda
+    const batchDeleteUsersFunction = new lambda.Function(this, 'BatchDeleteUsersFunction', {
+      ...commonLambdaProps,
+      functionName: 'UserService-BatchDeleteUsers',
+      handler: 'com.userservice.handler.BatchDeleteUsersHandler::handleRequest',
+      description: 'Delete up to 100 users in one request',
+    });
+
+    // Cleanup Drain Lambda (removes Cognito users and reservations of deleted users)
+    const cleanupDrainFunction = new lambda.Function(this, 'CleanupDrainFunction', {
+      ...commonLambdaProps,
+      functionName: 'UserService-CleanupDrain',
+      handler: 'com.userservice.handler.CleanupDrainHandler::handleRequest',
+      description: 'Drain the user cleanup queue',
+      timeout: cdk.Duration.minutes(1),
+      // One drain at a time; overlapping runs would pick up the same intents
+      reservedConcurrentExecutions: 1,
+      environment: {
+        ...commonLambdaProps.environment,
+        // Cognito admin API requests per second this function may issue
+        COGNITO_ADMIN_RPS: '25',
+        CLEANUP_BATCH_SIZE: '25',
+        CLEANUP_MAX_ATTEMPTS: '10',
+      },
+    });
+
     // Upload File Lambda
     const uploadFileFunction = new lambda.Function(this, 'UploadFileFunction', {
       ...commonLambdaProps,
@@ -144,6 +326,102 @@ export class UserServiceStack extends cdk.Stack {
       description: 'Upload file to S3',
       timeout: cdk.Duration.seconds(60),
       memorySize: 1024,
+      environment: {
+        ...commonLambdaProps.environment,
+        // Opt in to storing each distinct file content once under content/{sha256};
+        // see File Deduplication in the README before enabling
+        DEDUP_UPLOADS: 'false',
+        MANIFEST_TABLE_NAME: fileManifestTable.tableName,
+        // Set to 'gzip' to store text, JSON, CSV and XML uploads gzip-encoded; costs CPU
+        // per upload, see UploadCompressionBenchmark
+        UPLOAD_COMPRESSION: 'none',
+        UPLOAD_COMPRESSION_LEVEL: '6',
+        UPLOAD_COMPRESSION_MIN_BYTES: '1024',
+      },
+    });
+
+    // Presign Upload Lambda (presigned S3 PUT URLs, file bytes bypass Lambda)
+    const presignUploadFunction = new lambda.Function(this, 'PresignUploadFunction', {
+      ...commonLambdaProps,
+      functionName: 'UserService-PresignUpload',
+      handler: 'com.userservice.handler.PresignUploadHandler::handleRequest',
+      description: 'Presign direct S3 file uploads',
+      environment: {
+        ...commonLambdaProps.environment,
+        PRESIGN_EXPIRY_SECONDS: '900',
+      },
+    });
+
+    // Multipart Upload Lambda (presigned multipart sessions for large files)
+    const multipartUploadFunction = new lambda.Function(this, 'MultipartUploadFunction', {
+      ...commonLambdaProps,
+      functionName: 'UserService-MultipartUpload',
+      handler: 'com.userservice.handler.MultipartUploadHandler::handleRequest',
+      description: 'Multipart upload sessions with presigned part URLs',
+      environment: {
+        ...commonLambdaProps.environment,
+        PRESIGN_EXPIRY_SECONDS: '900',
+      },
+    });
+
+    // Export Users Lambda (parallel scan to NDJSON in S3)
+    const exportUsersFunction = new lambda.Function(this, 'ExportUsersFunction', {
+      ...commonLambdaProps,
+      functionName: 'UserService-ExportUsers',
+      handler: 'com.userservice.handler.ExportUsersHandler::handleRequest',
+      description: 'Export all users to S3 as NDJSON',
+      timeout: cdk.Duration.minutes(15),
+      memorySize: 1024,
+    });
+
+    // User Index Backfill Lambda (invoked manually after the listing indexes are added;
+    // re-invoke with the returned lastEvaluatedKey until it reports complete)
+    const userIndexBackfillFunction = new lambda.Function(this, 'UserIndexBackfillFunction', {
+      ...commonLambdaProps,
+      functionName: 'UserService-UserIndexBackfill',
+      handler: 'com.userservice.handler.UserIndexBackfillHandler::handleRequest',
+      description: 'Backfill listPartition and canonical roles for the listing indexes',
+      timeout: cdk.Duration.minutes(15),
+    });
+
+    // Pre Sign-Up Trigger Lambda
+    // Defined without the common environment: the user pool depends on this function,
+    // so it must not reference the pool
+    const preSignUpFunction = new lambda.Function(this, 'PreSignUpFunction', {
+      runtime: lambda.Runtime.JAVA_17,
+      code: lambda.Code.fromAsset(lambdaCodePath),
+      timeout: cdk.Duration.seconds(5), // Cognito waits at most 5 seconds for a trigger
+      memorySize: 512,
+      snapStart: lambda.SnapStartConf.ON_PUBLISHED_VERSIONS,
+      functionName: 'UserService-PreSignUp',
+      handler: 'com.userservice.handler.PreSignUpHandler::handleRequest',
+      description: 'Auto-confirm provisioned sign-ups, reject self sign-up',
+      environment: {
+        PROVISIONING_TOKEN_SECRET_ARN: provisioningTokenSecret.secretArn,
+      },
+    });
+
+    // SnapStart only applies to published versions, so API Gateway invokes
+    // each function through an alias on its current version
+    const createUserAlias = createUserFunction.addAlias('live');
+    const batchCreateUsersAlias = batchCreateUsersFunction.addAlias('live');
+    const getUserAlias = getUserFunction.addAlias('live');
+    const listUsersAlias = listUsersFunction.addAlias('live');
+    const deleteUserAlias = deleteUserFunction.addAlias('live');
+    const batchDeleteUsersAlias = batchDeleteUsersFunction.addAlias('live');
+    const cleanupDrainAlias = cleanupDrainFunction.addAlias('live');
+    const uploadFileAlias = uploadFileFunction.addAlias('live');
+    const presignUploadAlias = presignUploadFunction.addAlias('live');
+    const multipartUploadAlias = multipartUploadFunction.addAlias('live');
+    const exportUsersAlias = exportUsersFunction.addAlias('live');
+    const preSignUpAlias = preSignUpFunction.addAlias('live');
+
+    userPool.addTrigger(cognito.UserPoolOperation.PRE_SIGN_UP, preSignUpAlias);
+
+    new events.Rule(this, 'CleanupDrainSchedule', {
+      description: 'Drain the user cleanup queue every minute',
+      schedule: events.Schedule.rate(cdk.Duration.minutes(1)),
+      targets: [new targets.LambdaFunction(cleanupDrainAlias, { retryAttempts: 0 })],
     });
 
     // ========================================
@@ -153,6 +431,19 @@ export class UserServiceStack extends cdk.Stack {
     usersTable.grantReadData(getUserFunction);
     usersTable.grantReadData(listUsersFunction);
     usersTable.grantReadWriteData(deleteUserFunction);
+    usersTable.grantReadWriteData(batchDeleteUsersFunction);
+    usersTable.grantReadWriteData(cleanupDrainFunction);
+    usersTable.grantReadData(exportUsersFunction);
+    usersTable.grantReadWriteData(userIndexBackfillFunction);
+    cursorSigningSecret.grantRead(listUsersFunction);
+    provisioningTokenSecret.grantRead(createUserFunction);
+    provisioningTokenSecret.grantRead(batchCreateUsersFunction);
+    provisioningTokenSecret.grantRead(preSignUpFunction);
+    usersTable.grantReadWriteData(batchCreateUsersFunction);
+    usernamesTable.grantReadWriteData(createUserFunction);
+    usernamesTable.grantReadWriteData(batchCreateUsersFunction);
+    usernamesTable.grantReadWriteData(cleanupDrainFunction);
+    fileManifestTable.grantReadWriteData(uploadFileFunction);
 
     // ========================================
     // Grant Cognito Permissions to Lambdas
@@ -163,16 +454,32 @@ export class UserServiceStack extends cdk.Stack {
       actions: [
         'cognito-idp:AdminCreateUser',
         'cognito-idp:AdminSetUserPassword',
+        'cognito-idp:AdminConfirmSignUp', // SignUp fast path when the trigger did not confirm
         'cognito-idp:AdminUpdateUserAttributes',
+        'cognito-idp:AdminGetUser', // SnapStart priming
+      ],
+      resources: [userPool.userPoolArn],
+    }));
+
+    // BatchCreateUsersFunction creates Cognito users and removes them again on failure
+    batchCreateUsersFunction.addToRolePolicy(new iam.PolicyStatement({
+      effect: iam.Effect.ALLOW,
+      actions: [
+        'cognito-idp:AdminCreateUser',
+        'cognito-idp:AdminSetUserPassword',
+        'cognito-idp:AdminConfirmSignUp', // SignUp fast path when the trigger did not confirm
+        'cognito-idp:AdminDeleteUser',
+        'cognito-idp:AdminGetUser', // SnapStart priming
       ],
       resources: [userPool.userPoolArn],
     }));
 
-    // DeleteUserFunction needs to delete Cognito users
-    deleteUserFunction.addToRolePolicy(new iam.PolicyStatement({
+    // CleanupDrainFunction deletes the Cognito users of deleted users
+    cleanupDrainFunction.addToRolePolicy(new iam.PolicyStatement({
       effect: iam.Effect.ALLOW,
       actions: [
         'cognito-idp:AdminDeleteUser',
+        'cognito-idp:AdminGetUser', // SnapStart priming
       ],
       resources: [userPool.userPoolArn],
     }));
@@ -182,6 +489,25 @@ export class UserServiceStack extends cdk.Stack {
     // ========================================
     filesBucket.grantPut(uploadFileFunction);
     filesBucket.grantRead(uploadFileFunction);
+    // Presigned URLs carry this function's permissions
+    filesBucket.grantPut(presignUploadFunction);
+    // Presigned part URLs carry this function's permissions too
+    filesBucket.grantPut(multipartUploadFunction);
+    multipartUploadFunction.addToRolePolicy(new iam.PolicyStatement({
+      effect: iam.Effect.ALLOW,
+      actions: [
+        's3:ListMultipartUploadParts',
+        's3:AbortMultipartUpload',
+      ],
+      resources: [filesBucket.arnForObjects('uploads/*')],
+    }));
+    multipartUploadFunction.addToRolePolicy(new iam.PolicyStatement({
+      effect: iam.Effect.ALLOW,
+      actions: ['s3:ListBucketMultipartUploads'],
+      resources: [filesBucket.bucketArn],
+    }));
+    filesBucket.grantPut(exportUsersFunction);
+    filesBucket.grantRead(exportUsersFunction);
 
     // ========================================
     // API Gateway
@@ -199,6 +525,11 @@ export class UserServiceStack extends cdk.Stack {
           'Authorization',
           'X-Api-Key',
           'X-Amz-Security-Token',
+          // Conditional and checksummed PUT /files/{filename}
+          'If-Match',
+          'If-None-Match',
+          'Content-MD5',
+          'x-amz-checksum-sha256',
         ],
       },
       deployOptions: {
@@ -231,7 +562,7 @@ export class UserServiceStack extends cdk.Stack {
     // POST /users - Create user (PUBLIC - no authorizer for registration)
     usersResource.addMethod(
       'POST',
-      new apigateway.LambdaIntegration(createUserFunction, {
+      new apigateway.LambdaIntegration(createUserAlias, {
         proxy: true,
       })
     );
@@ -239,7 +570,47 @@ export class UserServiceStack extends cdk.Stack {
     // GET /users - List all users (PROTECTED - requires authentication)
     usersResource.addMethod(
       'GET',
-      new apigateway.LambdaIntegration(listUsersFunction, {
+      new apigateway.LambdaIntegration(listUsersAlias, {
+        proxy: true,
+      }),
+      {
+        authorizer: cognitoAuthorizer,
+        authorizationType: apigateway.AuthorizationType.COGNITO,
+      }
+    );
+
+    // POST /users/export - Export all users to S3 (PROTECTED - globaladmin only)
+    // API Gateway caps integrations at 29 seconds; large tables should invoke
+    // UserService-ExportUsers directly with the same event shape
+    const exportResource = usersResource.addResource('export');
+    exportResource.addMethod(
+      'POST',
+      new apigateway.LambdaIntegration(exportUsersAlias, {
+        proxy: true,
+      }),
+      {
+        authorizer: cognitoAuthorizer,
+        authorizationType: apigateway.AuthorizationType.COGNITO,
+      }
+    );
+
+    // POST /users/batch - Create users in bulk (PROTECTED - superuser/globaladmin)
+    const batchResource = usersResource.addResource('batch');
+    batchResource.addMethod(
+      'POST',
+      new apigateway.LambdaIntegration(batchCreateUsersAlias, {
+        proxy: true,
+      }),
+      {
+        authorizer: cognitoAuthorizer,
+        authorizationType: apigateway.AuthorizationType.COGNITO,
+      }
+    );
+
+    // DELETE /users/batch - Delete users in bulk (PROTECTED - per-user delete rules apply)
+    batchResource.addMethod(
+      'DELETE',
+      new apigateway.LambdaIntegration(batchDeleteUsersAlias, {
         proxy: true,
       }),
       {
@@ -254,7 +625,7 @@ export class UserServiceStack extends cdk.Stack {
     // GET /users/{userId} - Get user by ID (PROTECTED - requires authentication)
     userResource.addMethod(
       'GET',
-      new apigateway.LambdaIntegration(getUserFunction, {
+      new apigateway.LambdaIntegration(getUserAlias, {
         proxy: true,
       }),
       {
@@ -266,7 +637,7 @@ export class UserServiceStack extends cdk.Stack {
     // DELETE /users/{userId} - Delete user (PROTECTED - requires authentication)
     userResource.addMethod(
       'DELETE',
-      new apigateway.LambdaIntegration(deleteUserFunction, {
+      new apigateway.LambdaIntegration(deleteUserAlias, {
         proxy: true,
       }),
       {
@@ -282,7 +653,7 @@ export class UserServiceStack extends cdk.Stack {
     // PUT /files/{filename} - Upload file (PROTECTED - requires authentication)
     fileResource.addMethod(
       'PUT',
-      new apigateway.LambdaIntegration(uploadFileFunction, {
+      new apigateway.LambdaIntegration(uploadFileAlias, {
         proxy: true,
         contentHandling: apigateway.ContentHandling.CONVERT_TO_BINARY,
       }),
@@ -292,6 +663,33 @@ export class UserServiceStack extends cdk.Stack {
       }
     );
 
+    // POST /files/{filename}/presign - Presigned upload URL (PROTECTED - requires authentication)
+    const presignResource = fileResource.addResource('presign');
+    presignResource.addMethod(
+      'POST',
+      new apigateway.LambdaIntegration(presignUploadAlias, {
+        proxy: true,
+      }),
+      {
+        authorizer: cognitoAuthorizer,
+        authorizationType: apigateway.AuthorizationType.COGNITO,
+      }
+    );
+
+    // /files/{filename}/multipart - Multipart upload sessions (PROTECTED - requires authentication)
+    const multipartResource = fileResource.addResource('multipart');
+    const multipartIntegration = new apigateway.LambdaIntegration(multipartUploadAlias, {
+      proxy: true,
+    });
+    const multipartMethodOptions = {
+      authorizer: cognitoAuthorizer,
+      authorizationType: apigateway.AuthorizationType.COGNITO,
+    };
+    multipartResource.addMethod('POST', multipartIntegration, multipartMethodOptions);
+    multipartResource.addMethod('DELETE', multipartIntegration, multipartMethodOptions);
+    multipartResource.addResource('parts').addMethod('POST', multipartIntegration, multipartMethodOptions);
+    multipartResource.addResource('complete').addMethod('POST', multipartIntegration, multipartMethodOptions);
+
     // ========================================
     // Stack Outputs
     // ========================================
@@ -312,6 +710,11 @@ export class UserServiceStack extends cdk.Stack {
       description: 'Create User Lambda ARN',
     });
 
+    new cdk.CfnOutput(this, 'BatchCreateUsersFunctionArn', {
+      value: batchCreateUsersFunction.functionArn,
+      description: 'Batch Create Users Lambda ARN',
+    });
+
     new cdk.CfnOutput(this, 'GetUserFunctionArn', {
       value: getUserFunction.functionArn,
       description: 'Get User Lambda ARN',
@@ -327,6 +730,26 @@ export class UserServiceStack extends cdk.Stack {
       description: 'Delete User Lambda ARN',
     });
 
+    new cdk.CfnOutput(this, 'BatchDeleteUsersFunctionArn', {
+      value: batchDeleteUsersFunction.functionArn,
+      description: 'Batch Delete Users Lambda ARN',
+    });
+
+    new cdk.CfnOutput(this, 'CleanupDrainFunctionArn', {
+      value: cleanupDrainFunction.functionArn,
+      description: 'Cleanup Drain Lambda ARN',
+    });
+
+    new cdk.CfnOutput(this, 'ExportUsersFunctionArn', {
+      value: exportUsersFunction.functionArn,
+      description: 'Export Users Lambda ARN',
+    });
+
+    new cdk.CfnOutput(this, 'UserIndexBackfillFunctionArn', {
+      value: userIndexBackfillFunction.functionArn,
+      description: 'User Index Backfill Lambda ARN',
+    });
+
     new cdk.CfnOutput(this, 'UserPoolId', {
       value: userPool.userPoolId,
       description: 'Cognito User Pool ID',
@@ -344,6 +767,21 @@ export class UserServiceStack extends cdk.Stack {
       description: 'Upload File Lambda ARN',
     });
 
+    new cdk.CfnOutput(this, 'PresignUploadFunctionArn', {
+      value: presignUploadFunction.functionArn,
+      description: 'Presign Upload Lambda ARN',
+    });
+
+    new cdk.CfnOutput(this, 'MultipartUploadFunctionArn', {
+      value: multipartUploadFunction.functionArn,
+      description: 'Multipart Upload Lambda ARN',
+    });
+
+    new cdk.CfnOutput(this, 'FileManifestTableName', {
+      value: fileManifestTable.tableName,
+      description: 'DynamoDB table mapping filenames to deduplicated content',
+    });
+
     new cdk.CfnOutput(this, 'FilesBucketName', {
       value: filesBucket.bucketName,
       description: 'S3 Bucket for file storage',